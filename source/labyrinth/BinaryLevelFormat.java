@@ -0,0 +1,203 @@
+package source.labyrinth;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * BinaryLevelFormat reads and writes .lvb level files, meant for boards far too large for the text format.
+ * Everything is a big-endian int unless said otherwise:
+ * <pre>
+ * magic ("LVB1"), width, height (each 1 to 4096)
+ * x, y                         (starting position of each of the 4 players)
+ * amount of FloorTypes, then the amount of each FloorType in the bag, by ordinal
+ * amount of ActionTypes, then the amount of each ActionType in the bag, by ordinal
+ * runs of cells until width * height cells are covered, each a length and one byte holding the packed cell
+ * </pre>
+ * The cells are in the same x * height + y order as LevelTemplate keeps them, so a run of empty cells or of one
+ * fixed tile (e.g. a wall of fixed straights) is stored in 5 bytes whatever its length. Files are memory-mapped and
+ * every run goes straight into the packed cell array with a single fill, so loading is mostly paging the file in.
+ * The main method converts text levels into binary ones.
+ * @author Fillip Serov
+ */
+public final class BinaryLevelFormat {
+	private static final int MAGIC = 0x4C564231; // "LVB1"
+	private static final int RUN_BYTES = 5;
+	private static final int MAX_SIDE = 4096; // Largest width or height, so a bad header cannot ask for gigabytes
+
+	/**
+	 * Convert text levels into binary levels, written next to them.
+	 * @param args Paths of the text levels
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: BinaryLevelFormat <level.txt>...");
+		}
+		for (String path : args) {
+			File textFile = new File(path);
+			String levelName = textFile.getName().replaceFirst("\\.txt$", "");
+			File binaryFile = new File(textFile.getParentFile(), levelName + LevelTemplateCache.BINARY_EXTENSION);
+			try {
+				long start = System.currentTimeMillis();
+				LevelTemplate template = LevelTemplate.fromLevelData(levelName, LevelParser.parse(textFile));
+				write(template, binaryFile);
+				System.out.println("Converted " + textFile + " to " + binaryFile + " (" + binaryFile.length()
+						+ " bytes) in " + (System.currentTimeMillis() - start) + "ms");
+			} catch (IOException e) {
+				System.out.println("Could not convert " + textFile + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Write a level as a binary level file.
+	 * @param template Level to write
+	 * @param file File to write to, replaced if it exists
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void write(LevelTemplate template, File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(template.getWidth());
+			out.writeInt(template.getHeight());
+			for (int i = 0; i < LevelTemplate.MAX_PLAYERS; i++) {
+				int[] start = template.getPlayerStartingPosition(i);
+				out.writeInt(start[0]);
+				out.writeInt(start[1]);
+			}
+			out.writeInt(FloorTile.FloorType.values().length);
+			for (FloorTile.FloorType type : FloorTile.FloorType.values()) {
+				out.writeInt(template.getFloorTileAmount(type));
+			}
+			out.writeInt(ActionTile.ActionType.values().length);
+			for (ActionTile.ActionType type : ActionTile.ActionType.values()) {
+				out.writeInt(template.getActionTileAmount(type));
+			}
+
+			byte[] cells = template.getCells();
+			int runStart = 0;
+			while (runStart < cells.length) {
+				int runEnd = runStart + 1;
+				while (runEnd < cells.length && cells[runEnd] == cells[runStart]) {
+					runEnd++;
+				}
+				out.writeInt(runEnd - runStart);
+				out.writeByte(cells[runStart]);
+				runStart = runEnd;
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Load a binary level file.
+	 * @param levelName Name of the level
+	 * @param file Binary level file
+	 * @return Template of the level
+	 * @throws LevelFormatException If the file is not a valid binary level
+	 * @throws IOException If the file cannot be read
+	 */
+	public static LevelTemplate read(String levelName, File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return read(levelName, raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Load a binary level held in memory.
+	 * @param levelName Name of the level
+	 * @param data Contents of a binary level file, read from its position to its limit
+	 * @return Template of the level
+	 * @throws LevelFormatException If the data is not a valid binary level
+	 */
+	public static LevelTemplate read(String levelName, ByteBuffer data) throws LevelFormatException {
+		ByteBuffer in = data.duplicate();
+		try {
+			if (in.getInt() != MAGIC) {
+				throw new LevelFormatException("not a binary level file", 0);
+			}
+			int width = in.getInt();
+			int height = in.getInt();
+			if (width <= 0 || height <= 0 || width > MAX_SIDE || height > MAX_SIDE) {
+				throw new LevelFormatException("board of " + width + "x" + height + " is not possible, sides can be 1 to "
+						+ MAX_SIDE, 4);
+			}
+
+			int[][] playerStartingPositions = new int[LevelTemplate.MAX_PLAYERS][];
+			for (int i = 0; i < LevelTemplate.MAX_PLAYERS; i++) {
+				int offset = in.position();
+				int x = in.getInt();
+				int y = in.getInt();
+				if (x < 0 || x >= width || y < 0 || y >= height) {
+					throw new LevelFormatException("position " + x + "," + y + " is not on the " + width + "x"
+							+ height + " board", offset);
+				}
+				playerStartingPositions[i] = new int[] {x, y};
+			}
+			int[] floorTileAmounts = readAmounts(in, FloorTile.FloorType.values().length);
+			int[] actionTileAmounts = readAmounts(in, ActionTile.ActionType.values().length);
+
+			// Checked before the cells are allocated, a header with no runs after it cannot cover the board
+			if (in.remaining() < RUN_BYTES) {
+				throw new LevelFormatException("no runs of cells for the " + width + "x" + height + " board",
+						in.position());
+			}
+			byte[] cells = new byte[width * height];
+			int filled = 0;
+			while (filled < cells.length) {
+				int offset = in.position();
+				int length = in.getInt();
+				int cell = in.get() & 0xFF;
+				if (length <= 0 || length > cells.length - filled) {
+					throw new LevelFormatException("run of " + length + " cells does not fit on the board", offset);
+				}
+				if (!LevelTemplate.isValidCell(cell)) {
+					throw new LevelFormatException("invalid cell " + cell, offset + RUN_BYTES - 1);
+				}
+				if (cell != LevelTemplate.EMPTY) {
+					Arrays.fill(cells, filled, filled + length, (byte) cell);
+				}
+				filled += length;
+			}
+			return new LevelTemplate(levelName, width, height, cells, playerStartingPositions, floorTileAmounts,
+					actionTileAmounts);
+		} catch (BufferUnderflowException e) {
+			throw new LevelFormatException("file ended too soon", in.position());
+		}
+	}
+
+	/**
+	 * @param in Input, at the amount of types
+	 * @param types Amount of types this version of the game has
+	 * @return Amount of each type
+	 * @throws LevelFormatException If the file has a different amount of types or a negative amount
+	 */
+	private static int[] readAmounts(ByteBuffer in, int types) throws LevelFormatException {
+		int offset = in.position();
+		int storedTypes = in.getInt();
+		if (storedTypes != types) {
+			throw new LevelFormatException("expected " + types + " tile types, not " + storedTypes, offset);
+		}
+		int[] amounts = new int[types];
+		for (int i = 0; i < types; i++) {
+			offset = in.position();
+			amounts[i] = in.getInt();
+			if (amounts[i] < 0) {
+				throw new LevelFormatException("amount of tiles cannot be negative", offset);
+			}
+		}
+		return amounts;
+	}
+}
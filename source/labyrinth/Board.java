@@ -2,15 +2,21 @@ package source.labyrinth;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.BitSet;
 
 /**
- * The Board class will store the layout and state of the current game.
+ * The Board class will store the layout and state of the current game. It also keeps track of which cells changed
+ * since they were last drawn, so the board can be redrawn one cell at a time (see takeChangedCells).
  * @author Fillip Serov
  */
 public class Board implements Serializable {
+	// The value this class had before it was declared, so older save files still load
+	private static final long serialVersionUID = -5055422236063850103L;
 	private final int width;
 	private final int height;
 	private final FloorTile[][] board;
+	// Cells changed since the last takeChangedCells, at x * height + y. Not saved, a loaded board is drawn in full.
+	private transient BitSet changedCells;
 
 	public Board(int width, int height) {
 		this.width = width;
@@ -121,6 +127,7 @@ public class Board implements Serializable {
 				this.board[insertionPoint][i] = this.board[insertionPoint][i + inc];
 			}
 			this.board[insertionPoint][fin]=newTile;
+			markChanged(insertionPoint, 0, insertionPoint, this.height - 1);
 		} else {
 			if (this.board[start][insertionPoint].getPlayer() != null) {
 				this.board[start][insertionPoint].getPlayer().setStandingOn(newTile);
@@ -130,9 +137,21 @@ public class Board implements Serializable {
 				this.board[i][insertionPoint] = this.board[i + inc][insertionPoint];
 			}
 			this.board[fin][insertionPoint]=newTile;
+			markChanged(0, insertionPoint, this.width - 1, insertionPoint);
 		}
 	}
 
+	/**
+	 * @param insertionDirection Integer between 0-3 representing the 4 directions, as insertFloorTile takes it
+	 * @param insertionPoint Row or column to insert into
+	 * @return The FloorTile that inserting there would push off the board (and back into the SilkBag)
+	 */
+	public FloorTile getTileToEject(int insertionDirection, int insertionPoint) {
+		boolean columnInsert = insertionDirection % 2 == 0;
+		int start = insertionDirection % 3 == 0 ? (columnInsert ? this.height - 1: this.width - 1): 0;
+		return columnInsert ? this.board[insertionPoint][start] : this.board[start][insertionPoint];
+	}
+
 	/**
 	 * @param x X-position
 	 * @param y Y-position
@@ -150,12 +169,14 @@ public class Board implements Serializable {
 	 */
 	public void setTileAt(FloorTile tile, int x, int y) {
 		this.board[x][y] = tile;
+		markChanged(x, y);
 	}
 
 	public void setOnFire(int x, int y) {
 		for (int i = x > 0 ? (x - 1) : 0; i < ((x < (this.width - 1))? (x + 2): this.width); i++) {
 			for (int j = y > 0 ? (y - 1) : 0; j < ((y < (this.height - 1))? (y + 2): this.height); j++) {
 				this.board[i][j].setOnFire();
+				markChanged(i, j);
 			}
 		}
 	}
@@ -164,6 +185,7 @@ public class Board implements Serializable {
 		for (int i = x > 0 ? (x - 1) : 0; i < ((x < (this.width - 1))? (x + 2): this.width); i++) {
 			for (int j = y > 0 ? (y - 1) : 0; j < ((y < (this.height - 1))? (y + 2): this.height); j++) {
 				this.board[i][j].freeze();
+				markChanged(i, j);
 			}
 		}
 	}
@@ -178,4 +200,59 @@ public class Board implements Serializable {
 		return canSet;
 	}
 
+	/**
+	 * Tell the board a tile changed in a way it cannot see itself, e.g. a player stepped onto or off it.
+	 * @param x X-position
+	 * @param y Y-position
+	 */
+	public void markChanged(int x, int y) {
+		changedCells().set(x * this.height + y);
+	}
+
+	/**
+	 * Mark every tile whose fire or ice ends at a game time, so they are redrawn without it once that time comes.
+	 * @param time Game time that has just begun
+	 */
+	public void markEffectsEndingAt(int time) {
+		for (int x = 0; x < this.width; x++) {
+			for (int y = 0; y < this.height; y++) {
+				if (this.board[x][y].getIsOnFireUntil() == time || this.board[x][y].getIsFrozenUntil() == time) {
+					markChanged(x, y);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the cells changed since the last call, and start tracking changes from scratch.
+	 * @return Changed cells, cell (x, y) at x * height + y
+	 */
+	public BitSet takeChangedCells() {
+		BitSet changed = changedCells();
+		this.changedCells = new BitSet();
+		return changed;
+	}
+
+	/**
+	 * @param fromX X-position of one corner of a rectangle of tiles
+	 * @param fromY Y-position of that corner
+	 * @param toX X-position of the opposite corner
+	 * @param toY Y-position of the opposite corner
+	 */
+	private void markChanged(int fromX, int fromY, int toX, int toY) {
+		for (int x = fromX; x <= toX; x++) {
+			changedCells().set(x * this.height + fromY, x * this.height + toY + 1);
+		}
+	}
+
+	/**
+	 * @return The changed cells, created here after the board was loaded from a save
+	 */
+	private BitSet changedCells() {
+		if (this.changedCells == null) {
+			this.changedCells = new BitSet();
+		}
+		return this.changedCells;
+	}
+
 }
\ No newline at end of file
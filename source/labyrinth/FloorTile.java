@@ -1,11 +1,14 @@
 package source.labyrinth;
 
-import javafx.scene.image.Image;
+import javafx.scene.Node;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
 import source.labyrinth.controllers.LevelController;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * FloorTile represents a physical tile on the game board on which players can walk on. FloorTiles can be set on
@@ -39,14 +42,49 @@ public class FloorTile extends Tile implements Serializable {
 
 		// Each tile type has their default move mask, and a string to their image.
 		private final Boolean[] defaultMoveMask;
+		private final int defaultMoveBits; // Bit d is set if the default move mask allows direction d
 
 		FloorType(Boolean[] defaultMoveMask, String imageURL) {
 			this.defaultMoveMask = defaultMoveMask;
 			this.imageURL = imageURL;
+			int bits = 0;
+			for (int direction = 0; direction < 4; direction++) {
+				bits |= defaultMoveMask[direction] ? 1 << direction : 0;
+			}
+			this.defaultMoveBits = bits;
+		}
+
+		/**
+		 * The move mask packed into an int, for code that checks a lot of tiles (e.g. LevelGenerator). Gives the
+		 * same answer as the move mask of a FloorTile of this type, ignoring fire.
+		 * @param orientation Orientation of the tile, 0 to 4 (4 is the same as 0)
+		 * @return Bit d (0 north, 1 east, 2 south, 3 west) is set if the tile can be left in direction d
+		 */
+		public int getMoveBits(int orientation) {
+			int rotation = orientation % 4;
+			return ((defaultMoveBits << rotation) | (defaultMoveBits >> (4 - rotation))) & 0xF;
+		}
+
+		/**
+		 * @param direction Direction, 0 north, 1 east, 2 south, 3 west
+		 * @return The direction opposite to it
+		 */
+		public static int opposite(int direction) {
+			return (direction + 2) % 4;
 		}
 	}
 
-	private final double playerToTileScaling = 0.6f;
+	// The value this class had before it was declared, so older save files still load
+	private static final long serialVersionUID = 2629220703390719660L;
+	private static final double PLAYER_TO_TILE_SCALING = 0.6f;
+	private static final double OVERLAY_OPACITY = 0.5; // Of the frozen and fire images
+	private static final String FROZEN_IMAGE_URL = "source/resources/img/frozen_tile.png";
+	private static final String FIRE_IMAGE_URL = "source/resources/img/fire_tile.png";
+	// Children of a StackPane made by renderTile, from the bottom up
+	private static final int TILE_LAYER = 0;
+	private static final int FROZEN_LAYER = 1;
+	private static final int FIRE_LAYER = 2;
+	private static final int PLAYER_LAYER = 3;
 	private final FloorType floorType;
 
 	private Boolean[] moveMask; // Specifically THIS tiles move mask, which has been changed by orientation
@@ -119,6 +157,13 @@ public class FloorTile extends Tile implements Serializable {
 		this.player = player;
 	}
 
+	/**
+	 * @return FloorType of this FloorTile
+	 */
+	public FloorType getFloorType() {
+		return this.floorType;
+	}
+
 	/**
 	 * @return int 0 to 3 representing this FloorTile's orientation
 	 */
@@ -162,6 +207,20 @@ public class FloorTile extends Tile implements Serializable {
 		return isFixed || LevelController.getCurrentTime() < isFrozenUntil;
 	}
 
+	/**
+	 * @return The game time at which this tile stops burning, -1 if it was never set on fire
+	 */
+	public int getIsOnFireUntil() {
+		return this.isOnFireUntil;
+	}
+
+	/**
+	 * @return The game time at which this tile unfreezes, -1 if it was never frozen
+	 */
+	public int getIsFrozenUntil() {
+		return this.isFrozenUntil;
+	}
+
 	/**
 	 * @param isOnFireUntil How many individual player turns should this be on fire for
 	 */
@@ -188,43 +247,128 @@ public class FloorTile extends Tile implements Serializable {
 	 * @return StackPane representing the FloorTile.
 	 */
 	public StackPane renderTile(int renderSize) {
-		String url;
-		if (isFixed) {
-			url = this.floorType.imageURL.substring(0, this.floorType.imageURL.length() - 4) + "_fixed.png";
-		} else {
-			url = this.floorType.imageURL;
-		}
+		// Every layer is always there and hidden when not needed, so updateRender never has to add nodes
+		ImageView frozenImageView = new ImageView();
+		frozenImageView.setOpacity(OVERLAY_OPACITY);
+		ImageView fireImageView = new ImageView();
+		fireImageView.setOpacity(OVERLAY_OPACITY);
 
-		Image img = new Image(url, renderSize, renderSize, false, false);
+		StackPane stack = new StackPane(new ImageView(), frozenImageView, fireImageView, new ImageView());
+		stack.setStyle("-fx-border-width: 1px; -fx-border-color: darkgrey");
+		updateRender(stack, renderSize);
+		return stack;
+	}
 
-		ImageView iv = new ImageView(img);
-		iv.setRotate(90 * this.getOrientation());
+	/**
+	 * Show this FloorTile on a StackPane made by renderTile, e.g. one that showed the tile that was in this
+	 * tile's cell before an insertion. Only images and visibility change, no nodes are created.
+	 * @param stack StackPane made by renderTile, of any FloorTile
+	 * @param renderSize Size the tile is rendered at
+	 */
+	public void updateRender(StackPane stack, int renderSize) {
+		List<Node> layers = stack.getChildren();
+		// Sprites come from the SpriteCache already rotated, so nothing is decoded or rotated here
+		((ImageView) layers.get(TILE_LAYER)).setImage(
+				SpriteCache.get(this.floorType.imageURL, renderSize, this.getOrientation(), isFixed));
+		showLayer((ImageView) layers.get(FROZEN_LAYER), isFrozenUntil > LevelController.getCurrentTime(),
+				FROZEN_IMAGE_URL, renderSize);
+		showLayer((ImageView) layers.get(FIRE_LAYER), isOnFireUntil > LevelController.getCurrentTime(),
+				FIRE_IMAGE_URL, renderSize);
+		showLayer((ImageView) layers.get(PLAYER_LAYER), this.getPlayer() != null,
+				this.getPlayer() != null ? playerImageURL(this.getPlayer().getIdInGame()) : null,
+				playerRenderSize(renderSize));
+	}
 
-		StackPane stack = new StackPane(iv);
-		stack.setStyle("-fx-border-width: 1px; -fx-border-color: darkgrey");
+	/**
+	 * @param layer Layer of a rendered tile
+	 * @param shown Whether the layer should be shown
+	 * @param imageURL Image of the layer, only used if it is shown
+	 * @param size Size of the image
+	 */
+	private static void showLayer(ImageView layer, boolean shown, String imageURL, int size) {
+		layer.setVisible(shown);
+		layer.setImage(shown ? SpriteCache.get(imageURL, size) : null);
+	}
+
+	/**
+	 * Draw the FloorTile the same way renderTile shows it, for boards drawn into a single Canvas.
+	 * @param gc GraphicsContext of the canvas
+	 * @param x X-position of the tile's top left corner on the canvas
+	 * @param y Y-position of the tile's top left corner on the canvas
+	 * @param renderSize Size to draw the tile at
+	 */
+	public void drawTile(GraphicsContext gc, double x, double y, int renderSize) {
+		gc.drawImage(SpriteCache.get(this.floorType.imageURL, renderSize, this.getOrientation(), isFixed), x, y);
 
+		gc.setGlobalAlpha(OVERLAY_OPACITY);
 		if (isFrozenUntil > LevelController.getCurrentTime()) {
-			Image fixedImage = new Image("source/resources/img/frozen_tile.png", renderSize, renderSize, false, false);
-			ImageView fixedImageView = new ImageView(fixedImage);
-			fixedImageView.setOpacity(0.5);
-			stack.getChildren().addAll(fixedImageView);
+			gc.drawImage(SpriteCache.get(FROZEN_IMAGE_URL, renderSize), x, y);
 		}
-
 		if (isOnFireUntil > LevelController.getCurrentTime()) {
-			Image fixedImage = new Image("source/resources/img/fire_tile.png", renderSize, renderSize, false, false);
-			ImageView fixedImageView = new ImageView(fixedImage);
-			fixedImageView.setOpacity(0.5);
-			stack.getChildren().addAll(fixedImageView);
+			gc.drawImage(SpriteCache.get(FIRE_IMAGE_URL, renderSize), x, y);
 		}
+		gc.setGlobalAlpha(1);
 
 		if (this.getPlayer() != null) {
-			String playerImageURL = "source/resources/img/player_" + this.getPlayer().getIdInGame() + ".png";
-			Image playerImage = new Image(playerImageURL, renderSize * playerToTileScaling, renderSize * playerToTileScaling, false, false);
-			ImageView playerImageView = new ImageView(playerImage);
-			stack.getChildren().add(playerImageView);
+			int playerSize = playerRenderSize(renderSize);
+			double offset = (renderSize - playerSize) / 2.0;
+			gc.drawImage(SpriteCache.get(playerImageURL(this.getPlayer().getIdInGame()), playerSize), x + offset,
+					y + offset);
 		}
 
-		return stack;
+		gc.setStroke(Color.DARKGREY);
+		gc.setLineWidth(1);
+		gc.strokeRect(x + 0.5, y + 0.5, renderSize - 1, renderSize - 1);
+	}
+
+	/**
+	 * Everything that changes how this tile looks, packed into one number. Two calls give the same number only if
+	 * the tile would be drawn the same, so renderers can skip tiles that have not changed.
+	 * @return Signature of the tile's look, never negative
+	 */
+	public long getRenderSignature() {
+		long signature = this.floorType.ordinal();
+		signature = signature * 4 + this.orientation % 4;
+		signature = signature * 2 + (isFixed ? 1 : 0);
+		signature = signature * 2 + (isFrozenUntil > LevelController.getCurrentTime() ? 1 : 0);
+		signature = signature * 2 + (isOnFireUntil > LevelController.getCurrentTime() ? 1 : 0);
+		signature = signature * 5 + (this.player == null ? 0 : this.player.getIdInGame() + 1);
+		return signature;
+	}
+
+	/**
+	 * Get every sprite a FloorTile can be rendered with at a size, so they are in the SpriteCache before they
+	 * are needed.
+	 * @param renderSize Size tiles will be rendered at
+	 */
+	public static void warmSprites(int renderSize) {
+		for (FloorType type : FloorType.values()) {
+			for (int orientation = 0; orientation < 4; orientation++) {
+				SpriteCache.get(type.imageURL, renderSize, orientation, false);
+				SpriteCache.get(type.imageURL, renderSize, orientation, true);
+			}
+		}
+		SpriteCache.get(FROZEN_IMAGE_URL, renderSize);
+		SpriteCache.get(FIRE_IMAGE_URL, renderSize);
+		for (int player = 0; player < 4; player++) {
+			SpriteCache.get(playerImageURL(player), playerRenderSize(renderSize));
+		}
+	}
+
+	/**
+	 * @param playerID ID of a player in the game, 0-3
+	 * @return Image of that player's piece
+	 */
+	private static String playerImageURL(int playerID) {
+		return "source/resources/img/player_" + playerID + ".png";
+	}
+
+	/**
+	 * @param renderSize Size the tile is rendered at
+	 * @return Size of a player's piece on it
+	 */
+	private static int playerRenderSize(int renderSize) {
+		return (int) (renderSize * PLAYER_TO_TILE_SCALING);
 	}
 
 	/**
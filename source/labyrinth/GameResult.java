@@ -0,0 +1,67 @@
+package source.labyrinth;
+
+import java.util.List;
+
+/**
+ * GameResult describes how a finished game ended: which level was played, which profiles took part and which
+ * of them won. It is what gets handed to the leaderboards once a game is over.
+ * @author Fillip Serov
+ */
+public class GameResult {
+	private final String levelName;
+	private final int[] profileIds;
+	private final Integer winningProfile;
+
+	/**
+	 * @param levelName Level that was played
+	 * @param profileIds Ids of the profiles that played, in seat order
+	 * @param winningProfile Id of the profile that won, null if the winner had no profile
+	 */
+	public GameResult(String levelName, int[] profileIds, Integer winningProfile) {
+		this.levelName = levelName;
+		this.profileIds = profileIds.clone();
+		this.winningProfile = winningProfile;
+	}
+
+	/**
+	 * @param levelName Level that was played
+	 * @param profileIds Ids of the profiles that played, in seat order
+	 * @param winningProfile Id of the profile that won, null if the winner had no profile
+	 */
+	public GameResult(String levelName, List<Integer> profileIds, Integer winningProfile) {
+		this(levelName, toArray(profileIds), winningProfile);
+	}
+
+	/**
+	 * @return Level that was played
+	 */
+	public String getLevelName() {
+		return levelName;
+	}
+
+	/**
+	 * @return Ids of the profiles that played, in seat order
+	 */
+	public int[] getProfileIds() {
+		return profileIds.clone();
+	}
+
+	/**
+	 * @return Id of the profile that won, null if the winner had no profile
+	 */
+	public Integer getWinningProfile() {
+		return winningProfile;
+	}
+
+	/**
+	 * @param list List of ids
+	 * @return The same ids as an array
+	 */
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
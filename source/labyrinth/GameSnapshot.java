@@ -0,0 +1,384 @@
+package source.labyrinth;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * GameSnapshot is a compact, fixed layout copy of everything needed to rebuild a game. Unlike the serialized
+ * object graph it is laid out as a set of planes (tile codes, fire times, ice times, players, silk bag counts)
+ * that keep the same size for the whole game, so two snapshots of the same game can be XORed against each
+ * other byte for byte by SnapshotChain.
+ * @author Fillip Serov
+ */
+public class GameSnapshot {
+	private static final int FORMAT_VERSION = 2;
+	private static final int FIRST_VERSION_WITH_MATCH_INFO = 2;
+	private static final int PAST_POSITIONS = 3;
+	// Orientations are drawn with nextInt(5), so 0 to 4 can appear in the bag
+	private static final int ORIENTATIONS = 5;
+	private static final int FIXED_BIT = 0x80;
+	private static final int TYPE_SHIFT = 3;
+	private static final int ORIENTATION_MASK = 0x07;
+	private static final int NO_TILE = 0xFF;
+
+	private final int currentTime;
+	private final String levelName;
+	private final Player[] players;
+	private final int currentPlayer;
+	private final Board board;
+	private final FloorTile floorTileToInsert;
+	private final int turnPhase;
+	private final LinkedList<Tile> bag;
+	// Kept for the match history, 0 in saves made before it existed
+	private long seed;
+	private int actionTilesUsed;
+	private long playedMillis;
+
+	/**
+	 * Create a snapshot of a game. Nothing is copied until encode is called, so the game should not change
+	 * in between.
+	 * @param currentTime Current game time
+	 * @param levelName Name of the level being played
+	 * @param players Players in the game
+	 * @param currentPlayer Player whose turn it is
+	 * @param board Board of the game
+	 * @param floorTileToInsert FloorTile waiting to be inserted, can be null
+	 * @param turnPhase Ordinal of the phase the game is in
+	 * @param bag Contents of the SilkBag
+	 */
+	public GameSnapshot(int currentTime, String levelName, Player[] players, int currentPlayer, Board board,
+						FloorTile floorTileToInsert, int turnPhase, LinkedList<Tile> bag) {
+		this.currentTime = currentTime;
+		this.levelName = levelName;
+		this.players = players;
+		this.currentPlayer = currentPlayer;
+		this.board = board;
+		this.floorTileToInsert = floorTileToInsert;
+		this.turnPhase = turnPhase;
+		this.bag = bag;
+	}
+
+	/**
+	 * Rebuild a snapshot from bytes previously made by encode. Players are placed back on their tiles.
+	 * @param data Bytes made by encode
+	 * @return GameSnapshot holding freshly built game objects
+	 * @throws IOException If the bytes are not a valid snapshot
+	 */
+	public static GameSnapshot decode(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		int version = in.readInt();
+		if (version < 1 || version > FORMAT_VERSION) {
+			throw new IOException("Unknown snapshot version.");
+		}
+		String levelName = in.readUTF();
+		int width = in.readInt();
+		int height = in.readInt();
+		int cells = width * height;
+
+		// Tile code plane, then the fire and ice planes
+		Board board = new Board(width, height);
+		byte[] codes = new byte[cells];
+		in.readFully(codes);
+		for (int i = 0; i < cells; i++) {
+			board.setTileAt(decodeTile(codes[i] & NO_TILE), i / height, i % height);
+		}
+		for (int i = 0; i < cells; i++) {
+			board.getTileAt(i / height, i % height).setIsOnFireUntil(in.readInt());
+		}
+		for (int i = 0; i < cells; i++) {
+			board.getTileAt(i / height, i % height).setIsFrozenUntil(in.readInt());
+		}
+
+		Player[] players = new Player[in.readInt()];
+		for (int i = 0; i < players.length; i++) {
+			players[i] = readPlayer(in, i, board);
+		}
+
+		int currentTime = in.readInt();
+		int currentPlayer = in.readInt();
+		int turnPhase = in.readInt();
+		int toInsertCode = in.readUnsignedByte();
+		FloorTile floorTileToInsert = toInsertCode == NO_TILE ? null : decodeTile(toInsertCode);
+
+		// The bag order does not matter since tiles are drawn at random, so only the counts are stored
+		LinkedList<Tile> bag = new LinkedList<>();
+		for (FloorTile.FloorType type : FloorTile.FloorType.values()) {
+			for (int orientation = 0; orientation < ORIENTATIONS; orientation++) {
+				int amount = in.readInt();
+				for (int i = 0; i < amount; i++) {
+					bag.add(new FloorTile(orientation, type));
+				}
+			}
+		}
+		for (ActionTile.ActionType type : ActionTile.ActionType.values()) {
+			int amount = in.readInt();
+			for (int i = 0; i < amount; i++) {
+				bag.add(new ActionTile(type));
+			}
+		}
+
+		GameSnapshot snapshot = new GameSnapshot(currentTime, levelName, players, currentPlayer, board,
+				floorTileToInsert, turnPhase, bag);
+		if (version >= FIRST_VERSION_WITH_MATCH_INFO) {
+			snapshot.setMatchInfo(in.readLong(), in.readInt(), in.readLong());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Add what the match history needs to know about the game so far.
+	 * @param seed Seed the game was set up with
+	 * @param actionTilesUsed Action tiles played so far
+	 * @param playedMillis Time spent playing so far
+	 */
+	public void setMatchInfo(long seed, int actionTilesUsed, long playedMillis) {
+		this.seed = seed;
+		this.actionTilesUsed = actionTilesUsed;
+		this.playedMillis = playedMillis;
+	}
+
+	/**
+	 * Encode this snapshot. The length of the result only depends on the board size and amount of players,
+	 * so every snapshot of one game has the same length and the same field at the same offset.
+	 * @return Encoded snapshot
+	 */
+	public byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(levelName);
+			out.writeInt(board.getWidth());
+			out.writeInt(board.getHeight());
+
+			for (int x = 0; x < board.getWidth(); x++) {
+				for (int y = 0; y < board.getHeight(); y++) {
+					out.writeByte(encodeTile(board.getTileAt(x, y)));
+				}
+			}
+			for (int x = 0; x < board.getWidth(); x++) {
+				for (int y = 0; y < board.getHeight(); y++) {
+					out.writeInt(board.getTileAt(x, y).getIsOnFireUntil());
+				}
+			}
+			for (int x = 0; x < board.getWidth(); x++) {
+				for (int y = 0; y < board.getHeight(); y++) {
+					out.writeInt(board.getTileAt(x, y).getIsFrozenUntil());
+				}
+			}
+
+			out.writeInt(players.length);
+			for (Player player : players) {
+				writePlayer(out, player);
+			}
+
+			out.writeInt(currentTime);
+			out.writeInt(currentPlayer);
+			out.writeInt(turnPhase);
+			out.writeByte(floorTileToInsert == null ? NO_TILE : encodeTile(floorTileToInsert));
+			writeBagCounts(out);
+			out.writeLong(seed);
+			out.writeInt(actionTilesUsed);
+			out.writeLong(playedMillis);
+			out.flush();
+		} catch (IOException e) {
+			// A ByteArrayOutputStream never throws
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return Game time of the snapshot
+	 */
+	public int getCurrentTime() {
+		return currentTime;
+	}
+
+	/**
+	 * @return Name of the level the snapshot was taken on
+	 */
+	public String getLevelName() {
+		return levelName;
+	}
+
+	/**
+	 * @return Players of the snapshot, already standing on the board
+	 */
+	public Player[] getPlayers() {
+		return players;
+	}
+
+	/**
+	 * @return Player whose turn it was
+	 */
+	public int getCurrentPlayer() {
+		return currentPlayer;
+	}
+
+	/**
+	 * @return Board of the snapshot
+	 */
+	public Board getBoard() {
+		return board;
+	}
+
+	/**
+	 * @return FloorTile that was waiting to be inserted, can be null
+	 */
+	public FloorTile getFloorTileToInsert() {
+		return floorTileToInsert;
+	}
+
+	/**
+	 * @return Ordinal of the turn phase the game was in
+	 */
+	public int getTurnPhase() {
+		return turnPhase;
+	}
+
+	/**
+	 * @return Contents of the SilkBag
+	 */
+	public LinkedList<Tile> getBag() {
+		return bag;
+	}
+
+	/**
+	 * @return Seed the game was set up with
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return Action tiles played before the snapshot
+	 */
+	public int getActionTilesUsed() {
+		return actionTilesUsed;
+	}
+
+	/**
+	 * @return Time spent playing before the snapshot, in milliseconds
+	 */
+	public long getPlayedMillis() {
+		return playedMillis;
+	}
+
+	/**
+	 * @param tile FloorTile to encode
+	 * @return One byte holding whether the tile is fixed, its type and its orientation
+	 */
+	private static int encodeTile(FloorTile tile) {
+		int code = (tile.getFloorType().ordinal() << TYPE_SHIFT) | tile.getOrientation();
+		return tile.getFixed() ? code | FIXED_BIT : code;
+	}
+
+	/**
+	 * @param code Byte made by encodeTile
+	 * @return New FloorTile matching the code
+	 */
+	private static FloorTile decodeTile(int code) {
+		FloorTile.FloorType type = FloorTile.FloorType.values()[(code & ~FIXED_BIT) >> TYPE_SHIFT];
+		FloorTile tile = new FloorTile(code & ORIENTATION_MASK, type);
+		tile.setFixed((code & FIXED_BIT) != 0);
+		return tile;
+	}
+
+	/**
+	 * Write a player's profile, position, history and actions.
+	 * @param out Stream to write to
+	 * @param player Player to write
+	 * @throws IOException If writing fails
+	 */
+	private void writePlayer(DataOutputStream out, Player player) throws IOException {
+		int[] position = findPlayer(player);
+		out.writeInt(player.getAssociatedProfileID());
+		out.writeInt(position[0]);
+		out.writeInt(position[1]);
+		for (int[] past : player.getPastPositions()) {
+			out.writeInt(past[0]);
+			out.writeInt(past[1]);
+		}
+		out.writeBoolean(player.getHasBeenBacktracked());
+		for (ActionTile.ActionType type : ActionTile.ActionType.values()) {
+			out.writeFloat(player.getActionAmount(type));
+		}
+	}
+
+	/**
+	 * Read a player written by writePlayer and put them on the board.
+	 * @param in Stream to read from
+	 * @param idInGame Id of the player in the game
+	 * @param board Board to place the player on
+	 * @return The rebuilt Player
+	 * @throws IOException If reading fails
+	 */
+	private static Player readPlayer(DataInputStream in, int idInGame, Board board) throws IOException {
+		Player player = new Player(idInGame, in.readInt());
+		player.setStandingOn(board.getTileAt(in.readInt(), in.readInt()));
+
+		int[][] past = new int[PAST_POSITIONS][2];
+		for (int[] position : past) {
+			position[0] = in.readInt();
+			position[1] = in.readInt();
+		}
+		// Oldest first, since addToPastPositions pushes the newest to index 0
+		for (int i = PAST_POSITIONS - 1; i >= 0; i--) {
+			player.addToPastPositions(past[i][0], past[i][1]);
+		}
+
+		player.setHasBeenBacktracked(in.readBoolean());
+		for (ActionTile.ActionType type : ActionTile.ActionType.values()) {
+			player.setActionAmount(type, in.readFloat());
+		}
+		return player;
+	}
+
+	/**
+	 * @param player Player to look for
+	 * @return (x, y) of the tile the player stands on
+	 */
+	private int[] findPlayer(Player player) {
+		int[] position = {0, 0};
+		for (int x = 0; x < board.getWidth(); x++) {
+			for (int y = 0; y < board.getHeight(); y++) {
+				if (board.getTileAt(x, y).getPlayer() == player) {
+					position[0] = x;
+					position[1] = y;
+				}
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Write how many of each tile (and orientation) the bag holds, in a fixed order.
+	 * @param out Stream to write to
+	 * @throws IOException If writing fails
+	 */
+	private void writeBagCounts(DataOutputStream out) throws IOException {
+		int[][] floorCounts = new int[FloorTile.FloorType.values().length][ORIENTATIONS];
+		int[] actionCounts = new int[ActionTile.ActionType.values().length];
+		for (Tile tile : bag) {
+			if (tile instanceof FloorTile) {
+				FloorTile ft = (FloorTile) tile;
+				floorCounts[ft.getFloorType().ordinal()][ft.getOrientation()]++;
+			} else {
+				actionCounts[((ActionTile) tile).getType().ordinal()]++;
+			}
+		}
+		for (int[] counts : floorCounts) {
+			for (int count : counts) {
+				out.writeInt(count);
+			}
+		}
+		for (int count : actionCounts) {
+			out.writeInt(count);
+		}
+	}
+}
@@ -0,0 +1,338 @@
+package source.labyrinth;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LeaderboardStore holds the leaderboards of every level in memory (level name -> profile id -> wins). Changes
+ * are appended to a single log file, which is rewritten as one record per entry once it grows too long.
+ * It is entirely static, like ProfileManager, and loads itself the first time it is used.
+ * @author Fillip Serov
+ */
+public final class LeaderboardStore {
+	private static final File LEADERBOARD_DIRECTORY = new File("source/resources/leaderboards");
+	private static final File LOG_FILE = new File(LEADERBOARD_DIRECTORY, "leaderboards.log");
+	private static final String LEGACY_SUFFIX = "_leaderboard.ser";
+	// Compact once the log holds this many times more records than there are entries
+	private static final int COMPACTION_RATIO = 4;
+	private static final int MIN_RECORDS_BEFORE_COMPACTION = 1024;
+
+	/**
+	 * One line of the log: add some wins to a profile on a level.
+	 */
+	private static final class Record {
+		private final String levelName;
+		private final int profileId;
+		private final int wins;
+
+		/**
+		 * @param levelName Level of the entry
+		 * @param profileId Profile of the entry
+		 * @param wins Wins to add
+		 */
+		private Record(String levelName, int profileId, int wins) {
+			this.levelName = levelName;
+			this.profileId = profileId;
+			this.wins = wins;
+		}
+	}
+
+	/**
+	 * One row of a level's leaderboard. Immutable.
+	 */
+	public static final class LeaderboardEntry {
+		private final int profileId;
+		private final int wins;
+
+		/**
+		 * @param profileId Profile of the row
+		 * @param wins Wins of the profile on the level
+		 */
+		private LeaderboardEntry(int profileId, int wins) {
+			this.profileId = profileId;
+			this.wins = wins;
+		}
+
+		/**
+		 * @return Profile of the row
+		 */
+		public int getProfileId() {
+			return profileId;
+		}
+
+		/**
+		 * @return Wins of the profile on the level
+		 */
+		public int getWins() {
+			return wins;
+		}
+	}
+
+	private static HashMap<String, HashMap<Integer, Integer>> leaderboards;
+	private static int logRecords; // Records currently in the log file
+	private static int liveEntries; // (level, profile) pairs in memory
+
+	/**
+	 * Record the result of one finished game.
+	 * @param result GameResult to record
+	 */
+	public static void recordResult(GameResult result) {
+		recordResults(Collections.singletonList(result));
+	}
+
+	/**
+	 * Record the results of many games with a single write to the log. Useful for tournaments and simulations.
+	 * @param results GameResults to record
+	 */
+	public static synchronized void recordResults(List<GameResult> results) {
+		ensureLoaded();
+
+		// Every player gets a record with 0 wins so they appear on the leaderboard, the winner gets +1
+		ArrayList<Record> records = new ArrayList<>();
+		for (GameResult result : results) {
+			for (int profileId : result.getProfileIds()) {
+				int wins = result.getWinningProfile() != null && result.getWinningProfile() == profileId ? 1 : 0;
+				records.add(new Record(result.getLevelName(), profileId, wins));
+			}
+		}
+
+		for (Record record : records) {
+			apply(record.levelName, record.profileId, record.wins);
+		}
+
+		try {
+			appendToLog(records);
+			logRecords += records.size();
+		} catch (IOException e) {
+			System.out.println("Could not write to the leaderboard log.");
+			e.printStackTrace();
+		}
+
+		if (logRecords >= MIN_RECORDS_BEFORE_COMPACTION && logRecords > COMPACTION_RATIO * liveEntries) {
+			compact();
+		}
+	}
+
+	/**
+	 * Get the leaderboard of a level. Nothing is read from disk after the first call.
+	 * @param levelName Level to get the leaderboard of
+	 * @return Copy of the level's leaderboard (profile id -> wins), empty if nobody played it yet
+	 */
+	public static synchronized HashMap<Integer, Integer> getLeaderboard(String levelName) {
+		ensureLoaded();
+		HashMap<Integer, Integer> leaderboard = leaderboards.get(levelName);
+		return leaderboard == null ? new HashMap<>() : new HashMap<>(leaderboard);
+	}
+
+	/**
+	 * Get the leaderboard of a level as rows ready to be shown, most wins first.
+	 * @param levelName Level to get the leaderboard of
+	 * @return Rows of the leaderboard, empty if nobody played it yet
+	 */
+	public static synchronized List<LeaderboardEntry> getRanking(String levelName) {
+		ensureLoaded();
+		ArrayList<LeaderboardEntry> ranking = new ArrayList<>();
+		HashMap<Integer, Integer> leaderboard = leaderboards.get(levelName);
+		if (leaderboard != null) {
+			leaderboard.forEach((profileId, wins) -> ranking.add(new LeaderboardEntry(profileId, wins)));
+		}
+		ranking.sort(Comparator.comparingInt((LeaderboardEntry e) -> -e.wins).thenComparingInt(e -> e.profileId));
+		return ranking;
+	}
+
+	/**
+	 * Rewrite the log so that it holds a single record per (level, profile) pair. The new log replaces the old
+	 * one in a single rename, so a crash in between leaves the old log intact.
+	 */
+	public static synchronized void compact() {
+		ensureLoaded();
+
+		ArrayList<Record> records = new ArrayList<>();
+		for (Map.Entry<String, HashMap<Integer, Integer>> level : leaderboards.entrySet()) {
+			for (Map.Entry<Integer, Integer> entry : level.getValue().entrySet()) {
+				records.add(new Record(level.getKey(), entry.getKey(), entry.getValue()));
+			}
+		}
+
+		File tempFile = new File(LEADERBOARD_DIRECTORY, LOG_FILE.getName() + ".tmp");
+		try {
+			writeRecords(tempFile, records, false);
+			Files.move(tempFile.toPath(), LOG_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			logRecords = records.size();
+			System.out.println("Compacted leaderboard log to " + logRecords + " records.");
+		} catch (IOException e) {
+			System.out.println("Could not compact the leaderboard log.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Load the log into memory if that has not happened yet. The first time the store is used, leaderboards
+	 * from the old one-file-per-level format are imported.
+	 */
+	private static void ensureLoaded() {
+		if (leaderboards == null) {
+			leaderboards = new HashMap<>();
+			logRecords = 0;
+			liveEntries = 0;
+
+			if (LOG_FILE.exists()) {
+				readLog();
+			} else {
+				LEADERBOARD_DIRECTORY.mkdirs();
+				importLegacyLeaderboards();
+				compact();
+			}
+			System.out.println("Loaded leaderboards for " + leaderboards.size() + " levels.");
+		}
+	}
+
+	/**
+	 * Add wins to an entry, creating the entry if it does not exist yet.
+	 * @param levelName Level of the entry
+	 * @param profileId Profile of the entry
+	 * @param wins Wins to add, can be 0
+	 */
+	private static void apply(String levelName, int profileId, int wins) {
+		HashMap<Integer, Integer> leaderboard = leaderboards.get(levelName);
+		if (leaderboard == null) {
+			leaderboard = new HashMap<>();
+			leaderboards.put(levelName, leaderboard);
+		}
+		Integer current = leaderboard.get(profileId);
+		if (current == null) {
+			liveEntries++;
+			current = 0;
+		}
+		leaderboard.put(profileId, current + wins);
+	}
+
+	/**
+	 * Replay the log file into memory. A record cut short by a crash is cut off the log, so the records appended
+	 * after it can still be read.
+	 */
+	private static void readLog() {
+		try {
+			long length = LOG_FILE.length();
+			long complete = 0; // Bytes up to the end of the last complete record
+			boolean torn = false;
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(LOG_FILE)));
+			try {
+				while (in.available() > 0) {
+					String levelName = in.readUTF();
+					int profileId = in.readInt();
+					int wins = in.readInt();
+					apply(levelName, profileId, wins);
+					logRecords++;
+					complete = length - in.available();
+				}
+			} catch (EOFException e) {
+				torn = true;
+			} finally {
+				in.close();
+			}
+
+			if (torn) {
+				System.out.println("Leaderboard log ends in a partial record, cutting it off.");
+				truncate(LOG_FILE, complete);
+			}
+		} catch (IOException e) {
+			System.out.println("Could not read the leaderboard log.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Read every leaderboard saved in the old format (a serialized HashMap per level) into memory.
+	 */
+	private static void importLegacyLeaderboards() {
+		File[] files = LEADERBOARD_DIRECTORY.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().endsWith(LEGACY_SUFFIX)) {
+					String levelName = file.getName().substring(0, file.getName().length() - LEGACY_SUFFIX.length());
+					importLegacyLeaderboard(levelName, file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param levelName Level the leaderboard belongs to
+	 * @param file Serialized HashMap of profile id -> wins
+	 */
+	private static void importLegacyLeaderboard(String levelName, File file) {
+		try {
+			ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(file));
+			HashMap<Integer, Integer> leaderboardInfo = (HashMap<Integer, Integer>) objectInputStream.readObject();
+			objectInputStream.close();
+
+			leaderboardInfo.forEach((profileId, wins) -> apply(levelName, profileId, wins));
+			System.out.println("Imported old leaderboard for " + levelName);
+		} catch (IOException | ClassNotFoundException e) {
+			System.out.println("Could not import old leaderboard " + file.getName());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param records Records to append
+	 * @throws IOException If the log cannot be written to
+	 */
+	private static void appendToLog(List<Record> records) throws IOException {
+		writeRecords(LOG_FILE, records, true);
+	}
+
+	/**
+	 * @param file File to cut short
+	 * @param length Length to cut it to
+	 * @throws IOException If the file cannot be written to
+	 */
+	private static void truncate(File file, long length) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+		try {
+			channel.truncate(length);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @param file File to write to
+	 * @param records Records
+	 * @param append Whether to append to the file or replace it
+	 * @throws IOException If the file cannot be written to
+	 */
+	private static void writeRecords(File file, List<Record> records, boolean append) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+		try {
+			for (Record record : records) {
+				out.writeUTF(record.levelName);
+				out.writeInt(record.profileId);
+				out.writeInt(record.wins);
+			}
+			out.flush();
+		} finally {
+			out.close();
+		}
+	}
+}
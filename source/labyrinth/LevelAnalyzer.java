@@ -0,0 +1,411 @@
+package source.labyrinth;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * LevelAnalyzer measures how hard and how fair a level is. For every starting seat it works out the least amount
+ * of turns needed to reach a goal, assuming every draw from the silk bag is the best one possible, and then how
+ * many turns an opponent's FIRE or ICE, placed in the worst spot before the seat's first turn, can cost it.
+ * <p>
+ * Favourable draws mean every cell that is not fixed holds whatever tile suits the player, so only fixed tiles
+ * restrict movement. In a turn the player either draws a floor tile (and may insert it into their own row or
+ * column, moving along with it, wrapping around the edge like Board.insertFloorTile does) or draws a DOUBLEMOVE
+ * to use in a later turn. After that they may use a DOUBLEMOVE they were already holding and then move. Other
+ * players and BACKTRACK are ignored, so the turns found are a lower bound on what a real game takes.
+ * <p>
+ * The search is a breadth-first search by turn. A state (position and DOUBLEMOVEs held) is hashed into a
+ * concurrent set so it is expanded only once, and each turn's frontier is expanded in parallel. Being somewhere
+ * sooner is never worse, as fire and ice only wear off, so a state seen in an earlier turn is not looked at again.
+ * @author Fillip Serov
+ */
+public final class LevelAnalyzer {
+	public static final int UNREACHABLE = -1;
+	private static final int[] DX = {0, 1, 0, -1};
+	private static final int[] DY = {-1, 0, 1, 0};
+	private static final int ALL_DIRECTIONS = 0xF;
+	private static final int WIN = -1;
+	private static final int FIRE_TURNS = 2; // Fire burns for 2 full loops
+	private static final int ICE_TURNS = 1; // Ice freezes for 1 full loop
+	private static final int MAX_HELD_DOUBLE_MOVES = 3; // More never helps within a turn or two
+	private static final int PARALLEL_FRONTIER = 512; // Frontiers at least this large are expanded in parallel
+
+	private final LevelTemplate level;
+	private final int width;
+	private final int height;
+	private final int[] openings; // Move bits of every cell, x * height + y
+	private final boolean[] goals;
+	private final int maxHeld;
+	private final boolean[] fixedColumns;
+	private final boolean[] fixedRows;
+
+	/**
+	 * What the analyzer found out about a level.
+	 */
+	public static final class Report {
+		private final String levelName;
+		private final int[] minimumTurns;
+		private final int[] fireSensitivity;
+		private final int[] iceSensitivity;
+
+		/**
+		 * @param levelName Name of the level
+		 * @param minimumTurns Least turns to a goal, by seat
+		 * @param fireSensitivity Most turns a FIRE can add, by seat
+		 * @param iceSensitivity Most turns an ICE can add, by seat
+		 */
+		private Report(String levelName, int[] minimumTurns, int[] fireSensitivity, int[] iceSensitivity) {
+			this.levelName = levelName;
+			this.minimumTurns = minimumTurns;
+			this.fireSensitivity = fireSensitivity;
+			this.iceSensitivity = iceSensitivity;
+		}
+
+		/**
+		 * @return Name of the level
+		 */
+		public String getLevelName() {
+			return levelName;
+		}
+
+		/**
+		 * @param seat Seat, 0 to 3
+		 * @return Least turns for that seat to reach a goal, UNREACHABLE if it never can
+		 */
+		public int getMinimumTurns(int seat) {
+			return minimumTurns[seat];
+		}
+
+		/**
+		 * @return How many more turns the slowest seat needs than the fastest one, UNREACHABLE if some seat can
+		 *         never reach a goal
+		 */
+		public int getAsymmetry() {
+			int fastest = Integer.MAX_VALUE;
+			int slowest = 0;
+			boolean reachable = true;
+			for (int turns : minimumTurns) {
+				reachable &= turns != UNREACHABLE;
+				fastest = Math.min(fastest, turns);
+				slowest = Math.max(slowest, turns);
+			}
+			return reachable ? slowest - fastest : UNREACHABLE;
+		}
+
+		/**
+		 * @param seat Seat, 0 to 3
+		 * @return Most turns a FIRE placed before the seat's first turn can add to its minimum
+		 */
+		public int getFireSensitivity(int seat) {
+			return fireSensitivity[seat];
+		}
+
+		/**
+		 * @param seat Seat, 0 to 3
+		 * @return Most turns an ICE placed before the seat's first turn can add to its minimum
+		 */
+		public int getIceSensitivity(int seat) {
+			return iceSensitivity[seat];
+		}
+
+		/**
+		 * @return The report as a few lines of text
+		 */
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder(levelName + ": asymmetry " + getAsymmetry());
+			for (int seat = 0; seat < minimumTurns.length; seat++) {
+				text.append(System.lineSeparator()).append("  seat ").append(seat).append(": ")
+						.append(minimumTurns[seat]).append(" turns, fire +").append(fireSensitivity[seat])
+						.append(", ice +").append(iceSensitivity[seat]);
+			}
+			return text.toString();
+		}
+	}
+
+	/**
+	 * @param level Level to analyze
+	 */
+	public LevelAnalyzer(LevelTemplate level) {
+		this.level = level;
+		this.width = level.getWidth();
+		this.height = level.getHeight();
+		this.openings = new int[width * height];
+		this.goals = new boolean[width * height];
+		this.fixedColumns = new boolean[width];
+		this.fixedRows = new boolean[height];
+		boolean goalsInBag = level.getFloorTileAmount(FloorTile.FloorType.GOAL) > 0;
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				int cell = level.getCell(x, y);
+				int index = x * height + y;
+				if (cell == LevelTemplate.EMPTY) {
+					// A favourable draw can put a goal from the bag on any cell that is not fixed
+					openings[index] = ALL_DIRECTIONS;
+					goals[index] = goalsInBag;
+				} else {
+					openings[index] = LevelTemplate.cellType(cell).getMoveBits(LevelTemplate.cellOrientation(cell));
+					goals[index] = LevelTemplate.cellType(cell) == FloorTile.FloorType.GOAL;
+					fixedColumns[x] = fixedRows[y] = true;
+				}
+			}
+		}
+		this.maxHeld = Math.min(MAX_HELD_DOUBLE_MOVES, level.getActionTileAmount(ActionTile.ActionType.DOUBLEMOVE));
+	}
+
+	/**
+	 * Analyze levels and print the reports.
+	 * @param args Names of the levels, every level in the catalog if none are given
+	 */
+	public static void main(String[] args) {
+		List<String> levelNames;
+		if (args.length == 0) {
+			LevelCatalog.performSetup();
+			levelNames = LevelCatalog.getLevels().stream().map(LevelCatalog.LevelInfo::getName)
+					.collect(Collectors.toList());
+		} else {
+			levelNames = Arrays.asList(args);
+		}
+		for (String levelName : levelNames) {
+			try {
+				long start = System.currentTimeMillis();
+				Report report = new LevelAnalyzer(LevelTemplateCache.get(levelName)).analyze();
+				System.out.println(report + System.lineSeparator() + "  analyzed in "
+						+ (System.currentTimeMillis() - start) + "ms");
+			} catch (IOException e) {
+				System.out.println("Could not analyze " + levelName + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return Minimum turns, asymmetry and FIRE/ICE sensitivity of every seat
+	 */
+	public Report analyze() {
+		int seats = LevelTemplate.MAX_PLAYERS;
+		int[] minimumTurns = new int[seats];
+		int[] fireSensitivity = new int[seats];
+		int[] iceSensitivity = new int[seats];
+		boolean[] nearStart = new boolean[width * height];
+		for (int seat = 0; seat < seats; seat++) {
+			int[] start = level.getPlayerStartingPosition(seat);
+			markArea(nearStart, start[0], start[1]);
+		}
+
+		for (int seat = 0; seat < seats; seat++) {
+			int[] start = level.getPlayerStartingPosition(seat);
+			int startState = start[0] * height + start[1];
+			boolean[] reachedWhileBurning = new boolean[width * height];
+			int turns = minimumTurns(startState, null, null, reachedWhileBurning);
+			minimumTurns[seat] = turns;
+			if (turns != UNREACHABLE) {
+				// Fire cannot be set where a player is within the 3 x 3 area, and only matters if it covers a cell
+				// the seat could reach while it burns. Ice can be set anywhere, but only matters if it freezes the
+				// row or column the seat starts in, as that is all it could insert into in its first turn.
+				fireSensitivity[seat] = IntStream.range(0, width * height).parallel()
+						.filter(centre -> !nearStart[centre] && overlaps(area(centre), reachedWhileBurning))
+						.map(centre -> minimumTurns(startState, area(centre), null, null) - turns)
+						.max().orElse(0);
+				iceSensitivity[seat] = IntStream.range(0, width * height).parallel()
+						.filter(centre -> Math.abs(centre / height - start[0]) <= 1
+								|| Math.abs(centre % height - start[1]) <= 1)
+						.map(centre -> minimumTurns(startState, null, area(centre), null) - turns)
+						.max().orElse(0);
+			}
+		}
+		return new Report(level.getName(), minimumTurns, fireSensitivity, iceSensitivity);
+	}
+
+	/**
+	 * Work out only the least amount of turns every seat needs, which is much quicker than a full analysis.
+	 * @return Least turns every seat needs to reach a goal, UNREACHABLE for a seat that cannot reach one
+	 */
+	public int[] minimumTurns() {
+		int[] minimumTurns = new int[LevelTemplate.MAX_PLAYERS];
+		for (int seat = 0; seat < minimumTurns.length; seat++) {
+			int[] start = level.getPlayerStartingPosition(seat);
+			minimumTurns[seat] = minimumTurns(start[0] * height + start[1], null, null, null);
+		}
+		return minimumTurns;
+	}
+
+	/**
+	 * Breadth-first search, one turn per layer, from a starting state until a goal is reached.
+	 * @param startState State to start in
+	 * @param fire Cells on fire in the first FIRE_TURNS turns, null for none
+	 * @param ice Cells frozen in the first ICE_TURNS turns, null for none
+	 * @param reachedWhileBurning Marked with every cell that can be reached in the first FIRE_TURNS turns, null
+	 *                            if not needed
+	 * @return Least turns to reach a goal, UNREACHABLE if no goal can be reached
+	 */
+	private int minimumTurns(int startState, boolean[] fire, boolean[] ice, boolean[] reachedWhileBurning) {
+		Set<Integer> seen = ConcurrentHashMap.newKeySet();
+		seen.add(startState);
+		List<Integer> frontier = Collections.singletonList(startState);
+		int turn = 0;
+		int result = UNREACHABLE;
+		while (result == UNREACHABLE && !frontier.isEmpty()) {
+			boolean[] burning = turn < FIRE_TURNS ? fire : null;
+			boolean[] frozen = turn < ICE_TURNS ? ice : null;
+			// Small frontiers are cheaper to expand on this thread, analyze() already runs searches in parallel
+			Stream<Integer> states = frontier.size() >= PARALLEL_FRONTIER ? frontier.parallelStream() : frontier.stream();
+			List<Integer> next = states
+					.flatMapToInt(state -> expand(state, burning, frozen))
+					.filter(state -> state == WIN || seen.add(state))
+					.boxed()
+					.collect(Collectors.toList());
+			if (reachedWhileBurning != null && turn < FIRE_TURNS) {
+				for (int state : next) {
+					if (state != WIN) {
+						reachedWhileBurning[state % (width * height)] = true;
+					}
+				}
+			}
+			turn++;
+			if (next.contains(WIN)) {
+				result = turn;
+			}
+			frontier = next;
+		}
+		return result;
+	}
+
+	/**
+	 * Every state one turn can lead to.
+	 * @param state State at the start of the turn
+	 * @param burning Cells on fire this turn, null for none
+	 * @param frozen Cells frozen this turn, null for none
+	 * @return States at the end of the turn, WIN if a goal can be reached in it
+	 */
+	private IntStream expand(int state, boolean[] burning, boolean[] frozen) {
+		int cell = state % (width * height);
+		int held = state / (width * height);
+		int x = cell / height;
+		int y = cell % height;
+		IntStream.Builder states = IntStream.builder();
+
+		// Draw a floor tile: stay, or insert into our own column or row and move along with it
+		int[] positions = {cell, -1, -1, -1, -1};
+		if (isInsertable(x, true, frozen)) {
+			positions[1] = x * height + (y + 1) % height;
+			positions[2] = x * height + (y + height - 1) % height;
+		}
+		if (isInsertable(y, false, frozen)) {
+			positions[3] = ((x + 1) % width) * height + y;
+			positions[4] = ((x + width - 1) % width) * height + y;
+		}
+		for (int position : positions) {
+			if (position != -1) {
+				addMoves(states, position, held, held, burning);
+			}
+		}
+		// Draw a DOUBLEMOVE instead, usable from next turn
+		if (held < maxHeld) {
+			addMoves(states, cell, held, held + 1, burning);
+		}
+		return states.build();
+	}
+
+	/**
+	 * Add the states reached by moving from a cell, using a DOUBLEMOVE held since an earlier turn or not.
+	 * @param states States to add to
+	 * @param from Cell the player moves from
+	 * @param usable DOUBLEMOVEs held since an earlier turn
+	 * @param held DOUBLEMOVEs held after drawing
+	 * @param burning Cells on fire, null for none
+	 */
+	private void addMoves(IntStream.Builder states, int from, int usable, int held, boolean[] burning) {
+		int cells = width * height;
+		boolean won = false;
+		for (int direction = 0; direction < 4 && !won; direction++) {
+			int step = step(from, direction, burning);
+			if (step != -1) {
+				won = goals[step];
+				states.add(held * cells + step);
+				for (int second = 0; second < 4 && usable > 0 && !won; second++) {
+					int doubleStep = step(step, second, burning);
+					if (doubleStep != -1) {
+						won = goals[doubleStep];
+						states.add((held - 1) * cells + doubleStep);
+					}
+				}
+			}
+		}
+		states.add(won ? WIN : held * cells + from);
+	}
+
+	/**
+	 * @param from Cell to move from
+	 * @param direction Direction to move in
+	 * @param burning Cells on fire, null for none
+	 * @return Cell moved to, -1 if the move is not possible
+	 */
+	private int step(int from, int direction, boolean[] burning) {
+		int x = from / height + DX[direction];
+		int y = from % height + DY[direction];
+		int to = x * height + y;
+		boolean possible = x >= 0 && x < width && y >= 0 && y < height
+				&& (openings[from] & 1 << direction) != 0
+				&& (openings[to] & 1 << FloorTile.FloorType.opposite(direction)) != 0
+				&& (burning == null || !burning[to]);
+		return possible ? to : -1;
+	}
+
+	/**
+	 * @param line Column or row
+	 * @param column true for a column, false for a row
+	 * @param frozen Cells frozen this turn, null for none
+	 * @return true if a tile can be inserted into the line
+	 */
+	private boolean isInsertable(int line, boolean column, boolean[] frozen) {
+		boolean insertable = !(column ? fixedColumns[line] : fixedRows[line]);
+		int length = column ? height : width;
+		for (int i = 0; i < length && insertable && frozen != null; i++) {
+			insertable = !frozen[column ? line * height + i : i * height + line];
+		}
+		return insertable;
+	}
+
+	/**
+	 * @param first Cells
+	 * @param second Other cells
+	 * @return true if some cell is in both
+	 */
+	private static boolean overlaps(boolean[] first, boolean[] second) {
+		boolean overlap = false;
+		for (int i = 0; i < first.length && !overlap; i++) {
+			overlap = first[i] && second[i];
+		}
+		return overlap;
+	}
+
+	/**
+	 * @param centre Centre cell of a FIRE or ICE
+	 * @return The cells of the 3 x 3 area around it
+	 */
+	private boolean[] area(int centre) {
+		boolean[] area = new boolean[width * height];
+		markArea(area, centre / height, centre % height);
+		return area;
+	}
+
+	/**
+	 * @param area Cells to mark
+	 * @param x X-position of the centre
+	 * @param y Y-position of the centre
+	 */
+	private void markArea(boolean[] area, int x, int y) {
+		for (int i = Math.max(0, x - 1); i <= Math.min(width - 1, x + 1); i++) {
+			for (int j = Math.max(0, y - 1); j <= Math.min(height - 1, y + 1); j++) {
+				area[i * height + j] = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package source.labyrinth;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * LevelCatalog knows every level in the levels directory and what is in it (size, players, goals, tile counts),
+ * so the level menu can show all of that without reading a file. At startup every level is parsed in parallel
+ * (which also fills the LevelTemplateCache). After that a background thread watches the directory and only
+ * re-parses the files that were added or changed, dropping the ones that were deleted.
+ * It is entirely static, like ProfileManager.
+ * @author Fillip Serov
+ */
+public final class LevelCatalog {
+	private static final ConcurrentSkipListMap<String, LevelInfo> LEVELS = new ConcurrentSkipListMap<>();
+	private static volatile Runnable changeListener;
+	private static boolean setUp;
+
+	/**
+	 * What the catalog knows about one level. Immutable.
+	 */
+	public static final class LevelInfo {
+		private final String name;
+		private final int width;
+		private final int height;
+		private final int playerCount;
+		private final int fixedTiles;
+		private final int goals;
+		private final int floorTiles;
+		private final int actionTiles;
+
+		/**
+		 * @param template Template of the level
+		 */
+		private LevelInfo(LevelTemplate template) {
+			this.name = template.getName();
+			this.width = template.getWidth();
+			this.height = template.getHeight();
+
+			HashSet<String> starts = new HashSet<>();
+			for (int i = 0; i < LevelTemplate.MAX_PLAYERS; i++) {
+				starts.add(Arrays.toString(template.getPlayerStartingPosition(i)));
+			}
+			this.playerCount = starts.size();
+
+			int fixed = 0;
+			int fixedGoals = 0;
+			for (int x = 0; x < width; x++) {
+				for (int y = 0; y < height; y++) {
+					int cell = template.getCell(x, y);
+					if (cell != LevelTemplate.EMPTY) {
+						fixed++;
+						fixedGoals += LevelTemplate.cellType(cell) == FloorTile.FloorType.GOAL ? 1 : 0;
+					}
+				}
+			}
+			this.fixedTiles = fixed;
+			this.goals = fixedGoals + template.getFloorTileAmount(FloorTile.FloorType.GOAL);
+
+			int floor = 0;
+			for (FloorTile.FloorType type : FloorTile.FloorType.values()) {
+				floor += template.getFloorTileAmount(type);
+			}
+			this.floorTiles = floor;
+			int action = 0;
+			for (ActionTile.ActionType type : ActionTile.ActionType.values()) {
+				action += template.getActionTileAmount(type);
+			}
+			this.actionTiles = action;
+		}
+
+		/**
+		 * @return Name of the level
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Width of the board
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * @return Height of the board
+		 */
+		public int getHeight() {
+			return height;
+		}
+
+		/**
+		 * @return Amount of different starting positions, i.e. how many players get a start of their own
+		 */
+		public int getPlayerCount() {
+			return playerCount;
+		}
+
+		/**
+		 * @return Amount of fixed tiles on the board
+		 */
+		public int getFixedTiles() {
+			return fixedTiles;
+		}
+
+		/**
+		 * @return Amount of goal tiles, fixed ones and ones in the bag
+		 */
+		public int getGoals() {
+			return goals;
+		}
+
+		/**
+		 * @return Amount of floor tiles in the bag
+		 */
+		public int getFloorTiles() {
+			return floorTiles;
+		}
+
+		/**
+		 * @return Amount of action tiles in the bag
+		 */
+		public int getActionTiles() {
+			return actionTiles;
+		}
+	}
+
+	/**
+	 * Parse every level in parallel and start watching the levels directory. Only needs to be done once.
+	 */
+	public static synchronized void performSetup() {
+		if (!setUp) {
+			setUp = true;
+			long start = System.currentTimeMillis();
+			rescan();
+			System.out.println("Catalogued " + LEVELS.size() + " levels in " + (System.currentTimeMillis() - start)
+					+ "ms");
+
+			Thread watcher = new Thread(LevelCatalog::watch, "level-watcher");
+			watcher.setDaemon(true);
+			watcher.start();
+		}
+	}
+
+	/**
+	 * @return Every level, sorted by name. Nothing is read from disk
+	 */
+	public static List<LevelInfo> getLevels() {
+		return new ArrayList<>(LEVELS.values());
+	}
+
+	/**
+	 * @param levelName Name of the level
+	 * @return What is known about the level, or null if there is no such level
+	 */
+	public static LevelInfo getLevel(String levelName) {
+		return LEVELS.get(levelName);
+	}
+
+	/**
+	 * @param listener Run (on the watcher thread) whenever levels are added, changed or removed. Replaces the
+	 *                 previous listener, null for none
+	 */
+	public static void setChangeListener(Runnable listener) {
+		changeListener = listener;
+	}
+
+	/**
+	 * Parse every level file in parallel, and forget levels whose file is gone.
+	 */
+	private static void rescan() {
+		File[] files = LevelTemplateCache.LEVEL_DIRECTORY.listFiles();
+		ArrayList<String> names = new ArrayList<>();
+		if (files != null) {
+			for (File file : files) {
+				String levelName = levelName(file.getName());
+				if (levelName != null) {
+					names.add(levelName);
+				}
+			}
+		}
+		LEVELS.keySet().retainAll(names);
+		names.parallelStream().distinct().forEach(LevelCatalog::load);
+	}
+
+	/**
+	 * Parse a level (if it changed since it was last parsed) and catalog it. A level that cannot be parsed is
+	 * left out of the catalog. Nothing is thrown, so a broken file never stops the watcher thread.
+	 * @param levelName Name of the level
+	 */
+	private static void load(String levelName) {
+		try {
+			LEVELS.put(levelName, new LevelInfo(LevelTemplateCache.get(levelName)));
+		} catch (IOException e) {
+			LEVELS.remove(levelName);
+			System.out.println("Could not catalog level " + levelName + ": " + e.getMessage());
+		} catch (RuntimeException e) {
+			// A file caught half written can break the parser in ways it does not check for
+			LEVELS.remove(levelName);
+			System.out.println("Could not catalog level " + levelName + ": " + e);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Body of the watcher thread: reload every level file that is created or modified, drop every one that is
+	 * deleted. If the watch service lost events, everything is rescanned.
+	 */
+	private static void watch() {
+		try {
+			WatchService watchService = FileSystems.getDefault().newWatchService();
+			Path directory = LevelTemplateCache.LEVEL_DIRECTORY.toPath();
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+			boolean watching = true;
+			while (watching) {
+				WatchKey key = watchService.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					handleEvent(event);
+				}
+				watching = key.reset();
+				Runnable listener = changeListener;
+				if (listener != null) {
+					listener.run();
+				}
+			}
+			System.out.println("Levels directory is gone, no longer watching it.");
+		} catch (IOException | ClosedWatchServiceException e) {
+			System.out.println("Could not watch the levels directory, new levels show up after a restart.");
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @param event Change in the levels directory
+	 */
+	private static void handleEvent(WatchEvent<?> event) {
+		if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+			rescan();
+		} else {
+			String levelName = levelName(event.context().toString());
+			if (levelName != null) {
+				if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+					LevelTemplateCache.invalidate(levelName);
+					if (LevelTemplateCache.fileOf(levelName).exists()) {
+						load(levelName); // Its text or binary twin is still there
+					} else {
+						LEVELS.remove(levelName);
+						System.out.println("Level " + levelName + " was removed");
+					}
+				} else {
+					// A file being written may be caught half way, the next modify event parses it again
+					load(levelName);
+					System.out.println("Level " + levelName + " was reloaded");
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param fileName Name of a file in the levels directory
+	 * @return Name of the level in it, or null if it is not a text or binary level file
+	 */
+	private static String levelName(String fileName) {
+		String levelName = null;
+		if (fileName.endsWith(LevelTemplateCache.EXTENSION)) {
+			levelName = fileName.substring(0, fileName.length() - LevelTemplateCache.EXTENSION.length());
+		} else if (fileName.endsWith(LevelTemplateCache.BINARY_EXTENSION)) {
+			levelName = fileName.substring(0, fileName.length() - LevelTemplateCache.BINARY_EXTENSION.length());
+		}
+		return levelName;
+	}
+}
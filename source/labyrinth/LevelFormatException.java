@@ -0,0 +1,49 @@
+package source.labyrinth;
+
+import java.io.IOException;
+
+/**
+ * LevelFormatException is thrown when a level file cannot be parsed. It knows where in the file the problem is,
+ * so the message can point straight at it: a line and column for text levels, a byte offset for binary ones.
+ * @author Fillip Serov
+ */
+public class LevelFormatException extends IOException {
+	private static final long serialVersionUID = 1L;
+	private final int line;
+	private final int column;
+
+	/**
+	 * @param problem What is wrong
+	 * @param line Line of the problem, starting at 1
+	 * @param column Column of the problem, starting at 1
+	 */
+	public LevelFormatException(String problem, int line, int column) {
+		super("Line " + line + ", column " + column + ": " + problem);
+		this.line = line;
+		this.column = column;
+	}
+
+	/**
+	 * @param problem What is wrong
+	 * @param offset Byte offset of the problem in a binary level file
+	 */
+	public LevelFormatException(String problem, long offset) {
+		super("Byte " + offset + ": " + problem);
+		this.line = 0;
+		this.column = 0;
+	}
+
+	/**
+	 * @return Line of the problem, starting at 1. 0 for binary level files
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return Column of the problem, starting at 1. 0 for binary level files
+	 */
+	public int getColumn() {
+		return column;
+	}
+}
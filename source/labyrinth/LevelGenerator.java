@@ -0,0 +1,337 @@
+package source.labyrinth;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * LevelGenerator makes new levels of a given size and difficulty. Many candidates are made in parallel, each from
+ * its own seed, and only those passing a few checks are kept:
+ * <ul>
+ *     <li>the bag holds enough floor tiles to fill the board,</li>
+ *     <li>at least one row or column has no fixed tiles, so tiles can be inserted,</li>
+ *     <li>every start can reach a goal and no start is much closer to a goal than the others, and</li>
+ *     <li>every seat can reach a goal in about as many turns as the others, as worked out by LevelAnalyzer.</li>
+ * </ul>
+ * Reachability and distances are worked out on a relaxed board where every cell that is not fixed is open in all
+ * directions, as some insertion could put a fitting tile there; fixed tiles only open the way their type and
+ * orientation allow. Starts are placed by distance, but the turns a seat needs also depend on the rows and
+ * columns it can insert into and on DOUBLEMOVEs, so many candidates still fail the last check. The same seed and
+ * parameters always give the same levels.
+ * @author Fillip Serov
+ */
+public final class LevelGenerator {
+	private static final int[] DX = {0, 1, 0, -1};
+	private static final int[] DY = {-1, 0, 1, 0};
+	private static final int ALL_DIRECTIONS = 0xF;
+	private static final int UNREACHABLE = -1;
+	private static final FloorTile.FloorType[] FIXED_TYPES = {FloorTile.FloorType.STRAIGHT,
+			FloorTile.FloorType.CORNER, FloorTile.FloorType.TSHAPE};
+	private static final FloorTile.FloorType[] BAG_TYPES = FIXED_TYPES;
+	private static final int FLOOR_TILES_PER_ACTION_TILE = 5;
+	private static final int CANDIDATES_PER_LEVEL = 32;
+	private static final long SEED_MIX = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * How hard generated levels are: how many cells get a fixed tile and how far the goals must be from the starts.
+	 */
+	public enum Difficulty {
+		EASY(0.04, 0.2),
+		NORMAL(0.08, 0.3),
+		HARD(0.14, 0.4);
+
+		private final double fixedTileShare; // Share of the cells holding a fixed tile, goals included
+		private final double goalDistanceShare; // Least distance to a goal, as a share of width + height
+
+		Difficulty(double fixedTileShare, double goalDistanceShare) {
+			this.fixedTileShare = fixedTileShare;
+			this.goalDistanceShare = goalDistanceShare;
+		}
+	}
+
+	private final int width;
+	private final int height;
+	private final int goals;
+	private final Difficulty difficulty;
+
+	/**
+	 * @param width Width of the boards
+	 * @param height Height of the boards
+	 * @param goals Amount of fixed goal tiles on each board, at least 1
+	 * @param difficulty Difficulty of the levels
+	 */
+	public LevelGenerator(int width, int height, int goals, Difficulty difficulty) {
+		if (width < 2 || height < 2 || goals < 1 || goals + LevelTemplate.MAX_PLAYERS > width * height) {
+			throw new IllegalArgumentException("Cannot fit " + goals + " goals and " + LevelTemplate.MAX_PLAYERS
+					+ " starts on a " + width + "x" + height + " board");
+		}
+		this.width = width;
+		this.height = height;
+		this.goals = goals;
+		this.difficulty = difficulty;
+	}
+
+	/**
+	 * Generate levels into the levels directory.
+	 * @param args Name, width, height, goals, difficulty (EASY, NORMAL or HARD), seed and amount of levels
+	 */
+	public static void main(String[] args) {
+		if (args.length != 7) {
+			System.out.println("Usage: LevelGenerator <name> <width> <height> <goals> <EASY|NORMAL|HARD> <seed> "
+					+ "<amount>");
+		} else {
+			long start = System.currentTimeMillis();
+			LevelGenerator generator = new LevelGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+					Integer.parseInt(args[3]), Difficulty.valueOf(args[4]));
+			int amount = Integer.parseInt(args[6]);
+			List<LevelTemplate> levels = generator.generate(args[0], Long.parseLong(args[5]),
+					amount * CANDIDATES_PER_LEVEL);
+			System.out.println(levels.size() + " of " + amount * CANDIDATES_PER_LEVEL + " candidates passed in "
+					+ (System.currentTimeMillis() - start) + "ms");
+
+			for (LevelTemplate level : levels.subList(0, Math.min(amount, levels.size()))) {
+				File file = new File(LevelTemplateCache.LEVEL_DIRECTORY, level.getName() + LevelTemplateCache.EXTENSION);
+				try {
+					LevelIO.writeDataFile(file.getPath(), level);
+					System.out.println("Wrote " + file);
+				} catch (IOException e) {
+					System.out.println("Could not write " + file + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Make candidates in parallel and keep those that pass the checks.
+	 * @param name Name of the levels, each gets "_" and its candidate number added
+	 * @param seed Seed of the whole batch
+	 * @param candidates Amount of candidates to make
+	 * @return Levels that passed, in candidate order
+	 */
+	public List<LevelTemplate> generate(String name, long seed, int candidates) {
+		return IntStream.range(0, candidates).parallel()
+				.mapToObj(i -> candidate(name + "_" + i, seed ^ (i * SEED_MIX)))
+				.filter(this::isPlayable)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @param level Level to check, generated or not
+	 * @return true if the level passes every check
+	 */
+	public boolean isPlayable(LevelTemplate level) {
+		boolean playable = bagFillsBoard(level) && hasInsertableLine(level);
+		if (playable) {
+			int[] distances = goalDistances(level.getWidth(), level.getHeight(), level.getCells());
+			int nearest = Integer.MAX_VALUE;
+			int furthest = 0;
+			for (int i = 0; i < LevelTemplate.MAX_PLAYERS; i++) {
+				int[] start = level.getPlayerStartingPosition(i);
+				int distance = distances[start[0] * level.getHeight() + start[1]];
+				playable &= distance != UNREACHABLE;
+				nearest = Math.min(nearest, distance);
+				furthest = Math.max(furthest, distance);
+			}
+			playable &= nearest >= leastGoalDistance(level.getWidth(), level.getHeight())
+					&& furthest - nearest <= allowedSpread(furthest);
+		}
+		// The real number of turns, only worked out for levels that passed the quick checks
+		if (playable) {
+			int[] turns = new LevelAnalyzer(level).minimumTurns();
+			int fewest = Integer.MAX_VALUE;
+			int most = 0;
+			for (int seatTurns : turns) {
+				playable &= seatTurns != LevelAnalyzer.UNREACHABLE;
+				fewest = Math.min(fewest, seatTurns);
+				most = Math.max(most, seatTurns);
+			}
+			playable &= most - fewest <= allowedSpread(most);
+		}
+		return playable;
+	}
+
+	/**
+	 * Make one candidate level: goals and fixed tiles at random cells, starts at random cells about the right
+	 * distance from a goal, and a bag with enough floor tiles to fill the rest of the board and keep one in hand.
+	 * It is not checked, so it may not be playable. Also used to make large levels for LevelParseBenchmark.
+	 * @param name Name of the level
+	 * @param seed Seed of this candidate
+	 * @return The candidate
+	 */
+	LevelTemplate candidate(String name, long seed) {
+		Random random = new Random(seed);
+		byte[] cells = new byte[width * height];
+		int fixedTiles = Math.max(goals, (int) Math.round(width * height * difficulty.fixedTileShare));
+		for (int i = 0; i < fixedTiles; i++) {
+			int cell = randomCell(random, cells);
+			cells[cell] = (byte) (i < goals ? LevelTemplate.packFixedCell(FloorTile.FloorType.GOAL, 0)
+					: LevelTemplate.packFixedCell(FIXED_TYPES[random.nextInt(FIXED_TYPES.length)], random.nextInt(4)));
+		}
+
+		// Starts are drawn from the cells whose distance to a goal is in the band the distance check allows
+		int[] distances = goalDistances(width, height, cells);
+		int nearest = leastGoalDistance(width, height);
+		int furthest = nearest + allowedSpread(nearest);
+		int[] fitting = new int[cells.length];
+		int fittingCount = 0;
+		for (int index = 0; index < cells.length; index++) {
+			if (cells[index] == LevelTemplate.EMPTY && distances[index] >= nearest && distances[index] <= furthest) {
+				fitting[fittingCount++] = index;
+			}
+		}
+		int[][] playerStartingPositions = new int[LevelTemplate.MAX_PLAYERS][];
+		boolean[] taken = new boolean[cells.length];
+		for (int i = 0; i < LevelTemplate.MAX_PLAYERS; i++) {
+			int start;
+			if (fittingCount > 0) {
+				int chosen = random.nextInt(fittingCount);
+				start = fitting[chosen];
+				fitting[chosen] = fitting[--fittingCount];
+			} else {
+				// Too few fitting cells, this candidate will not pass the checks
+				start = randomCell(random, cells);
+				while (taken[start]) {
+					start = randomCell(random, cells);
+				}
+			}
+			taken[start] = true;
+			playerStartingPositions[i] = new int[] {start / height, start % height};
+		}
+
+		int[] floorTileAmounts = new int[FloorTile.FloorType.values().length];
+		int floorTiles = cells.length - fixedTiles + 1 + (width + height) / 2;
+		for (int i = 0; i < floorTiles; i++) {
+			floorTileAmounts[BAG_TYPES[random.nextInt(BAG_TYPES.length)].ordinal()]++;
+		}
+		ActionTile.ActionType[] actionTypes = ActionTile.ActionType.values();
+		int[] actionTileAmounts = new int[actionTypes.length];
+		for (int i = 0; i < floorTiles / FLOOR_TILES_PER_ACTION_TILE; i++) {
+			actionTileAmounts[random.nextInt(actionTypes.length)]++;
+		}
+		return new LevelTemplate(name, width, height, cells, playerStartingPositions, floorTileAmounts,
+				actionTileAmounts);
+	}
+
+	/**
+	 * @param levelWidth Width of the board
+	 * @param levelHeight Height of the board
+	 * @return Least distance from every start to a goal at this difficulty
+	 */
+	private int leastGoalDistance(int levelWidth, int levelHeight) {
+		return (int) Math.ceil(difficulty.goalDistanceShare * (levelWidth + levelHeight));
+	}
+
+	/**
+	 * @param distance Distance from the start furthest from a goal
+	 * @return How much closer to a goal other starts may be
+	 */
+	private static int allowedSpread(int distance) {
+		return Math.max(1, distance / 5);
+	}
+
+	/**
+	 * @param random Random of the candidate
+	 * @param cells Cells of the candidate so far
+	 * @return Random cell that holds no fixed tile
+	 */
+	private static int randomCell(Random random, byte[] cells) {
+		int cell = random.nextInt(cells.length);
+		while (cells[cell] != LevelTemplate.EMPTY) {
+			cell = random.nextInt(cells.length);
+		}
+		return cell;
+	}
+
+	/**
+	 * @param level Level to check
+	 * @return true if the bag holds a floor tile for every cell that is not fixed, and one more to insert
+	 */
+	private static boolean bagFillsBoard(LevelTemplate level) {
+		int emptyCells = 0;
+		for (int x = 0; x < level.getWidth(); x++) {
+			for (int y = 0; y < level.getHeight(); y++) {
+				emptyCells += level.getCell(x, y) == LevelTemplate.EMPTY ? 1 : 0;
+			}
+		}
+		int floorTiles = 0;
+		for (FloorTile.FloorType type : FloorTile.FloorType.values()) {
+			floorTiles += level.getFloorTileAmount(type);
+		}
+		return floorTiles > emptyCells;
+	}
+
+	/**
+	 * @param level Level to check
+	 * @return true if some row or column has no fixed tile, so a tile can be inserted into it
+	 */
+	private static boolean hasInsertableLine(LevelTemplate level) {
+		boolean[] fixedColumns = new boolean[level.getWidth()];
+		boolean[] fixedRows = new boolean[level.getHeight()];
+		for (int x = 0; x < level.getWidth(); x++) {
+			for (int y = 0; y < level.getHeight(); y++) {
+				if (level.getCell(x, y) != LevelTemplate.EMPTY) {
+					fixedColumns[x] = fixedRows[y] = true;
+				}
+			}
+		}
+		boolean insertable = false;
+		for (boolean fixed : fixedColumns) {
+			insertable |= !fixed;
+		}
+		for (boolean fixed : fixedRows) {
+			insertable |= !fixed;
+		}
+		return insertable;
+	}
+
+	/**
+	 * Breadth-first search from every fixed goal at once over the relaxed board. Moving between two cells works
+	 * the same both ways, so this gives every cell's distance to its nearest goal.
+	 * @param levelWidth Width of the board
+	 * @param levelHeight Height of the board
+	 * @param cells Packed cells of the board, x * height + y
+	 * @return Distance of every cell (x * height + y) to the nearest goal, UNREACHABLE if there is none
+	 */
+	private static int[] goalDistances(int levelWidth, int levelHeight, byte[] cells) {
+		int[] openings = new int[levelWidth * levelHeight];
+		int[] distances = new int[openings.length];
+		Arrays.fill(distances, UNREACHABLE);
+		int[] queue = new int[openings.length]; // Every cell is queued at most once
+		int queueStart = 0;
+		int queueEnd = 0;
+		for (int x = 0; x < levelWidth; x++) {
+			for (int y = 0; y < levelHeight; y++) {
+				int index = x * levelHeight + y;
+				int cell = cells[index] & 0xFF;
+				openings[index] = cell == LevelTemplate.EMPTY ? ALL_DIRECTIONS
+						: LevelTemplate.cellType(cell).getMoveBits(LevelTemplate.cellOrientation(cell));
+				if (cell != LevelTemplate.EMPTY && LevelTemplate.cellType(cell) == FloorTile.FloorType.GOAL) {
+					distances[index] = 0;
+					queue[queueEnd++] = index;
+				}
+			}
+		}
+
+		while (queueStart < queueEnd) {
+			int index = queue[queueStart++];
+			int x = index / levelHeight;
+			int y = index % levelHeight;
+			for (int direction = 0; direction < 4; direction++) {
+				int nextX = x + DX[direction];
+				int nextY = y + DY[direction];
+				int next = nextX * levelHeight + nextY;
+				if (nextX >= 0 && nextX < levelWidth && nextY >= 0 && nextY < levelHeight
+						&& distances[next] == UNREACHABLE && (openings[index] & 1 << direction) != 0
+						&& (openings[next] & 1 << FloorTile.FloorType.opposite(direction)) != 0) {
+					distances[next] = distances[index] + 1;
+					queue[queueEnd++] = next;
+				}
+			}
+		}
+		return distances;
+	}
+}
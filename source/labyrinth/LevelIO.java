@@ -1,9 +1,10 @@
 package source.labyrinth;
 
-import java.io.*;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Scanner;
 
 /**
  * The LevelIO deals with the level files and their leaderboards.
@@ -12,91 +13,59 @@ import java.util.Scanner;
  */
 public class LevelIO {
 
-	private static final int TOTAL_NUM_OF_PLAYERS = 4;
-
 	/**
-	 *Reads file and handles exceptions in case file is not found
+	 * Reads a level file.
 	 * @param filename the name of the file.
 	 * @return the selected level once read.
+	 * @throws LevelFormatException If the file is not a valid level, pointing at the line and column at fault
+	 * @throws IOException If the file cannot be read
 	 */
-	public static LevelData readDataFile(String filename) {
-		Scanner in = null;
-		try {
-			in = new Scanner(new File(filename));
-		} catch (FileNotFoundException e) {
-			System.out.println("Can't find " + filename);
-			System.exit(0);
-		}
-		return level(in);
+	public static LevelData readDataFile(String filename) throws IOException {
+		return LevelParser.parse(new File(filename));
 	}
 
 	/**
-	 *
-	 * @param in Scanner to use.
-	 * @return Instance of LevelData containing everything needed to setup a level
+	 * Writes a level file in the format readDataFile reads.
+	 * @param filename the name of the file, replaced if it exists.
+	 * @param template the level to write.
+	 * @throws IOException If the file cannot be written
 	 */
-	private static LevelData level(Scanner in) {
-		LevelData levelData = new LevelData();
-
-		in.useDelimiter("(\\p{javaWhitespace}|,)+");
-		int width = in.nextInt();
-		int height = in.nextInt();
-		in.nextLine();
-
-		Board levelBoard = new Board(width, height);
-		levelData.setBoard(levelBoard);
-
-		while (in.hasNext()) {
-			int numOfFixedTiles = in.nextInt();
-			in.nextLine();
-
-			for (int i = 0; i < numOfFixedTiles; i++) {
-				int xPos = in.nextInt();
-				int yPos = in.nextInt();
-				String type = in.next();
-				int orientation = in.nextInt();
-
-				FloorTile fixedTile = new FloorTile(orientation, FloorTile.FloorType.valueOf(type));
-				fixedTile.setFixed(true);
-				levelBoard.setTileAt(fixedTile, xPos, yPos);
-
-				in.nextLine();
+	public static void writeDataFile(String filename, LevelTemplate template) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(filename));
+		try {
+			out.println(template.getWidth() + "," + template.getHeight());
+
+			StringBuilder fixedTiles = new StringBuilder();
+			int numOfFixedTiles = 0;
+			for (int x = 0; x < template.getWidth(); x++) {
+				for (int y = 0; y < template.getHeight(); y++) {
+					int cell = template.getCell(x, y);
+					if (cell != LevelTemplate.EMPTY) {
+						numOfFixedTiles++;
+						fixedTiles.append(x).append(',').append(y).append(',').append(LevelTemplate.cellType(cell))
+								.append(',').append(LevelTemplate.cellOrientation(cell)).append(System.lineSeparator());
+					}
+				}
 			}
+			out.println(numOfFixedTiles);
+			out.print(fixedTiles);
 
-			int[][] playerStartingPositions = new int[4][2];
-			for (int i = 0; i < TOTAL_NUM_OF_PLAYERS; i++) {
-				playerStartingPositions[i][0] = in.nextInt();
-				playerStartingPositions[i][1] = in.nextInt();
-				in.nextLine();
+			for (int i = 0; i < LevelTemplate.MAX_PLAYERS; i++) {
+				int[] start = template.getPlayerStartingPosition(i);
+				out.println(start[0] + "," + start[1]);
 			}
-			levelData.setPlayerStartingPositions(playerStartingPositions);
-
-			levelData.setFloorTileAmount(FloorTile.FloorType.STRAIGHT, in.nextInt());
-			in.nextLine();
-
-			levelData.setFloorTileAmount(FloorTile.FloorType.TSHAPE, in.nextInt());
-			in.nextLine();
-
-			levelData.setFloorTileAmount(FloorTile.FloorType.CORNER, in.nextInt());
-			in.nextLine();
-
-			levelData.setFloorTileAmount(FloorTile.FloorType.GOAL, in.nextInt());
-			in.nextLine();
-
-			levelData.setActionTileAmount(ActionTile.ActionType.ICE, in.nextInt());
-			in.nextLine();
-
-			levelData.setActionTileAmount(ActionTile.ActionType.FIRE, in.nextInt());
-			in.nextLine();
-
-			levelData.setActionTileAmount(ActionTile.ActionType.DOUBLEMOVE, in.nextInt());
-			in.nextLine();
-
-			levelData.setActionTileAmount(ActionTile.ActionType.BACKTRACK, in.nextInt());
-			in.nextLine();
+			for (FloorTile.FloorType floorType : LevelParser.FLOOR_AMOUNT_ORDER) {
+				out.println(template.getFloorTileAmount(floorType) + "," + floorType);
+			}
+			for (ActionTile.ActionType actionType : LevelParser.ACTION_AMOUNT_ORDER) {
+				out.println(template.getActionTileAmount(actionType) + "," + actionType);
+			}
+			if (out.checkError()) {
+				throw new IOException("Could not write " + filename);
+			}
+		} finally {
+			out.close();
 		}
-
-		return levelData;
 	}
 
 	/**
@@ -106,58 +75,7 @@ public class LevelIO {
 	 * @param winningProfile Profile id of player that won (which should increase their wins by 1). Can be null
 	 */
 	public static void updateLeaderboard(String levelName, ArrayList<Integer> profilesThatPlayed, Integer winningProfile) {
-		File leaderboardFile = new File("source/resources/leaderboards/" + levelName + "_leaderboard.ser");
-
-		// If leaderboard file doesnt exist make one
-		if (!leaderboardFile.exists()) {
-			System.out.println("Leaderboard for " + levelName + " didn't exist, making one now...");
-			try {
-				leaderboardFile.createNewFile();
-				// And fill it with an empty HashMap
-				HashMap<Integer, Integer> empty = new HashMap<>();
-
-				ObjectOutputStream objectOutputStream = new ObjectOutputStream(new FileOutputStream(leaderboardFile));
-				objectOutputStream.writeObject(empty);
-				objectOutputStream.flush();
-				objectOutputStream.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-				System.out.println("Could not create leaderboard file.");
-			}
-		}
-
-		try {
-			System.out.println("Attempting to read leaderboard for " + levelName);
-			ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(leaderboardFile));
-
-			HashMap<Integer, Integer> leaderboardInfo = (HashMap<Integer, Integer>) objectInputStream.readObject();
-			objectInputStream.close();
-
-			// Check that every profile that played exists in the leaderboard already.
-			// If they don't, put them in with wins set to 0
-			for (int i = 0; i < profilesThatPlayed.size(); i++) {
-				int playingProfile = profilesThatPlayed.get(i);
-				if (!leaderboardInfo.containsKey(playingProfile)) {
-					leaderboardInfo.put(playingProfile, 0);
-				}
-			}
-
-			// Update the winner with +1 wins
-			// No need to check if the winner exists since the previous for-loop takes care of that
-			if (winningProfile != null) {
-				leaderboardInfo.put(winningProfile, leaderboardInfo.get(winningProfile) + 1);
-			}
-
-			// Now save the leaderboard
-			ObjectOutputStream objectOutputStream = new ObjectOutputStream(new FileOutputStream(leaderboardFile));
-			objectOutputStream.writeObject(leaderboardInfo);
-			objectOutputStream.flush();
-			objectOutputStream.close();
-			System.out.println("Updated the leaderboard for " + levelName);
-		} catch (IOException | ClassNotFoundException e) {
-			e.printStackTrace();
-		}
+		LeaderboardStore.recordResult(new GameResult(levelName, profilesThatPlayed, winningProfile));
+		System.out.println("Updated the leaderboard for " + levelName);
 	}
 }
-
-
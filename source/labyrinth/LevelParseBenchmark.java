@@ -0,0 +1,73 @@
+package source.labyrinth;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * LevelParseBenchmark measures how fast LevelParser reads large level files. Levels of a few sizes are made by
+ * LevelGenerator (HARD, so many fixed tiles and long files), written to a temporary directory with LevelIO, and
+ * parsed over and over after a warm-up. The throughput of every size is printed in MB/s.
+ * @author Fillip Serov
+ */
+public final class LevelParseBenchmark {
+	private static final int[] DEFAULT_SIZES = {100, 300, 1000};
+	private static final int GOALS = 4;
+	private static final long SEED = 42;
+	private static final int WARMUP_PARSES = 5;
+	private static final long MIN_MEASURE_NANOS = 2000000000L; // Parse each level for at least 2 seconds
+	private static final double BYTES_PER_MB = 1024 * 1024;
+
+	/**
+	 * Run the benchmark.
+	 * @param args Optional widths (and heights) of the square levels to parse
+	 * @throws IOException If a level cannot be written or parsed
+	 */
+	public static void main(String[] args) throws IOException {
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		File directory = Files.createTempDirectory("level-parse-benchmark").toFile();
+		try {
+			for (int size : sizes) {
+				LevelGenerator generator = new LevelGenerator(size, size, GOALS, LevelGenerator.Difficulty.HARD);
+				File file = new File(directory, "benchmark_" + size + LevelTemplateCache.EXTENSION);
+				LevelIO.writeDataFile(file.getPath(), generator.candidate("benchmark_" + size, SEED));
+				measure(size, file);
+				file.delete();
+			}
+		} finally {
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Parse a level file after a warm-up until enough time has passed, and print the throughput.
+	 * @param size Width and height of the level
+	 * @param file Level file to parse
+	 * @throws IOException If the level cannot be parsed
+	 */
+	private static void measure(int size, File file) throws IOException {
+		for (int i = 0; i < WARMUP_PARSES; i++) {
+			LevelParser.parse(file);
+		}
+
+		int parses = 0;
+		long start = System.nanoTime();
+		long took = 0;
+		while (took < MIN_MEASURE_NANOS) {
+			LevelParser.parse(file);
+			parses++;
+			took = System.nanoTime() - start;
+		}
+
+		double megabytes = file.length() * (double) parses / BYTES_PER_MB;
+		System.out.println(String.format("%dx%d level, %.2f MB: %d parses, %.3f ms per parse, %.1f MB/s", size,
+				size, file.length() / BYTES_PER_MB, parses, took / 1e6 / parses, megabytes / (took / 1e9)));
+	}
+}
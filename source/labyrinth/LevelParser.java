@@ -0,0 +1,312 @@
+package source.labyrinth;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * LevelParser reads level files. The file is memory-mapped and read byte by byte in a single pass, without
+ * regular expressions or intermediate strings: tile type names are compared to the FloorType names in place.
+ * A level file looks like this, where anything after the values a line needs is ignored:
+ * <pre>
+ * width,height
+ * amount of fixed tiles
+ * x,y,TYPE,orientation         (once per fixed tile)
+ * x,y                          (starting position of each of the 4 players)
+ * amount,STRAIGHT              (then TSHAPE, CORNER, GOAL, ICE, FIRE, DOUBLEMOVE, BACKTRACK)
+ * </pre>
+ * Malformed input throws a LevelFormatException holding the line and column of the problem.
+ * @author Fillip Serov
+ */
+public final class LevelParser {
+	private static final int TOTAL_NUM_OF_PLAYERS = 4;
+	// Order of the amounts in a level file, LevelIO writes them in the same order
+	static final FloorTile.FloorType[] FLOOR_AMOUNT_ORDER = {FloorTile.FloorType.STRAIGHT,
+			FloorTile.FloorType.TSHAPE, FloorTile.FloorType.CORNER, FloorTile.FloorType.GOAL};
+	static final ActionTile.ActionType[] ACTION_AMOUNT_ORDER = {ActionTile.ActionType.ICE,
+			ActionTile.ActionType.FIRE, ActionTile.ActionType.DOUBLEMOVE, ActionTile.ActionType.BACKTRACK};
+	private static final int ORIENTATIONS = 4;
+	private static final FloorTile.FloorType[] FLOOR_TYPES = FloorTile.FloorType.values();
+	private static final byte[][] FLOOR_TYPE_NAMES = new byte[FLOOR_TYPES.length][];
+
+	static {
+		for (int i = 0; i < FLOOR_TYPES.length; i++) {
+			FLOOR_TYPE_NAMES[i] = FLOOR_TYPES[i].name().getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	private final ByteBuffer data;
+	private int line = 1;
+	private int column = 1;
+
+	/**
+	 * @param data Contents of a level file, read from its position to its limit
+	 */
+	private LevelParser(ByteBuffer data) {
+		this.data = data;
+	}
+
+	/**
+	 * Parse a level file.
+	 * @param file Level file
+	 * @return LevelData of the level
+	 * @throws LevelFormatException If the file is not a valid level
+	 * @throws IOException If the file cannot be read
+	 */
+	public static LevelData parse(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return parse(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Parse a level held in memory.
+	 * @param data Contents of a level file, read from its position to its limit
+	 * @return LevelData of the level
+	 * @throws LevelFormatException If the data is not a valid level
+	 */
+	public static LevelData parse(ByteBuffer data) throws LevelFormatException {
+		return new LevelParser(data.duplicate()).level();
+	}
+
+	/**
+	 * @return LevelData of the whole input
+	 * @throws LevelFormatException If the input is not a valid level
+	 */
+	private LevelData level() throws LevelFormatException {
+		LevelData levelData = new LevelData();
+
+		int width = nextPositiveInt("width");
+		int height = nextPositiveInt("height");
+		skipLine();
+		Board levelBoard = new Board(width, height);
+		levelData.setBoard(levelBoard);
+
+		int numOfFixedTiles = nextInt();
+		skipLine();
+		for (int i = 0; i < numOfFixedTiles; i++) {
+			int[] position = nextPosition(width, height);
+			FloorTile.FloorType floorType = nextFloorType();
+			int orientationColumn = column;
+			int orientation = nextInt();
+			if (orientation < 0 || orientation >= ORIENTATIONS) {
+				throw new LevelFormatException("orientation must be between 0 and 3, not " + orientation, line,
+						orientationColumn);
+			}
+
+			FloorTile fixedTile = new FloorTile(orientation, floorType);
+			fixedTile.setFixed(true);
+			levelBoard.setTileAt(fixedTile, position[0], position[1]);
+			skipLine();
+		}
+
+		int[][] playerStartingPositions = new int[TOTAL_NUM_OF_PLAYERS][];
+		for (int i = 0; i < TOTAL_NUM_OF_PLAYERS; i++) {
+			playerStartingPositions[i] = nextPosition(width, height);
+			skipLine();
+		}
+		levelData.setPlayerStartingPositions(playerStartingPositions);
+
+		for (FloorTile.FloorType floorType : FLOOR_AMOUNT_ORDER) {
+			levelData.setFloorTileAmount(floorType, nextInt());
+			skipLine();
+		}
+		for (ActionTile.ActionType actionType : ACTION_AMOUNT_ORDER) {
+			levelData.setActionTileAmount(actionType, nextInt());
+			skipLine();
+		}
+
+		return levelData;
+	}
+
+	/**
+	 * @param width Width of the board
+	 * @param height Height of the board
+	 * @return The next two numbers as an x and y that lie on the board
+	 * @throws LevelFormatException If they are not numbers or not on the board
+	 */
+	private int[] nextPosition(int width, int height) throws LevelFormatException {
+		skipSeparators();
+		int startLine = line;
+		int startColumn = column;
+		int x = nextInt();
+		int y = nextInt();
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			throw new LevelFormatException("position " + x + "," + y + " is not on the " + width + "x" + height
+					+ " board", startLine, startColumn);
+		}
+		return new int[] {x, y};
+	}
+
+	/**
+	 * @param what Name of the value, for the error message
+	 * @return The next number, which must be above 0
+	 * @throws LevelFormatException If there is no number or it is not above 0
+	 */
+	private int nextPositiveInt(String what) throws LevelFormatException {
+		skipSeparators();
+		int startColumn = column;
+		int value = nextInt();
+		if (value <= 0) {
+			throw new LevelFormatException(what + " must be above 0, not " + value, line, startColumn);
+		}
+		return value;
+	}
+
+	/**
+	 * Read a non-negative number, skipping any spaces, commas and line breaks in front of it.
+	 * @return The number
+	 * @throws LevelFormatException If the next value is not a number or is too large
+	 */
+	private int nextInt() throws LevelFormatException {
+		skipSeparators();
+		if (!data.hasRemaining()) {
+			throw new LevelFormatException("expected a number but the file ended", line, column);
+		}
+		if (!isDigit(peek())) {
+			throw new LevelFormatException("expected a number but found '" + (char) peek() + "'", line, column);
+		}
+
+		int startColumn = column;
+		long value = 0;
+		while (data.hasRemaining() && isDigit(peek())) {
+			value = value * 10 + (next() - '0');
+			if (value > Integer.MAX_VALUE) {
+				throw new LevelFormatException("number is too large", line, startColumn);
+			}
+		}
+		checkEndOfValue();
+		return (int) value;
+	}
+
+	/**
+	 * Read a tile type name (letters, digits and underscores), skipping any separators in front of it.
+	 * @return The floor type with that name
+	 * @throws LevelFormatException If there is no name or no floor type has it
+	 */
+	private FloorTile.FloorType nextFloorType() throws LevelFormatException {
+		skipSeparators();
+		int start = data.position();
+		int startColumn = column;
+		while (data.hasRemaining() && isWordByte(peek())) {
+			next();
+		}
+		int length = data.position() - start;
+		if (length == 0) {
+			throw new LevelFormatException(data.hasRemaining() ? "expected a tile type but found '"
+					+ (char) peek() + "'" : "expected a tile type but the file ended", line, column);
+		}
+		checkEndOfValue();
+
+		FloorTile.FloorType found = null;
+		for (int i = 0; i < FLOOR_TYPES.length && found == null; i++) {
+			if (nameMatches(FLOOR_TYPE_NAMES[i], start, length)) {
+				found = FLOOR_TYPES[i];
+			}
+		}
+		if (found == null) {
+			byte[] name = new byte[length];
+			for (int i = 0; i < length; i++) {
+				name[i] = data.get(start + i);
+			}
+			throw new LevelFormatException("unknown tile type " + new String(name, StandardCharsets.US_ASCII), line,
+					startColumn);
+		}
+		return found;
+	}
+
+	/**
+	 * @param name Name to compare with
+	 * @param start Position of the word in the input
+	 * @param length Length of the word
+	 * @return true if the word is exactly the name
+	 */
+	private boolean nameMatches(byte[] name, int start, int length) {
+		boolean matches = name.length == length;
+		for (int i = 0; i < length && matches; i++) {
+			matches = data.get(start + i) == name[i];
+		}
+		return matches;
+	}
+
+	/**
+	 * Make sure a value is followed by a separator or the end of the file, so "12x" is not read as 12.
+	 * @throws LevelFormatException If something else follows
+	 */
+	private void checkEndOfValue() throws LevelFormatException {
+		if (data.hasRemaining() && !isSeparator(peek())) {
+			throw new LevelFormatException("unexpected '" + (char) peek() + "'", line, column);
+		}
+	}
+
+	/**
+	 * Skip everything up to and including the next line break, or to the end of the file.
+	 */
+	private void skipLine() {
+		boolean atLineBreak = false;
+		while (data.hasRemaining() && !atLineBreak) {
+			atLineBreak = next() == '\n';
+		}
+	}
+
+	/**
+	 * Skip spaces, tabs, commas and line breaks.
+	 */
+	private void skipSeparators() {
+		while (data.hasRemaining() && isSeparator(peek())) {
+			next();
+		}
+	}
+
+	/**
+	 * @return The next byte, without moving past it
+	 */
+	private int peek() {
+		return data.get(data.position()) & 0xFF;
+	}
+
+	/**
+	 * Move past the next byte, keeping track of the line and column.
+	 * @return The byte moved past
+	 */
+	private int next() {
+		int read = data.get() & 0xFF;
+		if (read == '\n') {
+			line++;
+			column = 1;
+		} else {
+			column++;
+		}
+		return read;
+	}
+
+	/**
+	 * @param b Byte to check
+	 * @return true if b is a digit
+	 */
+	private static boolean isDigit(int b) {
+		return b >= '0' && b <= '9';
+	}
+
+	/**
+	 * @param b Byte to check
+	 * @return true if b can be part of a word
+	 */
+	private static boolean isWordByte(int b) {
+		return isDigit(b) || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || b == '_';
+	}
+
+	/**
+	 * @param b Byte to check
+	 * @return true if b separates values
+	 */
+	private static boolean isSeparator(int b) {
+		return b == ' ' || b == ',' || b == '\t' || b == '\r' || b == '\n';
+	}
+}
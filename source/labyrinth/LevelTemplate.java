@@ -0,0 +1,217 @@
+package source.labyrinth;
+
+import java.util.Random;
+
+/**
+ * LevelTemplate is everything a level file says, parsed once and never changed: the fixed tiles, the players'
+ * starting positions and the amount of every tile in the bag. The board is packed into one byte per cell, so
+ * starting a game only walks that array instead of reading and parsing the file again. Many games can be
+ * started from one template (see LevelTemplateCache).
+ * @author Fillip Serov
+ */
+public final class LevelTemplate {
+	public static final int EMPTY = 0; // Cell filled from the bag when a game starts
+	public static final int ORIENTATIONS_IN_BAG = 5; // Bag orientations are drawn with nextInt(5)
+	public static final int MAX_PLAYERS = 4; // Every level has a starting position for each of them
+	private static final int FIXED_BIT = 0x80;
+	private static final int TYPE_SHIFT = 3;
+	private static final int TYPE_MASK = 0x0F;
+	private static final int ORIENTATION_MASK = 0x07;
+	private static final FloorTile.FloorType[] FLOOR_TYPES = FloorTile.FloorType.values();
+
+	private final String name;
+	private final int width;
+	private final int height;
+	private final byte[] cells; // Cell (x, y) is at x * height + y
+	private final int[][] playerStartingPositions;
+	private final int[] floorTileAmounts; // By FloorType ordinal
+	private final int[] actionTileAmounts; // By ActionType ordinal
+
+	/**
+	 * @param name Name of the level
+	 * @param width Width of the board
+	 * @param height Height of the board
+	 * @param cells Packed cells, x * height + y, EMPTY or made by packFixedCell. Not copied
+	 * @param playerStartingPositions x and y of every player's start. Not copied
+	 * @param floorTileAmounts Amount of every FloorType in the bag, by ordinal. Not copied
+	 * @param actionTileAmounts Amount of every ActionType in the bag, by ordinal. Not copied
+	 */
+	public LevelTemplate(String name, int width, int height, byte[] cells, int[][] playerStartingPositions,
+						 int[] floorTileAmounts, int[] actionTileAmounts) {
+		this.name = name;
+		this.width = width;
+		this.height = height;
+		this.cells = cells;
+		this.playerStartingPositions = playerStartingPositions;
+		this.floorTileAmounts = floorTileAmounts;
+		this.actionTileAmounts = actionTileAmounts;
+	}
+
+	/**
+	 * Pack a parsed level into a template.
+	 * @param name Name of the level
+	 * @param levelData Parsed level, holding only fixed tiles on its board
+	 * @return Template of the level
+	 */
+	public static LevelTemplate fromLevelData(String name, LevelData levelData) {
+		Board board = levelData.getBoard();
+		byte[] cells = new byte[board.getWidth() * board.getHeight()];
+		for (int x = 0; x < board.getWidth(); x++) {
+			for (int y = 0; y < board.getHeight(); y++) {
+				FloorTile tile = board.getTileAt(x, y);
+				if (tile != null) {
+					cells[x * board.getHeight() + y] = (byte) packFixedCell(tile.getFloorType(), tile.getOrientation());
+				}
+			}
+		}
+
+		int[] floorTileAmounts = new int[FLOOR_TYPES.length];
+		for (FloorTile.FloorType type : FLOOR_TYPES) {
+			floorTileAmounts[type.ordinal()] = levelData.getFloorTileAmount(type);
+		}
+		int[] actionTileAmounts = new int[ActionTile.ActionType.values().length];
+		for (ActionTile.ActionType type : ActionTile.ActionType.values()) {
+			actionTileAmounts[type.ordinal()] = levelData.getActionTileAmount(type);
+		}
+		return new LevelTemplate(name, board.getWidth(), board.getHeight(), cells,
+				levelData.getPlayerStartingPositions(), floorTileAmounts, actionTileAmounts);
+	}
+
+	/**
+	 * Set up the board and SilkBag of a new game. The bag is filled with this level's floor tiles in random
+	 * orientations, every cell that is not fixed is filled from it, and then the action tiles are added. The same
+	 * seed always gives the same game.
+	 * @param seed Seed of the game
+	 * @return Board of the new game
+	 */
+	public Board startGame(long seed) {
+		Random random = new Random(seed);
+		SilkBag.emptyBag(random);
+		for (FloorTile.FloorType type : FLOOR_TYPES) {
+			for (int i = 0; i < floorTileAmounts[type.ordinal()]; i++) {
+				SilkBag.addTile(new FloorTile(random.nextInt(ORIENTATIONS_IN_BAG), type));
+			}
+		}
+
+		// Only floor tiles are in the bag at this point, so every draw is a FloorTile
+		Board board = new Board(width, height);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				int cell = cells[x * height + y] & 0xFF;
+				if (cell == EMPTY) {
+					FloorTile drawn = (FloorTile) SilkBag.getRandomTile();
+					if (drawn == null) {
+						throw new IllegalStateException("Level " + name + " has too few floor tiles to fill its board");
+					}
+					board.setTileAt(drawn, x, y);
+				} else {
+					FloorTile fixedTile = new FloorTile(cellOrientation(cell), cellType(cell));
+					fixedTile.setFixed(true);
+					board.setTileAt(fixedTile, x, y);
+				}
+			}
+		}
+
+		for (ActionTile.ActionType type : ActionTile.ActionType.values()) {
+			for (int i = 0; i < actionTileAmounts[type.ordinal()]; i++) {
+				SilkBag.addTile(new ActionTile(type));
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * @param type Type of a fixed tile
+	 * @param orientation Orientation of the tile, 0 to 3
+	 * @return The tile packed into one cell
+	 */
+	public static int packFixedCell(FloorTile.FloorType type, int orientation) {
+		return FIXED_BIT | type.ordinal() << TYPE_SHIFT | orientation;
+	}
+
+	/**
+	 * @param cell Packed cell, e.g. read from a file
+	 * @return true if the cell is EMPTY or a fixed tile of a known type and orientation 0 to 3
+	 */
+	public static boolean isValidCell(int cell) {
+		return cell == EMPTY || ((cell & FIXED_BIT) != 0 && ((cell >> TYPE_SHIFT) & TYPE_MASK) < FLOOR_TYPES.length
+				&& cellOrientation(cell) < 4);
+	}
+
+	/**
+	 * @param cell Packed cell that is not EMPTY
+	 * @return Type of the fixed tile
+	 */
+	public static FloorTile.FloorType cellType(int cell) {
+		return FLOOR_TYPES[(cell >> TYPE_SHIFT) & TYPE_MASK];
+	}
+
+	/**
+	 * @param cell Packed cell that is not EMPTY
+	 * @return Orientation of the fixed tile
+	 */
+	public static int cellOrientation(int cell) {
+		return cell & ORIENTATION_MASK;
+	}
+
+	/**
+	 * @return Name of the level
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Width of the board
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return Height of the board
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @param x X-position of the cell
+	 * @param y Y-position of the cell
+	 * @return Packed cell, EMPTY if it is filled from the bag
+	 */
+	public int getCell(int x, int y) {
+		return cells[x * height + y] & 0xFF;
+	}
+
+	/**
+	 * @return Copy of the packed cells, x * height + y
+	 */
+	public byte[] getCells() {
+		return cells.clone();
+	}
+
+	/**
+	 * @param player Player (0 to 3)
+	 * @return x and y of the player's start
+	 */
+	public int[] getPlayerStartingPosition(int player) {
+		return playerStartingPositions[player].clone();
+	}
+
+	/**
+	 * @param type FloorType to get
+	 * @return Amount of that FloorType in the bag
+	 */
+	public int getFloorTileAmount(FloorTile.FloorType type) {
+		return floorTileAmounts[type.ordinal()];
+	}
+
+	/**
+	 * @param type ActionType to get
+	 * @return Amount of that ActionType in the bag
+	 */
+	public int getActionTileAmount(ActionTile.ActionType type) {
+		return actionTileAmounts[type.ordinal()];
+	}
+}
@@ -0,0 +1,79 @@
+package source.labyrinth;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LevelTemplateCache parses every level file once and hands out its LevelTemplate from then on. Each time a
+ * template is asked for, the file's modification time and length are compared with those it was parsed from,
+ * and a changed file is parsed again. A level may be a text file or a binary one (see BinaryLevelFormat); if both
+ * exist the binary one is used.
+ * @author Fillip Serov
+ */
+public final class LevelTemplateCache {
+	public static final File LEVEL_DIRECTORY = new File("source/resources/levels");
+	public static final String EXTENSION = ".txt";
+	public static final String BINARY_EXTENSION = ".lvb";
+
+	private static final ConcurrentHashMap<String, CachedTemplate> CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * A template together with the state of the file it was parsed from.
+	 */
+	private static final class CachedTemplate {
+		private final LevelTemplate template;
+		private final long lastModified;
+		private final long length;
+
+		/**
+		 * @param template Parsed template
+		 * @param lastModified Modification time of the file when it was parsed
+		 * @param length Length of the file when it was parsed
+		 */
+		private CachedTemplate(LevelTemplate template, long lastModified, long length) {
+			this.template = template;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * @param levelName Name of the level, without extension
+	 * @return Template of the level, parsed only if it was not cached or the file changed
+	 * @throws LevelFormatException If the file is not a valid level
+	 * @throws IOException If the file cannot be read
+	 */
+	public static LevelTemplate get(String levelName) throws IOException {
+		File file = fileOf(levelName);
+		long lastModified = file.lastModified();
+		long length = file.length();
+		CachedTemplate cached = CACHE.get(levelName);
+		if (cached == null || cached.lastModified != lastModified || cached.length != length) {
+			LevelTemplate template = file.getName().endsWith(BINARY_EXTENSION)
+					? BinaryLevelFormat.read(levelName, file)
+					: LevelTemplate.fromLevelData(levelName, LevelParser.parse(file));
+			cached = new CachedTemplate(template, lastModified, length);
+			CACHE.put(levelName, cached);
+			System.out.println("Parsed level " + levelName);
+		}
+		return cached.template;
+	}
+
+	/**
+	 * @param levelName Name of the level, without extension
+	 * @return The level's binary file if there is one, otherwise its text file. Either may not exist
+	 */
+	public static File fileOf(String levelName) {
+		File binaryFile = new File(LEVEL_DIRECTORY, levelName + BINARY_EXTENSION);
+		return binaryFile.exists() ? binaryFile : new File(LEVEL_DIRECTORY, levelName + EXTENSION);
+	}
+
+	/**
+	 * Forget the template of a level, e.g. because its file was deleted.
+	 * @param levelName Name of the level, without extension
+	 */
+	public static void invalidate(String levelName) {
+		CACHE.remove(levelName);
+	}
+}
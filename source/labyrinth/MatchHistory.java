@@ -0,0 +1,617 @@
+package source.labyrinth;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * MatchHistory keeps every finished game. Games are stored by column rather than by game: a segment file holds
+ * up to SEGMENT_ROWS games with each field (level, seed, seats, winner, turns, action tiles used, duration, end
+ * time) in its own block, each with an encoding that suits it. A query only decodes the columns it needs, and
+ * every segment is scanned in parallel.
+ * Games that do not fill a segment yet are appended to a small row log and sealed into a segment once there are
+ * enough of them. It is entirely static, like LeaderboardStore, and loads itself the first time it is used.
+ * @author Fillip Serov
+ */
+public final class MatchHistory {
+	private static final File HISTORY_DIRECTORY = new File("source/resources/history");
+	private static final File TAIL_FILE = new File(HISTORY_DIRECTORY, "tail.log");
+	private static final String SEGMENT_PREFIX = "segment_";
+	private static final String SEGMENT_EXTENSION = ".col";
+	private static final int MAGIC = 0x4C424D48; // "LBMH"
+	private static final int VERSION = 1;
+	private static final int SEGMENT_ROWS = 4096;
+	private static final int VARINT_BITS = 7;
+	private static final int VARINT_MORE = 0x80;
+	private static final int VARINT_MASK = 0x7F;
+
+	/**
+	 * Columns of a segment, in the order they are written.
+	 */
+	private enum Column {
+		LEVEL, // Dictionary of level names, then a varint code per game
+		SEED, // 8 bytes per game, seeds are random so they do not compress
+		SEATS, // Amount of seats, then a varint of profile id + 1 per seat
+		WINNER, // One byte per game
+		TURNS, // Varint
+		ACTION_TILES, // Varint
+		DURATION, // Varint
+		FINISHED_AT // Varint of the zigzagged difference to the previous game
+	}
+
+	// Header: magic, version, rows, first and last end time, then an offset and length per column
+	private static final int COLUMN_DIRECTORY_OFFSET = 4 + 4 + 4 + 8 + 8;
+	private static final int HEADER_SIZE = COLUMN_DIRECTORY_OFFSET + Column.values().length * 8;
+
+	/**
+	 * A block of games stored by column. Columns are only decoded when a query asks for them.
+	 */
+	private static final class Segment {
+		private final ByteBuffer data;
+		private final int rows;
+		private final long firstFinishedAt;
+		private final long lastFinishedAt;
+
+		/**
+		 * @param data Encoded segment, as made by encode
+		 */
+		private Segment(ByteBuffer data) {
+			this.data = data;
+			this.rows = data.getInt(8);
+			this.firstFinishedAt = data.getLong(12);
+			this.lastFinishedAt = data.getLong(20);
+		}
+
+		/**
+		 * @param column Column to read
+		 * @return Buffer positioned at the start of the column. Every call gets its own, so threads never share one
+		 */
+		private ByteBuffer column(Column column) {
+			ByteBuffer buffer = data.duplicate();
+			int entry = COLUMN_DIRECTORY_OFFSET + column.ordinal() * 8;
+			buffer.position(data.getInt(entry));
+			buffer.limit(data.getInt(entry) + data.getInt(entry + 4));
+			return buffer;
+		}
+
+		/**
+		 * @return Every level name used in this segment, the index being its code
+		 */
+		private String[] levelDictionary() {
+			return readDictionary(column(Column.LEVEL));
+		}
+
+		/**
+		 * @param levelName Level to look for
+		 * @return Code of the level in this segment, or -1 if no game in it was played on that level
+		 */
+		private int levelCode(String levelName) {
+			return Arrays.asList(levelDictionary()).indexOf(levelName);
+		}
+
+		/**
+		 * @return Level code of every game
+		 */
+		private int[] levelCodes() {
+			ByteBuffer buffer = column(Column.LEVEL);
+			readDictionary(buffer);
+			return readVarints(buffer, rows);
+		}
+
+		/**
+		 * @param column One of the varint columns
+		 * @return Value of every game
+		 */
+		private int[] ints(Column column) {
+			return readVarints(column(column), rows);
+		}
+
+		/**
+		 * @return Profile ids of every game in seat order
+		 */
+		private int[][] seats() {
+			ByteBuffer buffer = column(Column.SEATS);
+			int[][] seats = new int[rows][];
+			for (int row = 0; row < rows; row++) {
+				seats[row] = new int[buffer.get()];
+				for (int seat = 0; seat < seats[row].length; seat++) {
+					seats[row][seat] = readVarint(buffer) - 1;
+				}
+			}
+			return seats;
+		}
+
+		/**
+		 * @return Winning seat of every game
+		 */
+		private int[] winners() {
+			ByteBuffer buffer = column(Column.WINNER);
+			int[] winners = new int[rows];
+			for (int row = 0; row < rows; row++) {
+				winners[row] = buffer.get();
+			}
+			return winners;
+		}
+
+		/**
+		 * @return End time of every game
+		 */
+		private long[] finishedAt() {
+			ByteBuffer buffer = column(Column.FINISHED_AT);
+			long[] times = new long[rows];
+			long previous = 0;
+			for (int row = 0; row < rows; row++) {
+				long zigzag = readVarLong(buffer);
+				previous += (zigzag >>> 1) ^ -(zigzag & 1);
+				times[row] = previous;
+			}
+			return times;
+		}
+	}
+
+	private static ArrayList<Segment> segments;
+	private static ArrayList<MatchRecord> tail; // Games not sealed into a segment yet
+	private static Segment tailSegment; // tail encoded for queries, null when it has to be encoded again
+	private static int nextSegmentNumber;
+
+	/**
+	 * Add a finished game to the history.
+	 * @param match MatchRecord of the game
+	 */
+	public static synchronized void record(MatchRecord match) {
+		ensureLoaded();
+		try {
+			appendToTail(match);
+		} catch (IOException e) {
+			System.out.println("Could not write to the match history.");
+			e.printStackTrace();
+		}
+		tail.add(match);
+		tailSegment = null;
+
+		if (tail.size() >= SEGMENT_ROWS) {
+			sealTail();
+		}
+	}
+
+	/**
+	 * Win rate of a profile, e.g. on one level over the last month. Only the level, end time, seat and winner
+	 * columns are read, and segments that ended before since or never saw the level are skipped.
+	 * @param profileId Profile to get the win rate of
+	 * @param levelName Level to count games on, or null for every level
+	 * @param since Only count games that ended at or after this time (milliseconds since the epoch), 0 for all
+	 * @return Share of the profile's games it won, between 0 and 1. 0 if it played none
+	 */
+	public static double getWinRate(int profileId, String levelName, long since) {
+		long[] playedAndWon = scan(segment -> {
+			long[] counts = new long[2];
+			int wantedCode = levelName == null ? -1 : segment.levelCode(levelName);
+			if (segment.lastFinishedAt >= since && (levelName == null || wantedCode != -1)) {
+				int[] codes = levelName == null ? null : segment.levelCodes();
+				long[] times = segment.finishedAt();
+				int[][] seats = segment.seats();
+				int[] winners = segment.winners();
+				for (int row = 0; row < segment.rows; row++) {
+					if (times[row] >= since && (codes == null || codes[row] == wantedCode)) {
+						for (int seat = 0; seat < seats[row].length; seat++) {
+							if (seats[row][seat] == profileId) {
+								counts[0]++;
+								counts[1] += winners[row] == seat ? 1 : 0;
+							}
+						}
+					}
+				}
+			}
+			return counts;
+		}, (a, b) -> new long[] {a[0] + b[0], a[1] + b[1]}, new long[2]);
+		return playedAndWon[0] == 0 ? 0 : (double) playedAndWon[1] / playedAndWon[0];
+	}
+
+	/**
+	 * Average amount of turns a game takes on every level. Only the level and turn columns are read.
+	 * @return Level name -> average turns, for every level with at least one game
+	 */
+	public static Map<String, Double> getAverageTurns() {
+		HashMap<String, long[]> totals = scan(segment -> {
+			String[] dictionary = segment.levelDictionary();
+			int[] codes = segment.levelCodes();
+			int[] turns = segment.ints(Column.TURNS);
+			HashMap<String, long[]> counts = new HashMap<>();
+			for (int row = 0; row < segment.rows; row++) {
+				long[] count = counts.computeIfAbsent(dictionary[codes[row]], level -> new long[2]);
+				count[0]++;
+				count[1] += turns[row];
+			}
+			return counts;
+		}, (a, b) -> {
+			HashMap<String, long[]> merged = new HashMap<>(a);
+			b.forEach((level, count) -> merged.merge(level, count, (x, y) -> new long[] {x[0] + y[0], x[1] + y[1]}));
+			return merged;
+		}, new HashMap<>());
+
+		LinkedHashMap<String, Double> averages = new LinkedHashMap<>();
+		totals.forEach((level, count) -> averages.put(level, (double) count[1] / count[0]));
+		return averages;
+	}
+
+	/**
+	 * @return Amount of games in the history
+	 */
+	public static int getGameCount() {
+		return scan(segment -> segment.rows, Integer::sum, 0);
+	}
+
+	/**
+	 * Run a query over every segment in parallel, including the games not sealed yet, and combine the results.
+	 * @param perSegment Query of a single segment
+	 * @param combine Combines two results
+	 * @param identity Result of no segments
+	 * @param <R> Type of result
+	 * @return Combined result
+	 */
+	private static <R> R scan(Function<Segment, R> perSegment, BinaryOperator<R> combine, R identity) {
+		ArrayList<Segment> toScan;
+		synchronized (MatchHistory.class) {
+			ensureLoaded();
+			toScan = new ArrayList<>(segments);
+			if (!tail.isEmpty()) {
+				if (tailSegment == null) {
+					tailSegment = new Segment(ByteBuffer.wrap(encode(tail)));
+				}
+				toScan.add(tailSegment);
+			}
+		}
+		return toScan.parallelStream().map(perSegment).reduce(identity, combine);
+	}
+
+	/**
+	 * Load every segment and the row log if that has not happened yet. Segments are memory-mapped, nothing is
+	 * decoded until a query needs it.
+	 */
+	private static void ensureLoaded() {
+		if (segments == null) {
+			segments = new ArrayList<>();
+			tail = new ArrayList<>();
+			nextSegmentNumber = 0;
+			HISTORY_DIRECTORY.mkdirs();
+
+			boolean found = true;
+			while (found) {
+				File file = segmentFile(nextSegmentNumber);
+				found = file.exists();
+				if (found) {
+					try {
+						segments.add(new Segment(mapSegment(file)));
+					} catch (IOException e) {
+						System.out.println("Could not read " + file.getName() + ", skipping it.");
+						e.printStackTrace();
+					}
+					nextSegmentNumber++;
+				}
+			}
+			readTail();
+			System.out.println("Loaded match history: " + segments.size() + " segments and " + tail.size()
+					+ " recent games.");
+		}
+	}
+
+	/**
+	 * Read the games not sealed into a segment yet. If the log belongs to a segment that already exists, the
+	 * game crashed after sealing it and the log is thrown away. A game cut short by a crash is cut off the log,
+	 * so the games appended after it can still be read.
+	 */
+	private static void readTail() {
+		if (TAIL_FILE.exists()) {
+			try {
+				long length = TAIL_FILE.length();
+				long complete = 0; // Bytes up to the end of the last complete game
+				boolean torn = false;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(TAIL_FILE)));
+				try {
+					if (in.readInt() == nextSegmentNumber) {
+						complete = length - in.available();
+						while (in.available() > 0) {
+							tail.add(readRow(in));
+							complete = length - in.available();
+						}
+					}
+				} catch (EOFException e) {
+					torn = true;
+				} finally {
+					in.close();
+				}
+
+				if (torn) {
+					System.out.println("Match history ends in a partial record, cutting it off.");
+					truncate(TAIL_FILE, complete);
+				}
+			} catch (IOException e) {
+				System.out.println("Could not read the match history.");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @param file File to cut short
+	 * @param length Length to cut it to
+	 * @throws IOException If the file cannot be written to
+	 */
+	private static void truncate(File file, long length) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+		try {
+			channel.truncate(length);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @param match Game to add to the end of the row log
+	 * @throws IOException If the log cannot be written to
+	 */
+	private static void appendToTail(MatchRecord match) throws IOException {
+		boolean isNew = !TAIL_FILE.exists() || tail.isEmpty();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(TAIL_FILE, !isNew)));
+		try {
+			if (isNew) {
+				out.writeInt(nextSegmentNumber); // The segment these games will end up in
+			}
+			writeRow(out, match);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write the games in the row log as a new segment and start a new log. The segment is written to a temporary
+	 * file first and renamed, so a crash never leaves half a segment.
+	 */
+	private static void sealTail() {
+		File file = segmentFile(nextSegmentNumber);
+		File tempFile = new File(HISTORY_DIRECTORY, file.getName() + ".tmp");
+		try {
+			FileOutputStream out = new FileOutputStream(tempFile);
+			try {
+				out.write(encode(tail));
+			} finally {
+				out.close();
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			segments.add(new Segment(mapSegment(file)));
+			nextSegmentNumber++;
+			System.out.println("Sealed " + tail.size() + " games into " + file.getName());
+			tail.clear();
+			tailSegment = null;
+			Files.deleteIfExists(TAIL_FILE.toPath());
+		} catch (IOException e) {
+			System.out.println("Could not seal the match history, keeping the games in the log.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param number Number of the segment
+	 * @return File of that segment
+	 */
+	private static File segmentFile(int number) {
+		return new File(HISTORY_DIRECTORY, SEGMENT_PREFIX + String.format("%05d", number) + SEGMENT_EXTENSION);
+	}
+
+	/**
+	 * @param file Segment file
+	 * @return The file mapped into memory
+	 * @throws IOException If the file cannot be mapped or is not a segment
+	 */
+	private static ByteBuffer mapSegment(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				throw new IOException(file.getName() + " is not a match history segment.");
+			}
+			return buffer;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Encode games as a segment.
+	 * @param matches Games, oldest first
+	 * @return Encoded segment
+	 */
+	private static byte[] encode(List<MatchRecord> matches) {
+		ByteArrayOutputStream[] columns = new ByteArrayOutputStream[Column.values().length];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = new ByteArrayOutputStream();
+		}
+
+		// Level dictionary, in order of first appearance
+		LinkedHashMap<String, Integer> levelCodes = new LinkedHashMap<>();
+		for (MatchRecord match : matches) {
+			levelCodes.putIfAbsent(match.getLevelName(), levelCodes.size());
+		}
+		ByteArrayOutputStream levels = columns[Column.LEVEL.ordinal()];
+		writeVarint(levels, levelCodes.size());
+		for (String level : levelCodes.keySet()) {
+			byte[] name = level.getBytes(StandardCharsets.UTF_8);
+			writeVarint(levels, name.length);
+			levels.write(name, 0, name.length);
+		}
+
+		long previousTime = 0;
+		for (MatchRecord match : matches) {
+			writeVarint(levels, levelCodes.get(match.getLevelName()));
+
+			ByteArrayOutputStream seed = columns[Column.SEED.ordinal()];
+			for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+				seed.write((int) (match.getSeed() >>> shift));
+			}
+
+			int[] seatProfiles = match.getSeatProfiles();
+			columns[Column.SEATS.ordinal()].write(seatProfiles.length);
+			for (int profileId : seatProfiles) {
+				writeVarint(columns[Column.SEATS.ordinal()], profileId + 1);
+			}
+
+			columns[Column.WINNER.ordinal()].write(match.getWinnerSeat());
+			writeVarint(columns[Column.TURNS.ordinal()], match.getTurns());
+			writeVarint(columns[Column.ACTION_TILES.ordinal()], match.getActionTilesUsed());
+			writeVarint(columns[Column.DURATION.ordinal()], match.getDurationMillis());
+
+			long difference = match.getFinishedAt() - previousTime;
+			writeVarint(columns[Column.FINISHED_AT.ordinal()], (difference << 1) ^ (difference >> (Long.SIZE - 1)));
+			previousTime = match.getFinishedAt();
+		}
+
+		int size = HEADER_SIZE;
+		for (ByteArrayOutputStream column : columns) {
+			size += column.size();
+		}
+		ByteBuffer segment = ByteBuffer.allocate(size);
+		segment.putInt(MAGIC);
+		segment.putInt(VERSION);
+		segment.putInt(matches.size());
+		segment.putLong(matches.isEmpty() ? 0 : matches.get(0).getFinishedAt());
+		segment.putLong(previousTime);
+		int offset = HEADER_SIZE;
+		for (ByteArrayOutputStream column : columns) {
+			segment.putInt(offset);
+			segment.putInt(column.size());
+			offset += column.size();
+		}
+		for (ByteArrayOutputStream column : columns) {
+			segment.put(column.toByteArray());
+		}
+		return segment.array();
+	}
+
+	/**
+	 * @param out Row log
+	 * @param match Game to write
+	 * @throws IOException If the log cannot be written to
+	 */
+	private static void writeRow(DataOutputStream out, MatchRecord match) throws IOException {
+		out.writeUTF(match.getLevelName());
+		out.writeLong(match.getSeed());
+		int[] seatProfiles = match.getSeatProfiles();
+		out.writeByte(seatProfiles.length);
+		for (int profileId : seatProfiles) {
+			out.writeInt(profileId);
+		}
+		out.writeByte(match.getWinnerSeat());
+		out.writeInt(match.getTurns());
+		out.writeInt(match.getActionTilesUsed());
+		out.writeLong(match.getDurationMillis());
+		out.writeLong(match.getFinishedAt());
+	}
+
+	/**
+	 * @param in Row log
+	 * @return Next game in the log
+	 * @throws IOException If the log cannot be read or ends in the middle of the game
+	 */
+	private static MatchRecord readRow(DataInputStream in) throws IOException {
+		String levelName = in.readUTF();
+		long seed = in.readLong();
+		int[] seatProfiles = new int[in.readUnsignedByte()];
+		for (int i = 0; i < seatProfiles.length; i++) {
+			seatProfiles[i] = in.readInt();
+		}
+		int winnerSeat = in.readUnsignedByte();
+		int turns = in.readInt();
+		int actionTilesUsed = in.readInt();
+		long durationMillis = in.readLong();
+		long finishedAt = in.readLong();
+		return new MatchRecord(levelName, seed, seatProfiles, winnerSeat, turns, actionTilesUsed, durationMillis,
+				finishedAt);
+	}
+
+	/**
+	 * @param buffer Buffer positioned at a level dictionary, left positioned after it
+	 * @return Level names of the dictionary
+	 */
+	private static String[] readDictionary(ByteBuffer buffer) {
+		String[] dictionary = new String[readVarint(buffer)];
+		for (int i = 0; i < dictionary.length; i++) {
+			byte[] name = new byte[readVarint(buffer)];
+			buffer.get(name);
+			dictionary[i] = new String(name, StandardCharsets.UTF_8);
+		}
+		return dictionary;
+	}
+
+	/**
+	 * @param buffer Buffer positioned at the first varint
+	 * @param amount Amount of varints to read
+	 * @return The values read
+	 */
+	private static int[] readVarints(ByteBuffer buffer, int amount) {
+		int[] values = new int[amount];
+		for (int i = 0; i < amount; i++) {
+			values[i] = readVarint(buffer);
+		}
+		return values;
+	}
+
+	/**
+	 * @param out Stream to write to
+	 * @param value Value to write, 7 bits per byte with the high bit set on every byte but the last
+	 */
+	private static void writeVarint(ByteArrayOutputStream out, long value) {
+		long remaining = value;
+		while ((remaining & ~VARINT_MASK) != 0) {
+			out.write((int) (remaining & VARINT_MASK) | VARINT_MORE);
+			remaining >>>= VARINT_BITS;
+		}
+		out.write((int) remaining);
+	}
+
+	/**
+	 * @param buffer Buffer to read from
+	 * @return Value of the next varint
+	 */
+	private static long readVarLong(ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		int current = VARINT_MORE;
+		while ((current & VARINT_MORE) != 0) {
+			current = buffer.get();
+			value |= (long) (current & VARINT_MASK) << shift;
+			shift += VARINT_BITS;
+		}
+		return value;
+	}
+
+	/**
+	 * @param buffer Buffer to read from
+	 * @return Value of the next varint, which must fit in an int
+	 */
+	private static int readVarint(ByteBuffer buffer) {
+		return (int) readVarLong(buffer);
+	}
+}
@@ -0,0 +1,96 @@
+package source.labyrinth;
+
+/**
+ * MatchRecord describes one finished game as it is kept in the MatchHistory. Immutable.
+ * @author Fillip Serov
+ */
+public final class MatchRecord {
+	public static final int NO_PROFILE = -1;
+
+	private final String levelName;
+	private final long seed;
+	private final int[] seatProfiles;
+	private final int winnerSeat;
+	private final int turns;
+	private final int actionTilesUsed;
+	private final long durationMillis;
+	private final long finishedAt;
+
+	/**
+	 * @param levelName Level that was played
+	 * @param seed Seed the game was set up with
+	 * @param seatProfiles Profile id of every player in seat order, NO_PROFILE for players without a profile
+	 * @param winnerSeat Seat of the player that won
+	 * @param turns Amount of turns taken by all players together, including the winning one
+	 * @param actionTilesUsed Amount of action tiles played
+	 * @param durationMillis Time spent playing, not counting time the game was saved and closed
+	 * @param finishedAt When the game ended, in milliseconds since the epoch
+	 */
+	public MatchRecord(String levelName, long seed, int[] seatProfiles, int winnerSeat, int turns,
+					   int actionTilesUsed, long durationMillis, long finishedAt) {
+		this.levelName = levelName;
+		this.seed = seed;
+		this.seatProfiles = seatProfiles.clone();
+		this.winnerSeat = winnerSeat;
+		this.turns = turns;
+		this.actionTilesUsed = actionTilesUsed;
+		this.durationMillis = durationMillis;
+		this.finishedAt = finishedAt;
+	}
+
+	/**
+	 * @return Level that was played
+	 */
+	public String getLevelName() {
+		return levelName;
+	}
+
+	/**
+	 * @return Seed the game was set up with
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return Profile id of every player in seat order, NO_PROFILE for players without a profile
+	 */
+	public int[] getSeatProfiles() {
+		return seatProfiles.clone();
+	}
+
+	/**
+	 * @return Seat of the player that won
+	 */
+	public int getWinnerSeat() {
+		return winnerSeat;
+	}
+
+	/**
+	 * @return Amount of turns taken by all players together
+	 */
+	public int getTurns() {
+		return turns;
+	}
+
+	/**
+	 * @return Amount of action tiles played
+	 */
+	public int getActionTilesUsed() {
+		return actionTilesUsed;
+	}
+
+	/**
+	 * @return Time spent playing in milliseconds
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * @return When the game ended, in milliseconds since the epoch
+	 */
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+}
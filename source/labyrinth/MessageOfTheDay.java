@@ -1,47 +1,136 @@
 package source.labyrinth;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The Message of the Day class gets the encoded message,
  * decodes it and gets the decoded message of the day.
+ * The message is fetched on a background thread with a short timeout, so a slow or missing network never holds
+ * up the menu. The last message that was fetched is kept on disk and can be shown straight away while a new one
+ * is on its way. The server can be changed with the labyrinth.motdUrl system property, e.g. to a local server.
  * @author Ian Lavin Rady, Fillip Serov
  */
 public class MessageOfTheDay {
 
-	private static final String GET_URL = "http://cswebcat.swansea.ac.uk/puzzle";
-	private static final String GET_MSG_OF_THE_DAY = "http://cswebcat.swansea.ac.uk/message?solution=";
+	private static final String BASE_URL = System.getProperty("labyrinth.motdUrl", "http://cswebcat.swansea.ac.uk");
+	private static final String GET_URL = BASE_URL + "/puzzle";
+	private static final String GET_MSG_OF_THE_DAY = BASE_URL + "/message?solution=";
+	private static final int TIMEOUT_MILLIS = 3000;
+	private static final File CACHE_FILE = new File("source/resources/motd/motd.txt");
+	private static final String UNAVAILABLE = "The message of the day could not be fetched.";
 	private static final char[] ALPHABET = {'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z'};
 
+	private static CompletableFuture<String> fetch; // The fetch of this run, null until one is started or if it failed
+
 	/**
 	 * Method to call message of the day and place it in main menu.
-	 * @return method to get Message of the Day.
+	 * Blocks until the message is fetched, use fetchMessageOfTheDay to not wait for it.
+	 * @return The message of the day, or the last one fetched if it could not be fetched.
 	 */
 	public static String getMessageOfTheDay() {
-		return MessageOfTheDay.getPuzzleMessage();
+		return fetchMessageOfTheDay().join();
+	}
+
+	/**
+	 * Fetch the message of the day on a background thread. It is only fetched once per run: later calls get the
+	 * same fetch, unless it failed, in which case it is tried again.
+	 * @return Completes with the message of the day, or with the last one fetched if it could not be fetched.
+	 */
+	public static synchronized CompletableFuture<String> fetchMessageOfTheDay() {
+		if (fetch == null) {
+			CompletableFuture<String> started = new CompletableFuture<>();
+			fetch = started;
+			Thread fetcher = new Thread(() -> {
+				String message = "";
+				try {
+					message = getPuzzleMessage();
+				} finally {
+					// Even if the server sent something that cannot be decoded, whoever waits gets a message
+					if (message.isEmpty()) {
+						forgetFetch(started);
+						message = getCachedMessage();
+					} else {
+						writeCache(message);
+					}
+					started.complete(message.isEmpty() ? UNAVAILABLE : message);
+				}
+			}, "motd-fetcher");
+			fetcher.setDaemon(true);
+			fetcher.start();
+		}
+		return fetch;
+	}
+
+	/**
+	 * @return The last message of the day that was fetched, read from disk, or an empty String if there is none.
+	 */
+	public static String getCachedMessage() {
+		String message = "";
+		if (CACHE_FILE.exists()) {
+			try {
+				message = new String(Files.readAllBytes(CACHE_FILE.toPath()), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				System.out.println("Could not read the cached message of the day.");
+			}
+		}
+		return message;
 	}
 
 	/**
 	 * Puts the decoded puzzle together and sends a final get request to a website to get mssg of the day.
-	 * @return the message of the day in it's full glory.
+	 * @return the message of the day in it's full glory, or an empty String if it could not be fetched.
 	 */
 	public static String getPuzzleMessage() {
 		String endResult = "";
 		try {
 			String givenPuzzle = sendGET(GET_URL);
-			String solvedPuzzle = solvePuzzle(givenPuzzle);
-			endResult = sendGET(GET_MSG_OF_THE_DAY + solvedPuzzle);
+			if (!givenPuzzle.isEmpty()) {
+				String solvedPuzzle = solvePuzzle(givenPuzzle);
+				endResult = sendGET(GET_MSG_OF_THE_DAY + solvedPuzzle);
+			}
 		} catch (IOException e) {
-			e.printStackTrace();
-			System.exit(0);
+			System.out.println("Could not fetch the message of the day: " + e.getMessage());
 		}
 		return endResult;
 	}
 
+	/**
+	 * Let the next fetchMessageOfTheDay try again after a failed fetch.
+	 * @param failed The fetch that failed
+	 */
+	private static synchronized void forgetFetch(CompletableFuture<String> failed) {
+		if (fetch == failed) {
+			fetch = null;
+		}
+	}
+
+	/**
+	 * Keep a message on disk for the next run. It is written to a temporary file first and moved in place, so
+	 * the cache never holds half a message.
+	 * @param message Message to keep
+	 */
+	private static void writeCache(String message) {
+		File tempFile = new File(CACHE_FILE.getParentFile(), CACHE_FILE.getName() + ".tmp");
+		try {
+			CACHE_FILE.getParentFile().mkdirs();
+			Files.write(tempFile.toPath(), message.getBytes(StandardCharsets.UTF_8));
+			Files.move(tempFile.toPath(), CACHE_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.out.println("Could not cache the message of the day.");
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * sends the get request to desired website and establishes a connection,
 	 * finally it gets the response code(checks if request was processed) and
@@ -54,6 +143,8 @@ public class MessageOfTheDay {
 		URL obj = new URL(getURL);
 		HttpURLConnection con = (HttpURLConnection) obj.openConnection();
 		con.setRequestMethod("GET");
+		con.setConnectTimeout(TIMEOUT_MILLIS);
+		con.setReadTimeout(TIMEOUT_MILLIS);
 		String finalResponse = "";
 
 		//This way we know if the request was processed successfully or there was any HTTP error message thrown.
@@ -0,0 +1,296 @@
+package source.labyrinth;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * OrderStatisticTree is a sorted collection that also knows how many elements are below every node, so the
+ * position of an element (its rank) and the element at a position can both be found in O(log n). It is a
+ * treap: a binary search tree kept balanced by random heap priorities. Elements that compare as equal are
+ * treated as the same element, so the comparator should break ties (e.g. by id).
+ * @param <T> Type of element stored
+ * @author Fillip Serov
+ */
+public class OrderStatisticTree<T> {
+	private final Comparator<? super T> comparator;
+	private final Random priorities = new Random();
+	private Node<T> root;
+
+	/**
+	 * A single element of the tree.
+	 * @param <T> Type of element stored
+	 */
+	private static final class Node<T> {
+		private final T value;
+		private final int priority;
+		private Node<T> left;
+		private Node<T> right;
+		private int size = 1;
+
+		/**
+		 * @param value Element to hold
+		 * @param priority Random heap priority
+		 */
+		private Node(T value, int priority) {
+			this.value = value;
+			this.priority = priority;
+		}
+	}
+
+	/**
+	 * @param comparator Order of the elements, the smallest element has rank 0
+	 */
+	public OrderStatisticTree(Comparator<? super T> comparator) {
+		this.comparator = comparator;
+	}
+
+	/**
+	 * @return Amount of elements in the tree
+	 */
+	public int size() {
+		return size(root);
+	}
+
+	/**
+	 * Add an element. Nothing happens if an equal element is already present.
+	 * @param value Element to add
+	 */
+	public void add(T value) {
+		root = insert(root, value);
+	}
+
+	/**
+	 * Remove an element, if present.
+	 * @param value Element to remove
+	 */
+	public void remove(T value) {
+		root = delete(root, value);
+	}
+
+	/**
+	 * Replace the contents of the tree with a list that is already sorted and has no equal elements. The tree
+	 * is built perfectly balanced in O(n), which is much faster than adding the elements one by one. Every node
+	 * gets a priority above any random one, highest at the root, so later additions go below them.
+	 * @param sorted Elements in ascending order
+	 */
+	public void setAll(List<T> sorted) {
+		root = build(sorted, 0, sorted.size(), 0);
+	}
+
+	/**
+	 * Empty the tree.
+	 */
+	public void clear() {
+		root = null;
+	}
+
+	/**
+	 * @param value Element to look for
+	 * @return Amount of elements smaller than value, or -1 if value is not in the tree
+	 */
+	public int rank(T value) {
+		int rank = 0;
+		Node<T> current = root;
+		int found = -1;
+		while (current != null && found == -1) {
+			int compared = comparator.compare(value, current.value);
+			if (compared < 0) {
+				current = current.left;
+			} else if (compared > 0) {
+				rank += size(current.left) + 1;
+				current = current.right;
+			} else {
+				found = rank + size(current.left);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @param index Position to get, 0 being the smallest element
+	 * @return Element at that position
+	 * @throws IndexOutOfBoundsException If index is not between 0 and size() - 1
+	 */
+	public T get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index " + index + " in tree of size " + size());
+		}
+		int remaining = index;
+		Node<T> current = root;
+		while (remaining != size(current.left)) {
+			if (remaining < size(current.left)) {
+				current = current.left;
+			} else {
+				remaining -= size(current.left) + 1;
+				current = current.right;
+			}
+		}
+		return current.value;
+	}
+
+	/**
+	 * Get a range of elements in order, e.g. the top K or one page of a table. Costs O(log n + amount).
+	 * @param from Position of the first element to get
+	 * @param amount Maximum amount of elements to get
+	 * @return Up to amount elements starting at position from
+	 */
+	public List<T> getRange(int from, int amount) {
+		ArrayList<T> result = new ArrayList<>();
+		collect(root, Math.max(0, from), Math.max(0, from) + amount, 0, result);
+		return result;
+	}
+
+	/**
+	 * In-order walk that skips every subtree entirely outside of [from, to).
+	 * @param node Subtree to walk
+	 * @param from First position wanted
+	 * @param to Position after the last one wanted
+	 * @param offset Position of the smallest element of this subtree
+	 * @param result List to add found elements to
+	 */
+	private void collect(Node<T> node, int from, int to, int offset, List<T> result) {
+		if (node != null && offset < to && offset + node.size > from) {
+			int position = offset + size(node.left);
+			collect(node.left, from, to, offset, result);
+			if (position >= from && position < to) {
+				result.add(node.value);
+			}
+			collect(node.right, from, to, position + 1, result);
+		}
+	}
+
+	/**
+	 * @param sorted Elements in ascending order
+	 * @param from First element of the subtree
+	 * @param to Element after the last one of the subtree
+	 * @param depth Depth of the subtree's root
+	 * @return Root of a balanced subtree holding the elements in [from, to)
+	 */
+	private Node<T> build(List<T> sorted, int from, int to, int depth) {
+		if (from >= to) {
+			return null;
+		}
+		int middle = (from + to) >>> 1;
+		Node<T> node = new Node<>(sorted.get(middle), Integer.MAX_VALUE - depth);
+		node.left = build(sorted, from, middle, depth + 1);
+		node.right = build(sorted, middle + 1, to, depth + 1);
+		update(node);
+		return node;
+	}
+
+	/**
+	 * @param node Subtree to insert into
+	 * @param value Element to insert
+	 * @return New root of the subtree
+	 */
+	private Node<T> insert(Node<T> node, T value) {
+		if (node == null) {
+			return new Node<>(value, priorities.nextInt());
+		}
+		int compared = comparator.compare(value, node.value);
+		Node<T> result = node;
+		if (compared < 0) {
+			node.left = insert(node.left, value);
+			if (node.left.priority > node.priority) {
+				result = rotateRight(node);
+			}
+		} else if (compared > 0) {
+			node.right = insert(node.right, value);
+			if (node.right.priority > node.priority) {
+				result = rotateLeft(node);
+			}
+		}
+		update(node);
+		update(result);
+		return result;
+	}
+
+	/**
+	 * @param node Subtree to delete from
+	 * @param value Element to delete
+	 * @return New root of the subtree
+	 */
+	private Node<T> delete(Node<T> node, T value) {
+		if (node == null) {
+			return null;
+		}
+		int compared = comparator.compare(value, node.value);
+		Node<T> result = node;
+		if (compared < 0) {
+			node.left = delete(node.left, value);
+		} else if (compared > 0) {
+			node.right = delete(node.right, value);
+		} else {
+			result = merge(node.left, node.right);
+		}
+		update(result);
+		return result;
+	}
+
+	/**
+	 * Join two subtrees where every element of left is smaller than every element of right.
+	 * @param left Smaller subtree
+	 * @param right Larger subtree
+	 * @return Root of the joined tree
+	 */
+	private Node<T> merge(Node<T> left, Node<T> right) {
+		if (left == null || right == null) {
+			return left == null ? right : left;
+		}
+		Node<T> result;
+		if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			result = left;
+		} else {
+			right.left = merge(left, right.left);
+			result = right;
+		}
+		update(result);
+		return result;
+	}
+
+	/**
+	 * @param node Node whose left child becomes the parent
+	 * @return New root
+	 */
+	private Node<T> rotateRight(Node<T> node) {
+		Node<T> newRoot = node.left;
+		node.left = newRoot.right;
+		newRoot.right = node;
+		update(node);
+		update(newRoot);
+		return newRoot;
+	}
+
+	/**
+	 * @param node Node whose right child becomes the parent
+	 * @return New root
+	 */
+	private Node<T> rotateLeft(Node<T> node) {
+		Node<T> newRoot = node.right;
+		node.right = newRoot.left;
+		newRoot.left = node;
+		update(node);
+		update(newRoot);
+		return newRoot;
+	}
+
+	/**
+	 * @param node Node whose size should be recalculated from its children, can be null
+	 */
+	private void update(Node<T> node) {
+		if (node != null) {
+			node.size = size(node.left) + size(node.right) + 1;
+		}
+	}
+
+	/**
+	 * @param node Node, can be null
+	 * @return Size of the subtree, 0 for null
+	 */
+	private int size(Node<T> node) {
+		return node == null ? 0 : node.size;
+	}
+}
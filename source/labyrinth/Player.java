@@ -11,6 +11,8 @@ import java.util.HashMap;
  * @author Fillip Serov
  */
 public class Player implements Serializable {
+	// The value this class had before it was declared, so older save files still load
+	private static final long serialVersionUID = -1785736358883591628L;
 	private final int associatedProfileID;
 	private final int idInGame;
 
@@ -100,6 +102,13 @@ public class Player implements Serializable {
 		this.standingOn.setPlayer(this);
 	}
 
+	/**
+	 * @return The id of the profile this player is assigned to, -1 if there is none.
+	 */
+	public int getAssociatedProfileID() {
+		return this.associatedProfileID;
+	}
+
 	/**
 	 * @return The profile this player is assigned to. Can be null.
 	 */
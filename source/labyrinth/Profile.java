@@ -1,19 +1,21 @@
 package source.labyrinth;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Profile is used to store the profiles that have been loaded in. The only class that should create new
  * instances of Profile is ProfileManager, since ProfileManager will ensure new / updated profiles are saved
  * to file.
+ * The counters can be changed from several threads at once (e.g. several games ending together). They are
+ * kept in an immutable ProfileStats that is swapped by compare-and-set, so no update is lost and readers
+ * never need a lock to see a consistent set of counters.
  * @author Fillip Serov
  */
 public class Profile implements Serializable {
 	private final String name;
 	private final int id;
-	private int totalPlayed;
-	private int wins;
-	private int losses;
+	private final AtomicReference<ProfileStats> stats;
 
 	/**
 	 * Constructor for absolutely new profiles where all stats are 0. Should only be used by
@@ -37,9 +39,7 @@ public class Profile implements Serializable {
 	public Profile(String name, int id, int totalPlayed, int wins, int losses) {
 		this.name = name;
 		this.id = id;
-		this.totalPlayed = totalPlayed;
-		this.wins = wins;
-		this.losses = losses;
+		this.stats = new AtomicReference<>(new ProfileStats(totalPlayed, wins, losses));
 	}
 
 	/**
@@ -60,41 +60,56 @@ public class Profile implements Serializable {
 	 * @return the number of total games played
 	 */
 	public int getTotalPlayed() {
-		return totalPlayed;
+		return stats.get().getTotalPlayed();
 	}
 
 	/**
 	 * Increase the number of total games playes
 	 */
 	public void addTotalPlayed() {
-		this.totalPlayed += 1;
+		stats.updateAndGet(current -> current.plus(1, 0, 0));
 	}
 
 	/**
 	 * @return the number of win games
 	 */
 	public int getWins() {
-		return wins;
+		return stats.get().getWins();
 	}
 
 	/**
 	 * Increase the number of win games
 	 */
 	public void addWin() {
-		this.wins += 1;
+		stats.updateAndGet(current -> current.plus(0, 1, 0));
 	}
 
 	/**
 	 * @return the number of losses
 	 */
 	public int getLosses() {
-		return losses;
+		return stats.get().getLosses();
 	}
 
 	/**
 	 * Increase the number of losses
 	 */
 	public void addLoss() {
-		this.losses += 1;
+		stats.updateAndGet(current -> current.plus(0, 0, 1));
+	}
+
+	/**
+	 * Count a finished game in one atomic step: one more game played and either a win or a loss.
+	 * @param won Whether this profile won the game
+	 */
+	public void recordGame(boolean won) {
+		stats.updateAndGet(current -> current.plus(1, won ? 1 : 0, won ? 0 : 1));
+	}
+
+	/**
+	 * @return All counters as they were at a single moment
+	 */
+	public ProfileStats getStats() {
+		return stats.get();
 	}
 }
@@ -0,0 +1,166 @@
+package source.labyrinth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * ProfileIndex keeps profiles sorted in several orders at once so that any page of a sorted profile table can be
+ * read in O(log n + page size), no matter how many profiles there are. Every order is an OrderStatisticTree of
+ * entries that hold a copy of the profile's stats, so an entry never moves while it is in a tree; when a
+ * profile's stats change its entry is replaced.
+ * A tree is only built the first time its order is asked for, since a million profiles cost a few dozen
+ * megabytes per order. Used by ProfileManager, which tells it about every added, removed and changed profile.
+ * @author Fillip Serov
+ */
+public final class ProfileIndex {
+	/**
+	 * Orders a profile table can be sorted in.
+	 */
+	public enum SortKey {
+		/**
+		 * Alphabetical, ignoring case.
+		 */
+		NAME(Comparator.comparing((Entry e) -> e.sortName)),
+		/**
+		 * Amount of wins.
+		 */
+		WINS(Comparator.comparingInt((Entry e) -> e.stats.getWins())),
+		/**
+		 * Share of games won.
+		 */
+		WIN_RATE(Comparator.comparingDouble((Entry e) -> e.stats.getWinRate())),
+		/**
+		 * Amount of games played.
+		 */
+		GAMES_PLAYED(Comparator.comparingInt((Entry e) -> e.stats.getTotalPlayed()));
+
+		private final Comparator<Entry> order;
+
+		/**
+		 * @param order Order of the entries, ties are broken by profile id so no two entries compare equal
+		 */
+		SortKey(Comparator<Entry> order) {
+			this.order = order.thenComparingInt(e -> e.profile.getID());
+		}
+	}
+
+	/**
+	 * A profile together with the values it is sorted by, as they were when it was added to the trees.
+	 */
+	private static final class Entry {
+		private final Profile profile;
+		private final String sortName;
+		private final ProfileStats stats;
+
+		/**
+		 * @param profile Profile to index
+		 */
+		private Entry(Profile profile) {
+			this.profile = profile;
+			this.sortName = profile.getName().toLowerCase();
+			this.stats = profile.getStats();
+		}
+	}
+
+	private final EnumMap<SortKey, OrderStatisticTree<Entry>> trees = new EnumMap<>(SortKey.class);
+	private HashMap<Integer, Entry> entries; // Current entry of every profile, null until the first tree is built
+	private volatile boolean built;
+
+	/**
+	 * Get one page of profiles in the given order. Builds the order's tree if this is the first time it is used.
+	 * @param key Order to sort in
+	 * @param ascending True for smallest first, false for largest first
+	 * @param from Position of the first profile to get
+	 * @param amount Maximum amount of profiles to get
+	 * @param profiles Every profile, only read if a tree has to be built
+	 * @return Up to amount profiles starting at position from
+	 */
+	public synchronized List<Profile> getPage(SortKey key, boolean ascending, int from, int amount,
+			List<Profile> profiles) {
+		OrderStatisticTree<Entry> tree = getTree(key, profiles);
+		int size = tree.size();
+		List<Entry> page;
+		if (ascending) {
+			page = tree.getRange(from, amount);
+		} else {
+			// Largest first: position from counted from the end of the tree
+			int end = Math.max(0, size - from);
+			int start = Math.max(0, end - amount);
+			page = tree.getRange(start, end - start);
+			Collections.reverse(page);
+		}
+
+		ArrayList<Profile> result = new ArrayList<>(page.size());
+		for (Entry entry : page) {
+			result.add(entry.profile);
+		}
+		return result;
+	}
+
+	/**
+	 * Add a profile, or re-sort it after its stats changed. Cheap when no order has been asked for yet.
+	 * @param profile Profile to add or update
+	 */
+	public void update(Profile profile) {
+		if (built) {
+			synchronized (this) {
+				Entry old = entries.get(profile.getID());
+				if (old != null) {
+					trees.values().forEach(tree -> tree.remove(old));
+				}
+				Entry entry = new Entry(profile);
+				entries.put(profile.getID(), entry);
+				trees.values().forEach(tree -> tree.add(entry));
+			}
+		}
+	}
+
+	/**
+	 * @param profile Profile to remove from every order
+	 */
+	public void remove(Profile profile) {
+		if (built) {
+			synchronized (this) {
+				Entry old = entries.remove(profile.getID());
+				if (old != null) {
+					trees.values().forEach(tree -> tree.remove(old));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param key Order wanted
+	 * @param profiles Every profile, used to build the tree if it does not exist yet
+	 * @return Tree holding every profile in that order
+	 */
+	private OrderStatisticTree<Entry> getTree(SortKey key, List<Profile> profiles) {
+		if (entries == null) {
+			// Set before the stats are copied: a profile changing meanwhile then waits for this to finish and
+			// replaces its entry, instead of being skipped and left with the old stats
+			built = true;
+			entries = new HashMap<>();
+			for (Profile profile : profiles) {
+				entries.put(profile.getID(), new Entry(profile));
+			}
+		}
+
+		OrderStatisticTree<Entry> tree = trees.get(key);
+		if (tree == null) {
+			long start = System.currentTimeMillis();
+			Entry[] sorted = entries.values().toArray(new Entry[0]);
+			Arrays.parallelSort(sorted, key.order);
+			tree = new OrderStatisticTree<>(key.order);
+			tree.setAll(Arrays.asList(sorted));
+			trees.put(key, tree);
+			System.out.println("Indexed " + sorted.length + " profiles by " + key + " in "
+					+ (System.currentTimeMillis() - start) + "ms");
+		}
+		return tree;
+	}
+}
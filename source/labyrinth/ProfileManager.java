@@ -2,58 +2,104 @@ package source.labyrinth;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * ProfileManager deals with profiles: retrieving them from file, saving them, adding / deleting them.
  * It is entirely static so there is no need to create an instance of it.
+ * Profiles are indexed by id and by name, and stored in a ProfileStore where every profile has a fixed size
+ * record. Changing a profile only rewrites its own record, and markChanged schedules a single sync to disk a
+ * few seconds later, so any amount of changes in that time cost one sync. Pending changes are also synced
+ * when the game shuts down.
+ * Games may end on several threads at once. Lookups and stat updates never take a global lock: the indexes are
+ * concurrent maps, the profile list is copy-on-write (so readers always iterate a consistent snapshot) and
+ * records are written under one of a fixed set of locks picked by profile id. Only creating and deleting
+ * profiles is serialized.
+ * Tables page through the profiles instead of holding all of them: getProfilePage reads one page of the profiles
+ * sorted by name, wins, win rate or games played from a ProfileIndex, or one page in creation order. Pickers
+ * search names by prefix through a sorted map of lower case names, so a search only visits its matches.
  * @author Fillip Serov
  */
 public final class ProfileManager {
+	// Old text format, only read once to import profiles into the store
 	private static final File PROFILESFILE = new File("source/resources/profiles/profiles.txt");
+	private static final File RECORDFILE = new File("source/resources/profiles/profiles.dat");
+	private static final File NAMEFILE = new File("source/resources/profiles/profiles.names");
+	private static final long WRITE_DELAY_SECONDS = 5;
+	private static final int LOCK_STRIPES = 64;
+	private static final Object[] RECORD_LOCKS = new Object[LOCK_STRIPES];
+	private static final AtomicBoolean WRITE_SCHEDULED = new AtomicBoolean(false);
+	private static final ProfileIndex SORTED = new ProfileIndex();
+	private static final char PREFIX_SEPARATOR = '\u0000';
 	private static int nextID; // A new profile will be given this id, which is then incremented
-	private static ArrayList<Profile> profiles;
+	private static volatile CopyOnWriteArrayList<Profile> profiles;
+	private static ConcurrentHashMap<Integer, Profile> profilesById;
+	private static ConcurrentHashMap<String, Profile> profilesByName;
+	// Lower case name, then a separator and the real name since names only differ in case may both exist
+	private static ConcurrentSkipListMap<String, Profile> profilesByPrefix;
+	private static ProfileStore store;
+	private static ScheduledExecutorService writer;
+
+	static {
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			RECORD_LOCKS[i] = new Object();
+		}
+	}
 
 	/**
 	 * performSetup will read the profile data from file. Since the entire class is static, this only has to
 	 * be done once when the game is launched.
 	 */
-	public static void performSetup() {
+	public static synchronized void performSetup() {
 		// If this is the first time we call this
 		if (profiles == null) {
-			profiles = new ArrayList<>();
+			ArrayList<Profile> loaded = new ArrayList<>();
+			profilesById = new ConcurrentHashMap<>();
+			profilesByName = new ConcurrentHashMap<>();
+			profilesByPrefix = new ConcurrentSkipListMap<>();
 
-			Scanner in;
 			try {
-				in = new Scanner(PROFILESFILE);
-				buildProfiles(in);
-			} catch (FileNotFoundException e) {
-				System.out.println("Profiles file wasn't found, making one now.");
-				// e.printStackTrace();
-				makeProfileFile();
-				performSetup();
+				boolean firstRun = !RECORDFILE.exists();
+				RECORDFILE.getParentFile().mkdirs();
+				store = new ProfileStore(RECORDFILE, NAMEFILE);
+				if (firstRun) {
+					importTextProfiles(loaded);
+				} else {
+					loadFromStore(loaded);
+				}
+				// Only publish the list once it is complete
+				profiles = new CopyOnWriteArrayList<>(loaded);
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.out.println("Could not open the profile store, exiting...");
+				System.exit(0);
 			}
 		}
 	}
 
 	/**
-	 * Writes the profiles to a file and saves them.
+	 * Writes the stats of every profile to the profile store and syncs it to disk.
 	 */
-	public static void writeProfilesToFile() {
+	public static synchronized void writeProfilesToFile() {
+		WRITE_SCHEDULED.set(false);
 		try {
-			BufferedWriter bw = new BufferedWriter(new FileWriter(PROFILESFILE));
-			bw.write(Integer.toString(nextID));
-			bw.newLine();
-
 			for (Profile p : profiles) {
-				bw.write(p.getName());
-				bw.newLine();
-
-				String stats = p.getID() + "," + p.getTotalPlayed() + "," + p.getWins() + "," + p.getLosses();
-				bw.write(stats);
-				bw.newLine();
+				writeRecord(p);
 			}
-			bw.close();
+			store.setNextId(nextID);
+			store.force();
 
 			System.out.println("Saved current profiles to file.");
 		} catch (IOException e) {
@@ -62,22 +108,66 @@ public final class ProfileManager {
 		}
 	}
 
+	/**
+	 * Tell the ProfileManager that a profile's stats changed (e.g. a game ended). Only that profile's record
+	 * is rewritten, and the store is synced to disk a few seconds later together with any other changes.
+	 * @param changed Profile whose stats changed
+	 */
+	public static void markChanged(Profile changed) {
+		writeRecord(changed);
+		SORTED.update(changed);
+		markChanged();
+	}
+
+	/**
+	 * Schedule the profile store to be synced to disk a few seconds from now, unless that is already scheduled.
+	 */
+	public static void markChanged() {
+		if (WRITE_SCHEDULED.compareAndSet(false, true)) {
+			getWriter().schedule(ProfileManager::flush, WRITE_DELAY_SECONDS, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Sync any changes that are still waiting to be written. Called when the game closes.
+	 */
+	public static void flush() {
+		if (WRITE_SCHEDULED.getAndSet(false)) {
+			try {
+				store.force();
+			} catch (IOException e) {
+				System.out.println("Could not write profiles to file.");
+				e.printStackTrace();
+			}
+		}
+	}
+
 	/**
 	 * Create a new profile which will permanently saved. The profile name must be unique.
 	 * @param newName Name for the new profile (must be unique).
 	 * @return true if the given name is unique and the profile was created, false otherwise.
 	 */
-	public static Boolean createNewProfile(String newName) {
+	public static synchronized Boolean createNewProfile(String newName) {
 		if (getProfileByName(newName) != null) {
 			return false;
 		}
 
 		// Add the new profile to the beginning of the ArrayList ONLY because it will then appear at the
 		// top of the table in the profile menu when a user creates a new one.
-		profiles.add(0, new Profile(newName, nextID));
+		Profile newProfile = new Profile(newName, nextID);
+		try {
+			store.addProfile(newProfile);
+		} catch (IOException e) {
+			System.out.println("Could not add profile to file.");
+			e.printStackTrace();
+			return false;
+		}
+		profiles.add(0, newProfile);
+		addToIndexes(newProfile);
 		nextID++;
+		store.setNextId(nextID);
 
-		writeProfilesToFile();
+		markChanged();
 		return true;
 	}
 
@@ -85,18 +175,84 @@ public final class ProfileManager {
 	 * Deletes a profile via reference if it exists.
 	 * @param toDelete Profile to delete.
 	 */
-	public static void deleteProfile(Profile toDelete) {
+	public static synchronized void deleteProfile(Profile toDelete) {
 		System.out.println("Deleting profile " + toDelete.getName());
 		profiles.remove(toDelete);
-		writeProfilesToFile();
+		profilesById.remove(toDelete.getID());
+		profilesByName.remove(toDelete.getName());
+		profilesByPrefix.remove(prefixKey(toDelete.getName()));
+		SORTED.remove(toDelete);
+		store.deleteProfile(toDelete.getID());
+		markChanged();
 	}
 
 	/**
-	 * Get all profiles as an ArrayList.
-	 * @return ArrayList of all profiles.
+	 * Get all profiles. The list is a snapshot: it will not change while being read, even if profiles are
+	 * created or deleted meanwhile. Copying it only copies the copy-on-write array once.
+	 * @return List of all profiles.
 	 */
-	public static ArrayList<Profile> getProfiles() {
-		return profiles;
+	public static List<Profile> getProfiles() {
+		return new ArrayList<>(profiles);
+	}
+
+	/**
+	 * @return Amount of profiles
+	 */
+	public static int getProfileCount() {
+		return profiles.size();
+	}
+
+	/**
+	 * Get one page of profiles in creation order, newest first, like getProfiles. Costs O(amount).
+	 * Synchronized so no profile can be created or deleted while the page is read.
+	 * @param from Position of the first profile to get
+	 * @param amount Maximum amount of profiles to get
+	 * @return Up to amount profiles starting at position from
+	 */
+	public static synchronized List<Profile> getProfilePage(int from, int amount) {
+		ArrayList<Profile> page = new ArrayList<>();
+		for (int i = Math.max(0, from); i < Math.min(profiles.size(), from + amount); i++) {
+			page.add(profiles.get(i));
+		}
+		return page;
+	}
+
+	/**
+	 * Get one page of profiles in sorted order. Costs O(log n + amount), except the first time an order is
+	 * used, when it has to be built.
+	 * @param key Order to sort the profiles in
+	 * @param ascending True for smallest first, false for largest first
+	 * @param from Position of the first profile to get
+	 * @param amount Maximum amount of profiles to get
+	 * @return Up to amount profiles starting at position from
+	 */
+	public static List<Profile> getProfilePage(ProfileIndex.SortKey key, boolean ascending, int from, int amount) {
+		return SORTED.getPage(key, ascending, from, amount, profiles);
+	}
+
+	/**
+	 * Find profiles whose name starts with the given text, ignoring case, in alphabetical order. Only the
+	 * matches (and the excluded profiles among them) are visited, so this stays fast however many profiles
+	 * there are.
+	 * @param prefix Start of the name, any case. Empty matches every profile
+	 * @param limit Maximum amount of names to return
+	 * @param excluded Names to leave out, e.g. profiles already chosen for a game
+	 * @return Up to limit names of matching profiles
+	 */
+	public static List<String> searchProfiles(String prefix, int limit, Set<String> excluded) {
+		String lowerPrefix = prefix.toLowerCase();
+		ArrayList<String> matches = new ArrayList<>();
+		Iterator<Map.Entry<String, Profile>> candidates = profilesByPrefix.tailMap(lowerPrefix).entrySet().iterator();
+		boolean searching = true;
+		while (searching && matches.size() < limit && candidates.hasNext()) {
+			Map.Entry<String, Profile> candidate = candidates.next();
+			if (!candidate.getKey().startsWith(lowerPrefix)) {
+				searching = false; // Past the last key with this prefix
+			} else if (!excluded.contains(candidate.getValue().getName())) {
+				matches.add(candidate.getValue().getName());
+			}
+		}
+		return matches;
 	}
 
 	/**
@@ -105,12 +261,7 @@ public final class ProfileManager {
 	 * @return Relevant Profile or null
 	 */
 	public static Profile getProfileByName(String name) {
-		for (Profile p : profiles) {
-			if (p.getName().equals(name)) {
-				return p;
-			}
-		}
-		return null;
+		return profilesByName.get(name);
 	}
 
 	/**
@@ -119,32 +270,51 @@ public final class ProfileManager {
 	 * @return Relevant Profile or null
 	 */
 	public static Profile getProfileById(int id) {
-		for (Profile p : profiles) {
-			if (p.getID() == id) {
-				return p;
-			}
+		return profilesById.get(id);
+	}
+
+	/**
+	 * Load every profile from the profile store. Newest profiles go first, like in the old text file.
+	 * @param loaded List to add the profiles to
+	 * @throws IOException If the store cannot be read
+	 */
+	private static void loadFromStore(List<Profile> loaded) throws IOException {
+		ArrayList<Profile> stored = store.readProfiles();
+		Collections.reverse(stored);
+		for (Profile p : stored) {
+			loaded.add(p);
+			addToIndexes(p);
 		}
-		return null;
+		nextID = store.getNextId();
+		System.out.println("Loaded " + loaded.size() + " profiles. nextID is " + nextID);
 	}
 
 	/**
-	 * Will create a profile file to be used for saving profiles.
+	 * First time setup of the profile store: copy every profile from the old text file (if there is one)
+	 * into it.
+	 * @param loaded List to add the profiles to
+	 * @throws IOException If the store cannot be written to
 	 */
-	private static void makeProfileFile() {
-		try {
-			PROFILESFILE.createNewFile();
-		} catch (IOException e) {
-			e.printStackTrace();
-			System.out.println("Could not create new profiles file, exiting...");
-			System.exit(0);
+	private static void importTextProfiles(List<Profile> loaded) throws IOException {
+		if (PROFILESFILE.exists()) {
+			buildProfiles(new Scanner(PROFILESFILE), loaded);
+			for (Profile p : loaded) {
+				store.addProfile(p);
+			}
+			System.out.println("Imported " + loaded.size() + " profiles from " + PROFILESFILE.getName());
+		} else {
+			nextID = 0;
 		}
+		store.setNextId(nextID);
+		store.force();
 	}
 
 	/**
 	 * Sets up the profiles
 	 * @param mainIn main method scanner
+	 * @param loaded List to add the profiles to
 	 */
-	private static void buildProfiles(Scanner mainIn) {
+	private static void buildProfiles(Scanner mainIn, List<Profile> loaded) {
 		// Prevent crash on empty profile files
 		if (mainIn.hasNextLine()) {
 			nextID = mainIn.nextInt();
@@ -163,9 +333,56 @@ public final class ProfileManager {
 			int totalWins = lineIn.nextInt();
 			int totalLosses = lineIn.nextInt();
 
-			profiles.add(new Profile(profileName, id, totalPlayed, totalWins, totalLosses));
+			Profile profile = new Profile(profileName, id, totalPlayed, totalWins, totalLosses);
+			loaded.add(profile);
+			addToIndexes(profile);
 		}
 
-		System.out.println("Loaded " + profiles.size() + " profiles. nextID is " + nextID);
+		System.out.println("Loaded " + loaded.size() + " profiles. nextID is " + nextID);
+	}
+
+	/**
+	 * @param profile Profile to make findable by id and name
+	 */
+	private static void addToIndexes(Profile profile) {
+		profilesById.put(profile.getID(), profile);
+		profilesByName.put(profile.getName(), profile);
+		profilesByPrefix.put(prefixKey(profile.getName()), profile);
+		SORTED.update(profile);
+	}
+
+	/**
+	 * @param name Profile name
+	 * @return Key of the name in the prefix index
+	 */
+	private static String prefixKey(String name) {
+		return name.toLowerCase() + PREFIX_SEPARATOR + name;
+	}
+
+	/**
+	 * Write a profile's current stats to its record. Two threads never write the same record at once, and
+	 * since the stats are read while holding the lock the last write always holds the newest stats.
+	 * @param profile Profile to write
+	 */
+	private static void writeRecord(Profile profile) {
+		synchronized (RECORD_LOCKS[Math.floorMod(profile.getID(), LOCK_STRIPES)]) {
+			store.writeStats(profile);
+		}
+	}
+
+	/**
+	 * @return Background thread used for delayed writes, created on first use. Also registers a shutdown
+	 * hook so that pending changes are not lost.
+	 */
+	private static synchronized ScheduledExecutorService getWriter() {
+		if (writer == null) {
+			writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "profile-writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+			Runtime.getRuntime().addShutdownHook(new Thread(ProfileManager::flush, "profile-flush"));
+		}
+		return writer;
 	}
 }
@@ -0,0 +1,64 @@
+package source.labyrinth;
+
+import java.io.Serializable;
+
+/**
+ * ProfileStats is an immutable copy of a profile's counters taken at one moment. Profile swaps in a new
+ * ProfileStats for every change, so whoever holds one always sees counters that belong together.
+ * @author Fillip Serov
+ */
+public final class ProfileStats implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private final int totalPlayed;
+	private final int wins;
+	private final int losses;
+
+	/**
+	 * @param totalPlayed Total games played
+	 * @param wins Total wins
+	 * @param losses Total losses
+	 */
+	public ProfileStats(int totalPlayed, int wins, int losses) {
+		this.totalPlayed = totalPlayed;
+		this.wins = wins;
+		this.losses = losses;
+	}
+
+	/**
+	 * @return the number of total games played
+	 */
+	public int getTotalPlayed() {
+		return totalPlayed;
+	}
+
+	/**
+	 * @return the number of win games
+	 */
+	public int getWins() {
+		return wins;
+	}
+
+	/**
+	 * @return the number of losses
+	 */
+	public int getLosses() {
+		return losses;
+	}
+
+	/**
+	 * @return Share of games played that were won, between 0 and 1. 0 if no games were played
+	 */
+	public double getWinRate() {
+		return totalPlayed == 0 ? 0 : (double) wins / totalPlayed;
+	}
+
+	/**
+	 * @param playedAdded Games played to add
+	 * @param winsAdded Wins to add
+	 * @param lossesAdded Losses to add
+	 * @return New ProfileStats with the amounts added
+	 */
+	public ProfileStats plus(int playedAdded, int winsAdded, int lossesAdded) {
+		return new ProfileStats(totalPlayed + playedAdded, wins + winsAdded, losses + lossesAdded);
+	}
+}
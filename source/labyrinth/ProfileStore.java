@@ -0,0 +1,202 @@
+package source.labyrinth;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * ProfileStore is the binary file behind ProfileManager. Every profile id has a fixed size record holding its
+ * stats, at position HEADER_SIZE + id * RECORD_SIZE, so a profile's stats can be changed in place without
+ * touching anything else. Names vary in length, so they are kept in a separate file (the name heap) and the
+ * record only stores where its name starts and how long it is.
+ * The record file is memory-mapped: stat updates are plain writes to memory and force() pushes them to disk.
+ * writeStats may be called from several threads as long as the same profile is not written by two at once,
+ * everything else should only be called by one thread at a time.
+ * @author Fillip Serov
+ */
+public class ProfileStore {
+	private static final int MAGIC = 0x4C425052; // "LBPR"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_SIZE = 32;
+	private static final int INITIAL_RECORDS = 1024;
+
+	// Header layout
+	private static final int MAGIC_OFFSET = 0;
+	private static final int VERSION_OFFSET = 4;
+	private static final int NEXT_ID_OFFSET = 8;
+
+	// Record layout
+	private static final int FLAGS_OFFSET = 0;
+	private static final int PLAYED_OFFSET = 4;
+	private static final int WINS_OFFSET = 8;
+	private static final int LOSSES_OFFSET = 12;
+	private static final int NAME_START_OFFSET = 16;
+	private static final int NAME_LENGTH_OFFSET = 24;
+	private static final int IN_USE = 1;
+
+	private final RandomAccessFile recordFile;
+	private final RandomAccessFile nameFile;
+	// Replaced when the file grows. Both mappings share the same file pages, so writes through an old one
+	// made by another thread are not lost.
+	private volatile MappedByteBuffer records;
+
+	/**
+	 * Open (or create) a profile store.
+	 * @param recordPath File holding the header and stat records
+	 * @param namePath File holding the profile names
+	 * @throws IOException If either file cannot be opened or the record file is not a profile store
+	 */
+	public ProfileStore(File recordPath, File namePath) throws IOException {
+		boolean isNew = !recordPath.exists() || recordPath.length() == 0;
+		this.recordFile = new RandomAccessFile(recordPath, "rw");
+		this.nameFile = new RandomAccessFile(namePath, "rw");
+
+		if (isNew) {
+			map(HEADER_SIZE + (long) INITIAL_RECORDS * RECORD_SIZE);
+			records.putInt(MAGIC_OFFSET, MAGIC);
+			records.putInt(VERSION_OFFSET, VERSION);
+			records.putInt(NEXT_ID_OFFSET, 0);
+		} else {
+			map(recordFile.length());
+			if (records.getInt(MAGIC_OFFSET) != MAGIC || records.getInt(VERSION_OFFSET) != VERSION) {
+				close();
+				throw new IOException(recordPath.getName() + " is not a profile store.");
+			}
+		}
+	}
+
+	/**
+	 * Read every profile in the store. Only the records are read, nothing is parsed.
+	 * @return Every profile that has not been deleted, in id order
+	 * @throws IOException If the name heap cannot be read
+	 */
+	public ArrayList<Profile> readProfiles() throws IOException {
+		ArrayList<Profile> profiles = new ArrayList<>();
+		ByteBuffer names = nameFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, nameFile.length());
+		for (int id = 0; id < getNextId(); id++) {
+			int offset = recordOffset(id);
+			if ((records.getInt(offset + FLAGS_OFFSET) & IN_USE) != 0) {
+				byte[] name = new byte[records.getInt(offset + NAME_LENGTH_OFFSET)];
+				names.position((int) records.getLong(offset + NAME_START_OFFSET));
+				names.get(name);
+				profiles.add(new Profile(new String(name, StandardCharsets.UTF_8), id,
+						records.getInt(offset + PLAYED_OFFSET), records.getInt(offset + WINS_OFFSET),
+						records.getInt(offset + LOSSES_OFFSET)));
+			}
+		}
+		return profiles;
+	}
+
+	/**
+	 * @return The id the next new profile should get
+	 */
+	public int getNextId() {
+		return records.getInt(NEXT_ID_OFFSET);
+	}
+
+	/**
+	 * @param nextId The id the next new profile should get
+	 */
+	public void setNextId(int nextId) {
+		records.putInt(NEXT_ID_OFFSET, nextId);
+	}
+
+	/**
+	 * Add a profile: its name goes to the end of the name heap and its record is written at its id's slot.
+	 * @param profile Profile to add
+	 * @throws IOException If the files cannot grow
+	 */
+	public void addProfile(Profile profile) throws IOException {
+		byte[] name = profile.getName().getBytes(StandardCharsets.UTF_8);
+		long nameStart = nameFile.length();
+		nameFile.seek(nameStart);
+		nameFile.write(name);
+
+		ensureCapacity(profile.getID());
+		int offset = recordOffset(profile.getID());
+		records.putLong(offset + NAME_START_OFFSET, nameStart);
+		records.putInt(offset + NAME_LENGTH_OFFSET, name.length);
+		records.putInt(offset + FLAGS_OFFSET, IN_USE);
+		writeStats(profile);
+	}
+
+	/**
+	 * Write a profile's stats over its record. Nothing else in the file changes.
+	 * @param profile Profile whose stats should be stored
+	 */
+	public void writeStats(Profile profile) {
+		int offset = recordOffset(profile.getID());
+		ProfileStats stats = profile.getStats();
+		MappedByteBuffer current = records;
+		current.putInt(offset + PLAYED_OFFSET, stats.getTotalPlayed());
+		current.putInt(offset + WINS_OFFSET, stats.getWins());
+		current.putInt(offset + LOSSES_OFFSET, stats.getLosses());
+	}
+
+	/**
+	 * Mark a profile's record as unused. Its name stays in the heap but is never read again.
+	 * @param id Id of the profile to delete
+	 */
+	public void deleteProfile(int id) {
+		records.putInt(recordOffset(id) + FLAGS_OFFSET, 0);
+	}
+
+	/**
+	 * Make sure every change made so far is on disk.
+	 * @throws IOException If the name heap cannot be synced
+	 */
+	public void force() throws IOException {
+		records.force();
+		nameFile.getChannel().force(false);
+	}
+
+	/**
+	 * Write everything to disk and close both files.
+	 * @throws IOException If the files cannot be closed
+	 */
+	public void close() throws IOException {
+		records.force();
+		recordFile.close();
+		nameFile.close();
+	}
+
+	/**
+	 * @param id Profile id
+	 * @return Position of that id's record in the record file
+	 */
+	private int recordOffset(int id) {
+		return HEADER_SIZE + id * RECORD_SIZE;
+	}
+
+	/**
+	 * Grow the record file (doubling it) until it has a slot for the given id.
+	 * @param id Profile id that needs a slot
+	 * @throws IOException If the file cannot grow
+	 */
+	private void ensureCapacity(int id) throws IOException {
+		long needed = recordOffset(id) + (long) RECORD_SIZE;
+		long size = records.capacity();
+		if (needed > size) {
+			while (size < needed) {
+				size = HEADER_SIZE + (size - HEADER_SIZE) * 2;
+			}
+			records.force();
+			map(size);
+		}
+	}
+
+	/**
+	 * Map the record file, growing it to the given size if it is smaller.
+	 * @param size Size to map
+	 * @throws IOException If the file cannot be mapped
+	 */
+	private void map(long size) throws IOException {
+		records = recordFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+}
@@ -0,0 +1,101 @@
+package source.labyrinth;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ProfileStressCheck shows that no profile update is lost when many games end at the same time. Threads hammer
+ * a few shared profiles with addWin, addLoss, addTotalPlayed and recordGame, all starting together, and the
+ * totals are then checked against what every thread did. The profiles are not registered with ProfileManager,
+ * so nothing is written to disk.
+ * @author Fillip Serov
+ */
+public final class ProfileStressCheck {
+	private static final int DEFAULT_THREADS = 16;
+	private static final int DEFAULT_UPDATES_PER_THREAD = 200000;
+	private static final int PROFILES = 4; // Few, so every profile is heavily contended
+
+	/**
+	 * Run the check and fail if an update was lost.
+	 * @param args Optional amount of threads and amount of updates per thread
+	 * @throws InterruptedException If interrupted while waiting for the threads
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+		int updatesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_UPDATES_PER_THREAD;
+
+		Profile[] profiles = new Profile[PROFILES];
+		for (int i = 0; i < PROFILES; i++) {
+			profiles[i] = new Profile("stress" + i, i);
+		}
+		// What every thread did to every profile: games played, wins, losses
+		long[][][] expected = new long[threadCount][PROFILES][3];
+		CountDownLatch startSignal = new CountDownLatch(1);
+		ArrayList<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < threadCount; t++) {
+			long[][] done = expected[t];
+			Thread thread = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				try {
+					startSignal.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				for (int i = 0; i < updatesPerThread; i++) {
+					int p = random.nextInt(PROFILES);
+					switch (random.nextInt(4)) {
+						case 0:
+							profiles[p].addTotalPlayed();
+							done[p][0]++;
+							break;
+						case 1:
+							profiles[p].addWin();
+							done[p][1]++;
+							break;
+						case 2:
+							profiles[p].addLoss();
+							done[p][2]++;
+							break;
+						default:
+							boolean won = random.nextBoolean();
+							profiles[p].recordGame(won);
+							done[p][0]++;
+							done[p][won ? 1 : 2]++;
+					}
+				}
+			}, "stress-" + t);
+			threads.add(thread);
+			thread.start();
+		}
+
+		long start = System.currentTimeMillis();
+		startSignal.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long took = System.currentTimeMillis() - start;
+
+		boolean lost = false;
+		for (int p = 0; p < PROFILES; p++) {
+			long played = 0;
+			long wins = 0;
+			long losses = 0;
+			for (int t = 0; t < threadCount; t++) {
+				played += expected[t][p][0];
+				wins += expected[t][p][1];
+				losses += expected[t][p][2];
+			}
+			ProfileStats stats = profiles[p].getStats();
+			System.out.println(profiles[p].getName() + ": played " + stats.getTotalPlayed() + "/" + played
+					+ ", wins " + stats.getWins() + "/" + wins + ", losses " + stats.getLosses() + "/" + losses);
+			lost = lost || stats.getTotalPlayed() != played || stats.getWins() != wins || stats.getLosses() != losses;
+		}
+		System.out.println(threadCount + " threads made " + (long) threadCount * updatesPerThread + " updates in "
+				+ took + "ms");
+		if (lost) {
+			throw new IllegalStateException("Profile updates were lost");
+		}
+		System.out.println("No updates were lost.");
+	}
+}
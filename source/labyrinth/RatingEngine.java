@@ -0,0 +1,371 @@
+package source.labyrinth;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RatingEngine gives every profile an Elo rating, both over all games and for every level separately. A game
+ * counts as the winner beating each other player. Ratings are kept in an OrderStatisticTree, so the top
+ * profiles, a profile's rank and its percentile are all O(log n).
+ * Every result is also appended to a history file from which all ratings are rebuilt at startup. Elo depends
+ * on the order of games, so a single table has to be replayed in order, but the global table and each level's
+ * table are independent and are rebuilt in parallel.
+ * @author Fillip Serov
+ */
+public final class RatingEngine {
+	public static final double DEFAULT_RATING = 1500;
+
+	private static final File HISTORY_FILE = new File("source/resources/leaderboards/rating_history.log");
+	private static final double K_FACTOR = 32;
+	private static final double ELO_SCALE = 400;
+	private static final double ELO_BASE = 10;
+	private static final int NO_WINNER = -1;
+	private static final double PERCENT = 100;
+
+	private static RatingTable globalRatings;
+	private static Map<String, RatingTable> levelRatings;
+
+	/**
+	 * The rating of one profile, as stored in the rating tree. Immutable, a changed rating is a new entry.
+	 */
+	public static final class RatingEntry {
+		private final int profileId;
+		private final double rating;
+
+		/**
+		 * @param profileId Profile rated
+		 * @param rating Rating of the profile
+		 */
+		private RatingEntry(int profileId, double rating) {
+			this.profileId = profileId;
+			this.rating = rating;
+		}
+
+		/**
+		 * @return Profile rated
+		 */
+		public int getProfileId() {
+			return profileId;
+		}
+
+		/**
+		 * @return Rating of the profile
+		 */
+		public double getRating() {
+			return rating;
+		}
+	}
+
+	/**
+	 * Ratings of every profile in one context (all games, or a single level).
+	 */
+	private static final class RatingTable {
+		// Highest rating first, ties broken by profile id so no two entries compare equal
+		private final OrderStatisticTree<RatingEntry> ranking = new OrderStatisticTree<>(
+				Comparator.comparingDouble((RatingEntry e) -> -e.rating).thenComparingInt(e -> e.profileId));
+		private final HashMap<Integer, RatingEntry> entries = new HashMap<>();
+
+		/**
+		 * @param profileId Profile to get
+		 * @return Rating of the profile, DEFAULT_RATING if it has not played yet
+		 */
+		private double getRating(int profileId) {
+			RatingEntry entry = entries.get(profileId);
+			return entry == null ? DEFAULT_RATING : entry.rating;
+		}
+
+		/**
+		 * @param profileId Profile to change
+		 * @param rating New rating
+		 */
+		private void setRating(int profileId, double rating) {
+			RatingEntry old = entries.get(profileId);
+			if (old != null) {
+				ranking.remove(old);
+			}
+			RatingEntry entry = new RatingEntry(profileId, rating);
+			entries.put(profileId, entry);
+			ranking.add(entry);
+		}
+
+		/**
+		 * Apply one game to the table: the winner beats every other player. If the winner had no profile,
+		 * every profile lost against a player of default rating.
+		 * @param profileIds Profiles that played
+		 * @param winningProfile Profile that won, or null
+		 */
+		private void apply(int[] profileIds, Integer winningProfile) {
+			// Work out every change first so the order of players does not matter
+			HashMap<Integer, Double> changes = new HashMap<>();
+			double opponents = Math.max(1, profileIds.length - (winningProfile == null ? 0 : 1));
+			double winnerRating = winningProfile == null ? DEFAULT_RATING : getRating(winningProfile);
+			for (int profileId : profileIds) {
+				if (winningProfile == null || profileId != winningProfile) {
+					double change = K_FACTOR / opponents * (1 - expectedScore(winnerRating, getRating(profileId)));
+					changes.merge(profileId, -change, Double::sum);
+					if (winningProfile != null) {
+						changes.merge(winningProfile, change, Double::sum);
+					}
+				}
+			}
+			changes.forEach((profileId, change) -> setRating(profileId, getRating(profileId) + change));
+		}
+	}
+
+	/**
+	 * Load the rating history and rebuild all ratings from it. Only needs to be done once.
+	 */
+	public static synchronized void performSetup() {
+		if (globalRatings == null) {
+			rebuild(readHistory());
+		}
+	}
+
+	/**
+	 * Update ratings with the result of a finished game and add it to the history.
+	 * @param result GameResult of the game
+	 */
+	public static synchronized void recordResult(GameResult result) {
+		performSetup();
+		applyResult(result);
+		try {
+			appendToHistory(result);
+		} catch (IOException e) {
+			System.out.println("Could not write to the rating history.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Throw away every rating and replay the given games. The global table and every level's table are
+	 * replayed at the same time.
+	 * @param history Every game played, oldest first
+	 */
+	public static synchronized void rebuild(List<GameResult> history) {
+		LinkedHashMap<String, List<GameResult>> byLevel = new LinkedHashMap<>();
+		for (GameResult result : history) {
+			byLevel.computeIfAbsent(result.getLevelName(), level -> new ArrayList<>()).add(result);
+		}
+
+		// Key null stands for the global table
+		ArrayList<String> tables = new ArrayList<>(byLevel.keySet());
+		tables.add(null);
+		ConcurrentHashMap<String, RatingTable> rebuilt = new ConcurrentHashMap<>();
+		RatingTable[] global = new RatingTable[1];
+		tables.parallelStream().forEach(level -> {
+			RatingTable table = replay(level == null ? history : byLevel.get(level));
+			if (level == null) {
+				global[0] = table;
+			} else {
+				rebuilt.put(level, table);
+			}
+		});
+
+		globalRatings = global[0];
+		levelRatings = new HashMap<>(rebuilt);
+		System.out.println("Rebuilt ratings from " + history.size() + " games on " + byLevel.size() + " levels.");
+	}
+
+	/**
+	 * @param profileId Profile to get
+	 * @return Rating over all games
+	 */
+	public static synchronized double getRating(int profileId) {
+		performSetup();
+		return globalRatings.getRating(profileId);
+	}
+
+	/**
+	 * @param levelName Level to get the rating on
+	 * @param profileId Profile to get
+	 * @return Rating on that level
+	 */
+	public static synchronized double getRating(String levelName, int profileId) {
+		performSetup();
+		RatingTable table = levelRatings.get(levelName);
+		return table == null ? DEFAULT_RATING : table.getRating(profileId);
+	}
+
+	/**
+	 * @param amount Amount of profiles to get
+	 * @return Highest rated profiles over all games, best first
+	 */
+	public static synchronized List<RatingEntry> getTopRated(int amount) {
+		performSetup();
+		return globalRatings.ranking.getRange(0, amount);
+	}
+
+	/**
+	 * @param levelName Level to get the best profiles of
+	 * @param amount Amount of profiles to get
+	 * @return Highest rated profiles on that level, best first
+	 */
+	public static synchronized List<RatingEntry> getTopRated(String levelName, int amount) {
+		performSetup();
+		RatingTable table = levelRatings.get(levelName);
+		return table == null ? new ArrayList<>() : table.ranking.getRange(0, amount);
+	}
+
+	/**
+	 * @param profileId Profile to get
+	 * @return Rank over all games, 1 being the best, or 0 if the profile has not played
+	 */
+	public static synchronized int getRank(int profileId) {
+		performSetup();
+		return rankIn(globalRatings, profileId);
+	}
+
+	/**
+	 * @param levelName Level to get the rank on
+	 * @param profileId Profile to get
+	 * @return Rank on that level, 1 being the best, or 0 if the profile has not played it
+	 */
+	public static synchronized int getRank(String levelName, int profileId) {
+		performSetup();
+		RatingTable table = levelRatings.get(levelName);
+		return table == null ? 0 : rankIn(table, profileId);
+	}
+
+	/**
+	 * @param profileId Profile to get
+	 * @return Percentage of rated profiles this profile is rated above, or 0 if the profile has not played
+	 */
+	public static synchronized double getPercentile(int profileId) {
+		performSetup();
+		int rank = rankIn(globalRatings, profileId);
+		int rated = globalRatings.ranking.size();
+		return rank == 0 ? 0 : PERCENT * (rated - rank) / rated;
+	}
+
+	/**
+	 * @param table Table to look in
+	 * @param profileId Profile to look for
+	 * @return 1-based rank, or 0 if not rated
+	 */
+	private static int rankIn(RatingTable table, int profileId) {
+		RatingEntry entry = table.entries.get(profileId);
+		return entry == null ? 0 : table.ranking.rank(entry) + 1;
+	}
+
+	/**
+	 * @param ratingA Rating of player A
+	 * @param ratingB Rating of player B
+	 * @return Chance of A beating B
+	 */
+	private static double expectedScore(double ratingA, double ratingB) {
+		return 1 / (1 + Math.pow(ELO_BASE, (ratingB - ratingA) / ELO_SCALE));
+	}
+
+	/**
+	 * @param result GameResult to apply to the global table and the level's table
+	 */
+	private static void applyResult(GameResult result) {
+		globalRatings.apply(result.getProfileIds(), result.getWinningProfile());
+		levelRatings.computeIfAbsent(result.getLevelName(), level -> new RatingTable())
+				.apply(result.getProfileIds(), result.getWinningProfile());
+	}
+
+	/**
+	 * @param games Games to replay, oldest first
+	 * @return A new table holding the ratings after those games
+	 */
+	private static RatingTable replay(List<GameResult> games) {
+		RatingTable table = new RatingTable();
+		for (GameResult game : games) {
+			table.apply(game.getProfileIds(), game.getWinningProfile());
+		}
+		return table;
+	}
+
+	/**
+	 * Read the history file. A game cut short by a crash is cut off the file, so the games appended after it can
+	 * still be read.
+	 * @return Every game in the history file, oldest first
+	 */
+	private static List<GameResult> readHistory() {
+		ArrayList<GameResult> history = new ArrayList<>();
+		if (HISTORY_FILE.exists()) {
+			try {
+				long length = HISTORY_FILE.length();
+				long complete = 0; // Bytes up to the end of the last complete game
+				boolean torn = false;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(HISTORY_FILE)));
+				try {
+					while (in.available() > 0) {
+						String levelName = in.readUTF();
+						int[] profileIds = new int[in.readUnsignedByte()];
+						for (int i = 0; i < profileIds.length; i++) {
+							profileIds[i] = in.readInt();
+						}
+						int winner = in.readInt();
+						history.add(new GameResult(levelName, profileIds, winner == NO_WINNER ? null : winner));
+						complete = length - in.available();
+					}
+				} catch (EOFException e) {
+					torn = true;
+				} finally {
+					in.close();
+				}
+
+				if (torn) {
+					System.out.println("Rating history ends in a partial record, cutting it off.");
+					truncate(HISTORY_FILE, complete);
+				}
+			} catch (IOException e) {
+				System.out.println("Could not read the rating history.");
+				e.printStackTrace();
+			}
+		}
+		return history;
+	}
+
+	/**
+	 * @param file File to cut short
+	 * @param length Length to cut it to
+	 * @throws IOException If the file cannot be written to
+	 */
+	private static void truncate(File file, long length) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+		try {
+			channel.truncate(length);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @param result GameResult to add to the end of the history file
+	 * @throws IOException If the file cannot be written to
+	 */
+	private static void appendToHistory(GameResult result) throws IOException {
+		HISTORY_FILE.getParentFile().mkdirs();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(HISTORY_FILE, true)));
+		try {
+			int[] profileIds = result.getProfileIds();
+			out.writeUTF(result.getLevelName());
+			out.writeByte(profileIds.length);
+			for (int profileId : profileIds) {
+				out.writeInt(profileId);
+			}
+			out.writeInt(result.getWinningProfile() == null ? NO_WINNER : result.getWinningProfile());
+		} finally {
+			out.close();
+		}
+	}
+}
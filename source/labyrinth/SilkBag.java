@@ -1,12 +1,19 @@
 package source.labyrinth;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.Random;
 
 /**
- * SilkBag stores Tiles (FloorTiles and ActionTiles), to be retrieved randomly.
+ * SilkBag stores Tiles (FloorTiles and ActionTiles), to be retrieved randomly. A game can give the bag its own
+ * seeded Random so that the same seed always draws the same tiles.
+ * The order of the tiles in the bag does not matter, so a draw swaps the last tile into the drawn tile's place
+ * and takes the tile off the end, which costs O(1) however full the bag is. Saves still hold the bag as a
+ * LinkedList, it is only converted when the whole bag is read or replaced.
  * @author Erik Miller, Fillip Serov
  */
 public class SilkBag {
-	private static LinkedList<Tile> tiles = new LinkedList<>();
+	private static ArrayList<Tile> tiles = new ArrayList<>();
+	private static Random random = new Random();
 
 	/**
 	 * Empty the SilkBag completely. Use this when starting a new game and you need a fresh bag.
@@ -15,12 +22,29 @@ public class SilkBag {
 		tiles.clear();
 	}
 
+	/**
+	 * Empty the SilkBag and draw every tile from now on with the given Random.
+	 * @param gameRandom Random of the game, usually seeded with the game's seed
+	 */
+	public static void emptyBag(Random gameRandom) {
+		tiles.clear();
+		random = gameRandom;
+	}
+
 	/**
 	 * Gives a random Tile
-	 * @return Tile A random Tile
+	 * @return Tile A random Tile, or null if the bag is empty
 	 */
 	public static Tile getRandomTile() {
-		return tiles.remove((int)(Math.random() * (tiles.size())));
+		Tile drawn = null;
+		if (!tiles.isEmpty()) {
+			int last = tiles.size() - 1;
+			int index = random.nextInt(tiles.size());
+			drawn = tiles.get(index);
+			tiles.set(index, tiles.get(last));
+			tiles.remove(last);
+		}
+		return drawn;
 	}
 
 	/**
@@ -37,16 +61,16 @@ public class SilkBag {
 	}
 
 	/**
-	 * @return All the Tiles in the SilkBag in a linked list
+	 * @return A copy of all the Tiles in the SilkBag in a linked list, as saves hold them
 	 */
 	public static LinkedList<Tile> getEntireBag() {
-		return tiles;
+		return new LinkedList<>(tiles);
 	}
 
 	/**
-	 * @param newBag A LinkedList of Tiles to set as the new "bag"
+	 * @param newBag A LinkedList of Tiles to set as the new "bag", copied
 	 */
 	public static void setEntireBag(LinkedList<Tile> newBag) {
-		tiles = newBag;
+		tiles = new ArrayList<>(newBag);
 	}
 }
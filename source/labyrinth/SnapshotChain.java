@@ -0,0 +1,274 @@
+package source.labyrinth;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * SnapshotChain stores every save of one game in a single file. The first save (and every KEYFRAME_INTERVAL-th
+ * after it) is stored in full, every other save only stores the bytes that changed since the previous one.
+ * Since consecutive GameSnapshots line up byte for byte, the XOR of two of them is almost all zeroes: the
+ * inserted line, a few fire / ice times, the player positions and the bag counts. Those zero runs are skipped
+ * and the rest can optionally be deflated.
+ * @author Fillip Serov
+ */
+public class SnapshotChain {
+	public static final String EXTENSION = ".sav";
+
+	private static final int KEYFRAME_INTERVAL = 16;
+	private static final int KEYFRAME = 0;
+	private static final int DELTA = 1;
+	private static final int FLAG_DEFLATED = 1;
+	private static final int VARINT_BITS = 7;
+	private static final int VARINT_MORE = 0x80;
+	private static final int VARINT_MASK = 0x7F;
+
+	private final File file;
+	private final boolean compress;
+	private byte[] previous; // Latest snapshot in the chain, deltas are made against it
+	private int framesSinceKeyframe;
+	private int frameCount;
+
+	/**
+	 * Create a new, empty chain. Nothing is written until the first append.
+	 * @param file File to store the chain in
+	 * @param compress Whether frames should be deflated when that makes them smaller
+	 */
+	public SnapshotChain(File file, boolean compress) {
+		this.file = file;
+		this.compress = compress;
+	}
+
+	/**
+	 * Read an existing chain so that it can be loaded from and appended to.
+	 * @param file File holding the chain
+	 * @return SnapshotChain positioned after its latest frame
+	 * @throws IOException If the file cannot be read or is corrupt
+	 */
+	public static SnapshotChain open(File file) throws IOException {
+		SnapshotChain chain = new SnapshotChain(file, true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			int kind = in.read();
+			while (kind != -1) {
+				int flags = in.readUnsignedByte();
+				int rawLength = in.readInt();
+				byte[] payload = new byte[in.readInt()];
+				in.readFully(payload);
+				if ((flags & FLAG_DEFLATED) != 0) {
+					payload = inflate(payload, rawLength);
+				}
+
+				if (kind == KEYFRAME) {
+					chain.previous = payload;
+					chain.framesSinceKeyframe = 0;
+				} else if (chain.previous != null) {
+					chain.previous = applyDelta(chain.previous, payload);
+					chain.framesSinceKeyframe++;
+				} else {
+					throw new IOException("Save " + file.getName() + " does not start with a full snapshot.");
+				}
+				chain.frameCount++;
+				kind = in.read();
+			}
+		} catch (EOFException e) {
+			throw new IOException("Save " + file.getName() + " is truncated.", e);
+		} finally {
+			in.close();
+		}
+		return chain;
+	}
+
+	/**
+	 * Append a snapshot to the chain, either in full or as a delta against the previous one.
+	 * @param snapshot GameSnapshot to store
+	 * @return Amount of bytes added to the file
+	 * @throws IOException If the file cannot be written to
+	 */
+	public int append(GameSnapshot snapshot) throws IOException {
+		byte[] current = snapshot.encode();
+		boolean keyframe = previous == null || previous.length != current.length
+				|| framesSinceKeyframe + 1 >= KEYFRAME_INTERVAL;
+		byte[] raw = keyframe ? current : makeDelta(previous, current);
+
+		byte[] payload = raw;
+		int flags = 0;
+		if (compress) {
+			byte[] deflated = deflate(raw);
+			if (deflated.length < raw.length) {
+				payload = deflated;
+				flags = FLAG_DEFLATED;
+			}
+		}
+
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true));
+		try {
+			out.writeByte(keyframe ? KEYFRAME : DELTA);
+			out.writeByte(flags);
+			out.writeInt(raw.length);
+			out.writeInt(payload.length);
+			out.write(payload);
+		} finally {
+			out.close();
+		}
+
+		previous = current;
+		framesSinceKeyframe = keyframe ? 0 : framesSinceKeyframe + 1;
+		frameCount++;
+		return out.size();
+	}
+
+	/**
+	 * @return The newest snapshot stored in the chain, or null if the chain is empty
+	 * @throws IOException If the stored snapshot is invalid
+	 */
+	public GameSnapshot getLatest() throws IOException {
+		return previous == null ? null : GameSnapshot.decode(previous);
+	}
+
+	/**
+	 * @return Amount of saves stored in the chain
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return File the chain is stored in
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Encode the XOR of two equally long arrays as pairs of (zero run length, literal length) followed by
+	 * the literal XORed bytes.
+	 * @param from Previous snapshot
+	 * @param to New snapshot
+	 * @return Delta that turns from into to
+	 */
+	private static byte[] makeDelta(byte[] from, byte[] to) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int i = 0;
+		while (i < to.length) {
+			int zeroStart = i;
+			while (i < to.length && from[i] == to[i]) {
+				i++;
+			}
+			int literalStart = i;
+			while (i < to.length && from[i] != to[i]) {
+				i++;
+			}
+			writeVarInt(out, literalStart - zeroStart);
+			writeVarInt(out, i - literalStart);
+			for (int j = literalStart; j < i; j++) {
+				out.write(from[j] ^ to[j]);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param from Snapshot the delta was made against
+	 * @param delta Delta made by makeDelta
+	 * @return The new snapshot
+	 */
+	private static byte[] applyDelta(byte[] from, byte[] delta) {
+		byte[] result = from.clone();
+		int[] cursor = {0};
+		int i = 0;
+		while (cursor[0] < delta.length) {
+			i += readVarInt(delta, cursor);
+			int literals = readVarInt(delta, cursor);
+			for (int j = 0; j < literals; j++) {
+				result[i] ^= delta[cursor[0]];
+				i++;
+				cursor[0]++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param out Stream to write to
+	 * @param value Non-negative value, written 7 bits at a time
+	 */
+	private static void writeVarInt(ByteArrayOutputStream out, int value) {
+		int remaining = value;
+		while (remaining > VARINT_MASK) {
+			out.write((remaining & VARINT_MASK) | VARINT_MORE);
+			remaining >>>= VARINT_BITS;
+		}
+		out.write(remaining);
+	}
+
+	/**
+	 * @param data Bytes to read from
+	 * @param cursor Single element array holding the read position, moved past the value
+	 * @return Value written by writeVarInt
+	 */
+	private static int readVarInt(byte[] data, int[] cursor) {
+		int value = 0;
+		int shift = 0;
+		int current;
+		do {
+			current = data[cursor[0]] & 0xFF;
+			cursor[0]++;
+			value |= (current & VARINT_MASK) << shift;
+			shift += VARINT_BITS;
+		} while ((current & VARINT_MORE) != 0);
+		return value;
+	}
+
+	/**
+	 * @param raw Bytes to compress
+	 * @return Deflated bytes
+	 */
+	private static byte[] deflate(byte[] raw) {
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		deflater.setInput(raw);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length);
+		byte[] buffer = new byte[1024];
+		while (!deflater.finished()) {
+			out.write(buffer, 0, deflater.deflate(buffer));
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param deflated Bytes made by deflate
+	 * @param rawLength Length of the original bytes
+	 * @return Original bytes
+	 * @throws IOException If the data is corrupt
+	 */
+	private static byte[] inflate(byte[] deflated, int rawLength) throws IOException {
+		Inflater inflater = new Inflater();
+		inflater.setInput(deflated);
+		byte[] raw = new byte[rawLength];
+		try {
+			int read = 0;
+			while (read < rawLength && !inflater.finished() && !inflater.needsInput()) {
+				read += inflater.inflate(raw, read, rawLength - read);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt compressed save frame.", e);
+		} finally {
+			inflater.end();
+		}
+		return raw;
+	}
+}
@@ -0,0 +1,191 @@
+package source.labyrinth;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SpriteCache decodes every image the game draws once per size, rotation and fixed variant, and hands the same
+ * Image to every ImageView showing it. Rotated sprites are rotated once, pixel by pixel, instead of rotating every
+ * ImageView. The least recently used sprites are dropped once they take up more than MAX_BYTES, which is what
+ * happens to the old sizes after zooming in or out. Sprites for sizes that are about to be needed can be decoded
+ * in the background with prewarm.
+ * @author Fillip Serov
+ */
+public final class SpriteCache {
+	private static final long MAX_BYTES = 32L * 1024 * 1024;
+	private static final int BYTES_PER_PIXEL = 4;
+	private static final String FIXED_SUFFIX = "_fixed.png";
+
+	private static final LinkedHashMap<SpriteKey, Image> SPRITES = new LinkedHashMap<>(64, 0.75f, true);
+	private static final ExecutorService PREWARMER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "sprite-prewarmer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static long cachedBytes;
+
+	/**
+	 * What a sprite is decoded from and how.
+	 */
+	private static final class SpriteKey {
+		private final String url;
+		private final int size;
+		private final int quarterTurns;
+		private final boolean fixed;
+
+		/**
+		 * @param url Image the sprite is made from
+		 * @param size Width and height of the sprite
+		 * @param quarterTurns Clockwise quarter turns, 0 to 3
+		 * @param fixed true for the fixed variant of the image
+		 */
+		private SpriteKey(String url, int size, int quarterTurns, boolean fixed) {
+			this.url = url;
+			this.size = size;
+			this.quarterTurns = quarterTurns;
+			this.fixed = fixed;
+		}
+
+		/**
+		 * @param o Other key
+		 * @return true if both keys describe the same sprite
+		 */
+		@Override
+		public boolean equals(Object o) {
+			boolean equal = o instanceof SpriteKey;
+			if (equal) {
+				SpriteKey other = (SpriteKey) o;
+				equal = size == other.size && quarterTurns == other.quarterTurns && fixed == other.fixed
+						&& url.equals(other.url);
+			}
+			return equal;
+		}
+
+		/**
+		 * @return Hash of the key
+		 */
+		@Override
+		public int hashCode() {
+			return ((url.hashCode() * 31 + size) * 31 + quarterTurns) * 2 + (fixed ? 1 : 0);
+		}
+	}
+
+	/**
+	 * @param url Image to get
+	 * @param size Width and height to draw it at
+	 * @return The image at that size
+	 */
+	public static Image get(String url, int size) {
+		return get(url, size, 0, false);
+	}
+
+	/**
+	 * @param url Image to get. Its fixed variant has "_fixed" before ".png"
+	 * @param size Width and height to draw it at
+	 * @param quarterTurns Clockwise quarter turns, any value (e.g. an orientation, or -1 for anticlockwise)
+	 * @param fixed true for the fixed variant of the image
+	 * @return The image at that size, rotated
+	 */
+	public static Image get(String url, int size, int quarterTurns, boolean fixed) {
+		SpriteKey key = new SpriteKey(url, size, ((quarterTurns % 4) + 4) % 4, fixed);
+		Image sprite;
+		synchronized (SPRITES) {
+			sprite = SPRITES.get(key);
+		}
+		if (sprite == null) {
+			// Decoded outside the lock, so the prewarmer never keeps the JavaFX thread waiting. At worst a sprite
+			// is decoded twice.
+			if (key.quarterTurns == 0) {
+				String file = fixed ? url.substring(0, url.length() - ".png".length()) + FIXED_SUFFIX : url;
+				sprite = new Image(file, size, size, false, false);
+			} else {
+				sprite = rotate(get(url, size, 0, fixed), key.quarterTurns);
+			}
+			put(key, sprite);
+		}
+		return sprite;
+	}
+
+	/**
+	 * Decode sprites in the background, so they are ready when they are drawn.
+	 * @param warmer Gets every sprite that should be ready, run on the prewarm thread
+	 */
+	public static void prewarm(Runnable warmer) {
+		PREWARMER.execute(() -> {
+			long start = System.currentTimeMillis();
+			warmer.run();
+			System.out.println("Prewarmed sprites in " + (System.currentTimeMillis() - start) + "ms");
+		});
+	}
+
+	/**
+	 * Cache a sprite and drop the least recently used ones while over MAX_BYTES.
+	 * @param key Key of the sprite
+	 * @param sprite Decoded sprite
+	 */
+	private static void put(SpriteKey key, Image sprite) {
+		synchronized (SPRITES) {
+			Image replaced = SPRITES.put(key, sprite);
+			cachedBytes += bytesOf(sprite) - (replaced == null ? 0 : bytesOf(replaced));
+			Iterator<Map.Entry<SpriteKey, Image>> eldest = SPRITES.entrySet().iterator();
+			while (cachedBytes > MAX_BYTES && eldest.hasNext()) {
+				Map.Entry<SpriteKey, Image> entry = eldest.next();
+				if (entry.getKey() != key) {
+					cachedBytes -= bytesOf(entry.getValue());
+					eldest.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param sprite Sprite
+	 * @return Memory taken by its pixels
+	 */
+	private static long bytesOf(Image sprite) {
+		return (long) sprite.getWidth() * (long) sprite.getHeight() * BYTES_PER_PIXEL;
+	}
+
+	/**
+	 * @param image Image to rotate
+	 * @param quarterTurns Clockwise quarter turns, 1 to 3
+	 * @return Rotated copy of the image, or the image itself if it has no pixels to read (e.g. it failed to load)
+	 */
+	private static Image rotate(Image image, int quarterTurns) {
+		PixelReader reader = image.getPixelReader();
+		Image rotated = image;
+		if (reader != null) {
+			int width = (int) image.getWidth();
+			int height = (int) image.getHeight();
+			boolean sideways = quarterTurns % 2 == 1;
+			WritableImage result = new WritableImage(sideways ? height : width, sideways ? width : height);
+			PixelWriter writer = result.getPixelWriter();
+			for (int x = 0; x < width; x++) {
+				for (int y = 0; y < height; y++) {
+					int argb = reader.getArgb(x, y);
+					switch (quarterTurns) {
+						case 1:
+							writer.setArgb(height - 1 - y, x, argb);
+							break;
+						case 2:
+							writer.setArgb(width - 1 - x, height - 1 - y, argb);
+							break;
+						default:
+							writer.setArgb(y, width - 1 - x, argb);
+							break;
+					}
+				}
+			}
+			rotated = result;
+		}
+		return rotated;
+	}
+}
@@ -0,0 +1,387 @@
+package source.labyrinth.controllers;
+
+import javafx.animation.PauseTransition;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Scale;
+import javafx.util.Duration;
+import source.labyrinth.Board;
+import source.labyrinth.SpriteCache;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * CanvasBoardRenderer draws the board into a single Canvas instead of a node per tile, and only the part of it that
+ * can be seen. The board is drawn with a ring of one cell around it for the insertion arrows, like the GridPane
+ * render. The canvas covers the view plus MARGIN_CELLS cells past every edge; dragging or scrolling moves the
+ * canvas, and the cells are only redrawn once the view leaves the drawn area, so panning costs next to nothing
+ * however large the board is. Zooming moves the same camera to a new scale and only scales the canvas, the cells
+ * are drawn again at the new size once the zoom has not changed for ZOOM_SETTLE_MILLIS.
+ * For every drawn cell it remembers a signature of what it drew (see FloorTile.getRenderSignature), and a render
+ * only repaints the cells whose signature changed. Clicks are turned back into cells by coordinate math.
+ * @author Fillip Serov
+ */
+public class CanvasBoardRenderer {
+	private static final long UNPAINTED = -1; // Forces the cell to be painted
+	private static final long NOTHING = 0; // Ring cell without an arrow
+	private static final long ARROW = 1; // Ring cell with an arrow
+	private static final double HIGHLIGHT_OPACITY = 0.5;
+	private static final int MARGIN_CELLS = 4; // Drawn past every edge of the view
+	private static final double ZOOM_SETTLE_MILLIS = 250;
+
+	private final Pane view = new Pane();
+	private final Canvas canvas = new Canvas();
+	private final Scale zoom = new Scale(1, 1, 0, 0); // From the size the canvas was painted at to tileSize
+	private final PauseTransition zoomSettle = new PauseTransition(Duration.millis(ZOOM_SETTLE_MILLIS));
+	private final BiConsumer<Integer, Integer> onClick;
+
+	// What was last rendered, kept to draw cells that scroll into view
+	private Board board;
+	private boolean[][] highlighted;
+	private Boolean[][] insertableMask;
+	private int columns; // Board width plus the ring
+	private int rows; // Board height plus the ring
+	private int tileSize;
+	private int paintedTileSize; // Size the cells on the canvas were painted at, tileSize once the zoom settles
+
+	// The camera is the position, in pixels of the whole board and its ring, of the top left of the view
+	private double cameraX;
+	private double cameraY;
+	private boolean cameraPlaced;
+	// The canvas holds the cells from (firstColumn, firstRow) on, bufferColumns wide and bufferRows high
+	private int firstColumn;
+	private int firstRow;
+	private int bufferColumns;
+	private int bufferRows;
+	private long[] signatures = new long[0]; // Cell (column, row) at (column - firstColumn) * bufferRows + row - firstRow
+	private double dragX;
+	private double dragY;
+
+	/**
+	 * @param onClick Called with the x and y of a clicked cell. Arrows are at -1 or the width / height, like
+	 *                LevelController.handleBoardClick takes them
+	 */
+	public CanvasBoardRenderer(BiConsumer<Integer, Integer> onClick) {
+		this.onClick = onClick;
+
+		// The view takes whatever room it is given, and never shows the canvas outside of it
+		canvas.setManaged(false);
+		canvas.getTransforms().add(zoom);
+		zoomSettle.setOnFinished(event -> settleZoom());
+		view.getChildren().add(canvas);
+		view.setMinSize(0, 0);
+		view.setPrefSize(0, 0);
+		Rectangle clip = new Rectangle();
+		clip.widthProperty().bind(view.widthProperty());
+		clip.heightProperty().bind(view.heightProperty());
+		view.setClip(clip);
+		// Resizing keeps the middle of the view where it was
+		view.widthProperty().addListener((observable, oldWidth, newWidth) ->
+				moveCamera((oldWidth.doubleValue() - newWidth.doubleValue()) / 2, 0, true));
+		view.heightProperty().addListener((observable, oldHeight, newHeight) ->
+				moveCamera(0, (oldHeight.doubleValue() - newHeight.doubleValue()) / 2, true));
+
+		view.setOnMousePressed(event -> {
+			dragX = event.getX();
+			dragY = event.getY();
+		});
+		view.setOnMouseDragged(event -> {
+			moveCamera(dragX - event.getX(), dragY - event.getY(), false);
+			dragX = event.getX();
+			dragY = event.getY();
+		});
+		view.setOnScroll(event -> {
+			moveCamera(-event.getDeltaX(), -event.getDeltaY(), false);
+			event.consume();
+		});
+		view.setOnMouseClicked(event -> {
+			// A drag ends with a click too, which should not count
+			if (event.isStillSincePress()) {
+				int[] cell = pick(event.getX(), event.getY());
+				if (cell != null) {
+					onClick.accept(cell[0], cell[1]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The view the board is drawn in, which fills the room it is given
+	 */
+	public Region getView() {
+		return view;
+	}
+
+	/**
+	 * Bring the drawn cells up to date with the board, repainting only the ones that look different since they were
+	 * last painted. A new tile size zooms around the middle of the view by scaling the canvas, and the visible cells
+	 * are only painted at that size once the zoom settles.
+	 * @param board Board to draw
+	 * @param tileSize Size of a tile
+	 * @param highlighted Cells to draw with the "chosen" overlay, [x][y]. Kept, and read again while panning
+	 * @param insertableMask Insertable columns and rows from Board.getInsertablePositions, or null to draw no
+	 *                       insertion arrows
+	 * @return Amount of cells repainted
+	 */
+	public int render(Board board, int tileSize, boolean[][] highlighted, Boolean[][] insertableMask) {
+		this.board = board;
+		this.highlighted = highlighted;
+		this.insertableMask = insertableMask;
+		int repainted;
+		if (board.getWidth() + 2 != columns || board.getHeight() + 2 != rows) {
+			columns = board.getWidth() + 2;
+			rows = board.getHeight() + 2;
+			this.tileSize = tileSize;
+			zoomSettle.stop();
+			repainted = settleZoom();
+		} else if (tileSize != this.tileSize) {
+			// Keep what is in the middle of the view in the middle
+			double scale = (double) tileSize / this.tileSize;
+			cameraX = (cameraX + view.getWidth() / 2) * scale - view.getWidth() / 2;
+			cameraY = (cameraY + view.getHeight() / 2) * scale - view.getHeight() / 2;
+			this.tileSize = tileSize;
+			zoom.setX((double) tileSize / paintedTileSize);
+			zoom.setY(zoom.getX());
+			repainted = moveCamera(0, 0, false) + paintBuffer();
+			zoomSettle.playFromStart();
+		} else {
+			repainted = paintBuffer();
+		}
+		return repainted;
+	}
+
+	/**
+	 * Paint the visible cells at the current tile size and stop scaling the canvas.
+	 * @return Amount of cells repainted
+	 */
+	private int settleZoom() {
+		paintedTileSize = tileSize;
+		zoom.setX(1);
+		zoom.setY(1);
+		return moveCamera(0, 0, true);
+	}
+
+	/**
+	 * Repaint one cell of the board if it is drawn and looks different since it was last painted, e.g. when it is
+	 * highlighted, without checking every other cell like render does.
+	 * @param x X-position of the cell
+	 * @param y Y-position of the cell
+	 * @param highlighted true to draw the cell with the "chosen" overlay
+	 */
+	public void renderCell(int x, int y, boolean highlighted) {
+		paintCell(x + 1, y + 1, highlighted);
+	}
+
+	/**
+	 * Move the camera so a cell is in the middle of the view, unless it can already be seen.
+	 * @param x X-position of the cell
+	 * @param y Y-position of the cell
+	 */
+	public void showCell(int x, int y) {
+		double left = (x + 1) * tileSize;
+		double top = (y + 1) * tileSize;
+		if (!cameraPlaced || left < cameraX || top < cameraY || left + tileSize > cameraX + view.getWidth()
+				|| top + tileSize > cameraY + view.getHeight()) {
+			cameraPlaced = true;
+			moveCamera(left + tileSize / 2.0 - view.getWidth() / 2 - cameraX,
+					top + tileSize / 2.0 - view.getHeight() / 2 - cameraY, false);
+		}
+	}
+
+	/**
+	 * Find the cell under a point of the view.
+	 * @param viewX X-position in the view, e.g. of a click
+	 * @param viewY Y-position in the view
+	 * @return x and y of the cell on the board, -1 or the width / height for the arrow ring, null if outside
+	 */
+	public int[] pick(double viewX, double viewY) {
+		int[] cell = null;
+		if (tileSize > 0) {
+			int column = (int) Math.floor((cameraX + viewX) / tileSize);
+			int row = (int) Math.floor((cameraY + viewY) / tileSize);
+			if (column >= 0 && column < columns && row >= 0 && row < rows) {
+				cell = new int[] {column - 1, row - 1};
+			}
+		}
+		return cell;
+	}
+
+	/**
+	 * Move the camera, keeping it on the board. The canvas is only moved while it still covers the view, otherwise
+	 * it is moved to cover the view and its margin again and repainted.
+	 * @param dx Pixels to move right
+	 * @param dy Pixels to move down
+	 * @param redraw true to repaint everything even if the canvas still covers the view (e.g. after a resize)
+	 * @return Amount of cells repainted
+	 */
+	private int moveCamera(double dx, double dy, boolean redraw) {
+		int repainted = 0;
+		if (board != null) {
+			cameraX = clampCamera(cameraX + dx, columns * tileSize, view.getWidth());
+			cameraY = clampCamera(cameraY + dy, rows * tileSize, view.getHeight());
+			if (redraw || !bufferCoversView()) {
+				firstColumn = Math.max(0, (int) Math.floor(cameraX / tileSize) - MARGIN_CELLS);
+				firstRow = Math.max(0, (int) Math.floor(cameraY / tileSize) - MARGIN_CELLS);
+				bufferColumns = Math.min(columns - firstColumn,
+						(int) Math.ceil(view.getWidth() / tileSize) + 1 + 2 * MARGIN_CELLS);
+				bufferRows = Math.min(rows - firstRow,
+						(int) Math.ceil(view.getHeight() / tileSize) + 1 + 2 * MARGIN_CELLS);
+				canvas.setWidth(bufferColumns * paintedTileSize);
+				canvas.setHeight(bufferRows * paintedTileSize);
+				canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+				if (signatures.length < bufferColumns * bufferRows) {
+					signatures = new long[bufferColumns * bufferRows];
+				}
+				Arrays.fill(signatures, UNPAINTED);
+				repainted = paintBuffer();
+			}
+			canvas.setTranslateX(firstColumn * tileSize - cameraX);
+			canvas.setTranslateY(firstRow * tileSize - cameraY);
+		}
+		return repainted;
+	}
+
+	/**
+	 * @param camera Wanted camera position on one axis
+	 * @param boardSize Size of the board and its ring on that axis
+	 * @param viewSize Size of the view on that axis
+	 * @return The closest position that keeps the view on the board, or centres the board if it is smaller
+	 */
+	private static double clampCamera(double camera, double boardSize, double viewSize) {
+		double clamped;
+		if (boardSize <= viewSize) {
+			clamped = (boardSize - viewSize) / 2;
+		} else {
+			clamped = Math.max(0, Math.min(boardSize - viewSize, camera));
+		}
+		return clamped;
+	}
+
+	/**
+	 * @return true if every cell the view shows is on the canvas
+	 */
+	private boolean bufferCoversView() {
+		int left = Math.max(0, (int) Math.floor(cameraX / tileSize));
+		int top = Math.max(0, (int) Math.floor(cameraY / tileSize));
+		int right = Math.min(columns, (int) Math.ceil((cameraX + view.getWidth()) / tileSize));
+		int bottom = Math.min(rows, (int) Math.ceil((cameraY + view.getHeight()) / tileSize));
+		return left >= firstColumn && top >= firstRow && right <= firstColumn + bufferColumns
+				&& bottom <= firstRow + bufferRows;
+	}
+
+	/**
+	 * @return Amount of cells on the canvas that were repainted
+	 */
+	private int paintBuffer() {
+		int repainted = 0;
+		for (int column = firstColumn; column < firstColumn + bufferColumns; column++) {
+			for (int row = firstRow; row < firstRow + bufferRows; row++) {
+				boolean cellHighlighted = isOnBoard(column - 1, row - 1) && highlighted[column - 1][row - 1];
+				repainted += paintCell(column, row, cellHighlighted) ? 1 : 0;
+			}
+		}
+		return repainted;
+	}
+
+	/**
+	 * @param column Column of the cell, 0 to the width + 1 (the board with its ring)
+	 * @param row Row of the cell, 0 to the height + 1
+	 * @param highlighted true to draw a board cell with the "chosen" overlay
+	 * @return true if the cell is on the canvas and was repainted
+	 */
+	private boolean paintCell(int column, int row, boolean highlighted) {
+		int x = column - 1;
+		int y = row - 1;
+		boolean repaint = false;
+		if (column >= firstColumn && row >= firstRow && column < firstColumn + bufferColumns
+				&& row < firstRow + bufferRows) {
+			long signature;
+			if (isOnBoard(x, y)) {
+				// Highlighting doubles the signature space, keeping every tile signature above ARROW
+				signature = (board.getTileAt(x, y).getRenderSignature() * 2 + (highlighted ? 1 : 0)) + 2;
+			} else {
+				signature = arrowDirection(x, y, insertableMask) >= 0 ? ARROW : NOTHING;
+			}
+
+			int index = (column - firstColumn) * bufferRows + row - firstRow;
+			repaint = signatures[index] != signature;
+			if (repaint) {
+				signatures[index] = signature;
+				GraphicsContext gc = canvas.getGraphicsContext2D();
+				double left = (column - firstColumn) * paintedTileSize;
+				double top = (row - firstRow) * paintedTileSize;
+				gc.clearRect(left, top, paintedTileSize, paintedTileSize);
+				if (isOnBoard(x, y)) {
+					board.getTileAt(x, y).drawTile(gc, left, top, paintedTileSize);
+					if (highlighted) {
+						gc.setGlobalAlpha(HIGHLIGHT_OPACITY);
+						gc.drawImage(SpriteCache.get(LevelController.CHOSEN_IMAGE_URL, paintedTileSize), left, top);
+						gc.setGlobalAlpha(1);
+					}
+				} else if (signature == ARROW) {
+					gc.drawImage(SpriteCache.get(LevelController.INSERT_ARROW_IMAGE_URL, paintedTileSize,
+							arrowQuarterTurns(arrowDirection(x, y, insertableMask)), false), left, top);
+				}
+			}
+		}
+		return repaint;
+	}
+
+	/**
+	 * @param x X-position on the board, -1 to the width
+	 * @param y Y-position on the board, -1 to the height
+	 * @return true if the cell is on the board and not in the ring
+	 */
+	private boolean isOnBoard(int x, int y) {
+		return x >= 0 && y >= 0 && x < columns - 2 && y < rows - 2;
+	}
+
+	/**
+	 * @param x X-position of a ring cell
+	 * @param y Y-position of a ring cell
+	 * @param insertableMask Insertable columns and rows, or null if nothing can be inserted
+	 * @return Insertion direction of the arrow in that cell (as Board.insertFloorTile takes it), -1 if it has none
+	 */
+	static int arrowDirection(int x, int y, Boolean[][] insertableMask) {
+		int direction = -1;
+		if (insertableMask != null) {
+			int width = insertableMask[0].length;
+			int height = insertableMask[1].length;
+			boolean inColumn = x >= 0 && x < width;
+			boolean inRow = y >= 0 && y < height;
+			if (inColumn && !inRow && insertableMask[0][x]) {
+				direction = y < 0 ? 0 : 2;
+			} else if (inRow && !inColumn && insertableMask[1][y]) {
+				direction = x < 0 ? 3 : 1;
+			}
+		}
+		return direction;
+	}
+
+	/**
+	 * @param direction Insertion direction of an arrow
+	 * @return Quarter turns of the arrow sprite, which points up unturned
+	 */
+	private static int arrowQuarterTurns(int direction) {
+		int quarterTurns;
+		switch (direction) {
+			case 0:
+				quarterTurns = 2;
+				break;
+			case 3:
+				quarterTurns = 1;
+				break;
+			case 1:
+				quarterTurns = -1;
+				break;
+			default:
+				quarterTurns = 0;
+				break;
+		}
+		return quarterTurns;
+	}
+}
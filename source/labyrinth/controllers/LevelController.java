@@ -2,17 +2,13 @@ package source.labyrinth.controllers;
 
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.effect.DropShadow;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
@@ -34,6 +30,18 @@ import java.util.*;
 public class LevelController implements Initializable {
 	// Changed by zoom in/zoom out buttons.
 	private static int tileRenderSize = 64;
+	private static final int MIN_TILE_RENDER_SIZE = 20;
+	private static final int MAX_TILE_RENDER_SIZE = 100;
+	private static final int ZOOM_STEP = 10;
+	static final String CHOSEN_IMAGE_URL = "source/resources/img/chosen_one.png";
+	static final String INSERT_ARROW_IMAGE_URL = "source/resources/img/insert_arrow.png";
+	private static final String TURN_ARROW_IMAGE_URL = "source/resources/img/turn_arrow.png";
+	// Run with -Dlabyrinth.canvasBoard=true to draw the board into one Canvas instead of a node per tile
+	private static final boolean CANVAS_BOARD = Boolean.getBoolean("labyrinth.canvasBoard");
+	// Larger boards are always drawn into a Canvas, which only draws what can be seen
+	private static final int NODE_BOARD_MAX_CELLS = 2500;
+	// Run with -Dlabyrinth.debugRendering=true to log how much of the board every repaint and turn redraws
+	private static final boolean DEBUG_RENDERING = Boolean.getBoolean("labyrinth.debugRendering");
 
 	// The amount of "time" it takes for all players to complete one turn. (i.e. 3 players = 3)
 	private static int timeForFullLoop;
@@ -64,14 +72,29 @@ public class LevelController implements Initializable {
 	}
 
 	private String currentLevelName; // Name of level we are on, needed to update leaderboards
-	private VBox[] playerSubInfoVBoxes;
+	private Text[] actionAmountTexts; // Side info of every player, updated in place
+	private Text[] yourTurnTexts;
 	private Player[] players;
 	private int currentPlayer; // 0 to 3, player that is doing their turn
 	private Board board;
-	private GridPane renderedBoard;
+	private NodeBoardRenderer nodeRenderer; // Used for boards up to NODE_BOARD_MAX_CELLS
+	private CanvasBoardRenderer canvasRenderer; // Used with CANVAS_BOARD or for larger boards
+	private long nodesCreatedBeforeTurn; // To log how many board nodes every turn creates
+	private int[] cellToShow; // Brought into view by the next board paint, on boards drawn by the canvas
+	// Every change marks the board or side info dirty, and they are redrawn once before the next pulse
+	private final RenderScheduler renderScheduler = new RenderScheduler(this::paintBoard, this::paintSubInfoVBoxes);
+	private int boardRepaintsBeforeTurn; // To log how many board repaints every turn costs
+	private boolean[][] highlighted; // Cells a click moves to (or backtracks from), cleared by renderBoard
+	private final ArrayList<int[]> highlightedCells = new ArrayList<>(); // The true cells of highlighted
 	private FloorTile floorTileToInsert;
 	private TurnPhases currentTurnPhase;
 	private ActionTile.ActionType usedAction; // We "used" this action, and are now applying it
+	private SnapshotChain saveChain; // Every save of this game goes into the same chain
+	// Kept for the match history
+	private long gameSeed;
+	private int actionTilesUsed;
+	private long playedMillisBefore; // Time played before this game was last loaded
+	private long resumedAt; // When this game was started or last loaded
 
 	/**
 	 * Get the current game time as an int. Will always be above 0.
@@ -114,6 +137,32 @@ public class LevelController implements Initializable {
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
 		System.out.println("Created LevelController");
+		SceneManager.setRefreshHook(SceneManager.Screen.LEVEL, this::refresh);
+	}
+
+	/**
+	 * Start the game set by setNextLevelToLoad or setNextSaveToLoad, every time the level scene is shown. The
+	 * controller and its scene are kept between games, so everything left from the last game is cleared first.
+	 */
+	private void refresh() {
+		this.saveChain = null;
+		this.gameSeed = 0;
+		this.actionTilesUsed = 0;
+		this.playedMillisBefore = 0;
+		this.floorTileToInsert = null;
+		this.currentTurnPhase = null;
+		this.usedAction = null;
+		this.highlighted = null;
+		this.highlightedCells.clear();
+		this.cellToShow = null;
+		// A new board may have the same size as the last one, so new renderers draw it in full
+		this.nodeRenderer = null;
+		this.canvasRenderer = null;
+		this.nodesCreatedBeforeTurn = 0;
+		this.boardRepaintsBeforeTurn = renderScheduler.getBoardRepaints();
+		boardContainer.getChildren().clear();
+		boardContainer.setMinSize(Region.USE_COMPUTED_SIZE, Region.USE_COMPUTED_SIZE);
+		saveButton.setDisable(false);
 
 		// No matter whether this is a fresh game or a save, the SilkBag must be emptied
 		SilkBag.emptyBag();
@@ -123,6 +172,7 @@ public class LevelController implements Initializable {
 		} else {
 			setupFromLevelFile(nextFileToLoad, nextLevelProfiles);
 		}
+		prewarmSprites();
 	}
 
 	/**
@@ -131,24 +181,15 @@ public class LevelController implements Initializable {
 	 */
 	@FXML public void goToLevelMenu(ActionEvent event) {
 		System.out.println("Going to level menu...");
-		try {
-			Parent profileMenuParent = FXMLLoader.load(getClass().getResource("../../resources/scenes/level_menu.fxml"));
-			Scene profileMenuScene = new Scene(profileMenuParent);
-			Stage window = (Stage)((Node)event.getSource()).getScene().getWindow();
-
-			window.setScene(profileMenuScene);
-			window.setTitle("Level Select");
-			window.show();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		SceneManager.show((Stage)((Node)event.getSource()).getScene().getWindow(), SceneManager.Screen.LEVEL_MENU);
 	}
 
 	/**
 	 * Increases the size at which tiles render at, maximum of 100.
 	 */
 	@FXML public void increaseZoom() {
-		tileRenderSize = Math.min(100, tileRenderSize + 10);
+		tileRenderSize = Math.min(MAX_TILE_RENDER_SIZE, tileRenderSize + ZOOM_STEP);
+		prewarmSprites();
 		renderBoard();
 		if (currentTurnPhase == TurnPhases.MOVEMENT || (currentTurnPhase == TurnPhases.PLAYACTION && usedAction == ActionTile.ActionType.DOUBLEMOVE)) {
 			showWay();
@@ -159,7 +200,8 @@ public class LevelController implements Initializable {
 	 * Decreases the size at which tiles render, minimum of 20.
 	 */
 	@FXML public void decreaseZoom() {
-		tileRenderSize = Math.max(20, tileRenderSize - 10);
+		tileRenderSize = Math.max(MIN_TILE_RENDER_SIZE, tileRenderSize - ZOOM_STEP);
+		prewarmSprites();
 		renderBoard();
 		if (currentTurnPhase == TurnPhases.MOVEMENT || (currentTurnPhase == TurnPhases.PLAYACTION && usedAction == ActionTile.ActionType.DOUBLEMOVE)) {
 			showWay();
@@ -167,31 +209,51 @@ public class LevelController implements Initializable {
 	}
 
 	/**
-	 * exportToSave will collect all necessary information about the game and save it to a file. An alert
-	 * will popup to show the save name.
+	 * Decode the board's sprites for the current zoom level and the ones next to it in the background, so
+	 * rendering and zooming do not wait for images to load.
+	 */
+	private static void prewarmSprites() {
+		SpriteCache.prewarm(LevelController::warmSprites);
+	}
+
+	/**
+	 * Decode the board's sprites for the current zoom level and the ones next to it on the calling thread. Used
+	 * by prewarmSprites, and by the StartupPipeline so the first game does not wait for them either.
+	 */
+	static void warmSprites() {
+		int[] sizes = {tileRenderSize, Math.min(MAX_TILE_RENDER_SIZE, tileRenderSize + ZOOM_STEP),
+				Math.max(MIN_TILE_RENDER_SIZE, tileRenderSize - ZOOM_STEP)};
+		for (int size : sizes) {
+			FloorTile.warmSprites(size);
+			SpriteCache.get(CHOSEN_IMAGE_URL, size);
+			for (int quarterTurns = 0; quarterTurns < 4; quarterTurns++) {
+				SpriteCache.get(INSERT_ARROW_IMAGE_URL, size, quarterTurns, false);
+			}
+		}
+	}
+
+	/**
+	 * exportToSave will collect all necessary information about the game and save it to a file. The first save
+	 * of a game creates a new save file, every later save of the same game is appended to it as a small delta.
+	 * An alert will popup to show the save name.
 	 * @throws IOException If it cannot save to file
 	 */
 	public void exportToSave() throws IOException {
-		String timeStamp = new SimpleDateFormat("ss-mm-HH-dd-MM-yyyy").format(new Date());
-		String saveFileName = "save_" + timeStamp + ".ser"; // temp, just take level name
-		System.out.println(saveFileName);
+		if (this.saveChain == null) {
+			String timeStamp = new SimpleDateFormat("ss-mm-HH-dd-MM-yyyy").format(new Date());
+			String saveFileName = "save_" + timeStamp + SnapshotChain.EXTENSION;
+			this.saveChain = new SnapshotChain(new File("source/resources/saves/" + saveFileName), true);
+		}
+		String saveFileName = this.saveChain.getFile().getName();
 		System.out.println("Saving game state to file " + saveFileName);
 
-		// Setup output
-		FileOutputStream fos = new FileOutputStream("source/resources/saves/" + saveFileName);
-		ObjectOutputStream objectOutputStream = new ObjectOutputStream(fos);
-
-		// Serialize the objects from which we could later rebuild the entire game state
-		objectOutputStream.writeObject(currentTime);
-		objectOutputStream.writeObject(this.currentLevelName);
-		objectOutputStream.writeObject(this.players);
-		objectOutputStream.writeObject(this.currentPlayer);
-		objectOutputStream.writeObject(this.board);
-		objectOutputStream.writeObject(this.floorTileToInsert);
-		objectOutputStream.writeObject(this.currentTurnPhase);
-		objectOutputStream.writeObject(SilkBag.getEntireBag());
-		objectOutputStream.flush();
-		objectOutputStream.close();
+		// The snapshot holds everything from which we could later rebuild the entire game state
+		GameSnapshot snapshot = new GameSnapshot(currentTime, this.currentLevelName, this.players,
+				this.currentPlayer, this.board, this.floorTileToInsert, this.currentTurnPhase.ordinal(),
+				SilkBag.getEntireBag());
+		snapshot.setMatchInfo(gameSeed, actionTilesUsed, getPlayedMillis());
+		int bytesWritten = this.saveChain.append(snapshot);
+		System.out.println("Wrote save " + this.saveChain.getFrameCount() + " (" + bytesWritten + " bytes)");
 
 		Alert alert = new Alert(Alert.AlertType.INFORMATION);
 		alert.setContentText("Game saved to save file: " + saveFileName + ". You can load it from the level menu.");
@@ -208,46 +270,35 @@ public class LevelController implements Initializable {
 	 */
 	private void setupFromLevelFile(String levelName, String[] profileInfo) {
 		System.out.println("Creating new game from level file...");
-		LevelData ld = LevelIO.readDataFile("source/resources/levels/" + levelName + ".txt");
+		LevelTemplate template;
+		try {
+			// Parsed once per level, every later game on it starts from the cached template
+			template = LevelTemplateCache.get(levelName);
+		} catch (IOException e) {
+			e.printStackTrace();
+			Alert alert = new Alert(Alert.AlertType.ERROR);
+			alert.setContentText("Could not load level " + levelName + ". " + e.getMessage());
+			alert.show();
+			return;
+		}
 
 		timeForFullLoop = profileInfo.length;
 		currentTime = 0;
 
 		this.currentLevelName = levelName;
 		this.currentPlayer = 0;
+		this.gameSeed = new Random().nextLong();
+		this.actionTilesUsed = 0;
+		this.playedMillisBefore = 0;
+		this.resumedAt = System.currentTimeMillis();
 
 		//
 		// Board Setup
 		//
 		System.out.println("Setting up board...");
 
-		this.board = ld.getBoard();
-
-		// Add all floor tiles to the silk bag
-		for (FloorTile.FloorType floorType : FloorTile.FloorType.values()) {
-			int amount = ld.getFloorTileAmount(floorType);
-			for (int i = 0; i < amount; i++) {
-				SilkBag.addTile(new FloorTile(new Random().nextInt(5), floorType));
-			}
-		}
-
-		// IMPORTANT: Before we create and add action tiles to the bag, we use the silk bag to fill up
-		// the board with random tiles (since we know only floor tiles are stored in the bag right now).
-		for (int x = 0; x < this.board.getWidth(); x++) {
-			for (int y = 0; y < this.board.getHeight(); y++) {
-				if (this.board.getTileAt(x, y) == null) {
-					this.board.setTileAt((FloorTile)SilkBag.getRandomTile(), x, y);
-				}
-			}
-		}
-
-		// Create all the action tiles and add them to the Board.
-		for (ActionTile.ActionType tileType : ActionTile.ActionType.values()) {
-			int amount = ld.getActionTileAmount(tileType);
-			for (int i = 0; i < amount; i++) {
-				SilkBag.addTile(new ActionTile(tileType));
-			}
-		}
+		// Fills the SilkBag too, drawing from it with a Random seeded by the game seed
+		this.board = template.startGame(gameSeed);
 
 		//
 		// Player Setup
@@ -265,7 +316,7 @@ public class LevelController implements Initializable {
 
 			Player newPlayer = new Player(i, associatedProfileID);
 
-			int[] startingPosition = ld.getPlayerStartingPositions()[i];
+			int[] startingPosition = template.getPlayerStartingPosition(i);
 			newPlayer.setStandingOn(this.board.getTileAt(startingPosition[0], startingPosition[1]));
 
 			newPlayer.addToPastPositions(startingPosition[0],startingPosition[1]);
@@ -283,10 +334,16 @@ public class LevelController implements Initializable {
 	}
 
 	/**
-	 * setupFromSaveFile will rebuild a previous game from a serialized save file.
+	 * setupFromSaveFile will rebuild a previous game from a save file. Save chains are resumed from their
+	 * newest save, older files are read as a serialized object graph.
 	 * @param saveName The file name of the save file
 	 */
 	private void setupFromSaveFile(String saveName) {
+		if (saveName.endsWith(SnapshotChain.EXTENSION)) {
+			setupFromSnapshotChain(saveName);
+			return;
+		}
+
 		FileInputStream fis;
 		ObjectInputStream objectInputStream;
 		try {
@@ -302,41 +359,89 @@ public class LevelController implements Initializable {
 			this.currentTurnPhase = (TurnPhases) objectInputStream.readObject();
 			SilkBag.setEntireBag((LinkedList<Tile>) objectInputStream.readObject());
 
-			// To be safe, just re-render everything
-			setupSideInfo();
-			updateSubInfoVBoxes();
-			renderBoard();
-
 			objectInputStream.close();
 
-			// Finally check what phase we loaded and go there to "begin" the game again
-			switch (this.currentTurnPhase) {
-				case DRAWING:
-					drawingPhase();
-					break;
-				case PLACEMENT:
-					placementPhase(floorTileToInsert);
-					break;
-				case PLAYACTION:
-					playActionPhase();
-					break;
-				case MOVEMENT:
-					movementPhase();
-					break;
-				default:
-					System.out.println("Loading from save gave no phase. Game is now soft-locked.");
-			}
+			// Old saves hold no match info, so the game is recorded as if it started now with a new seed
+			timeForFullLoop = this.players.length;
+			this.gameSeed = new Random().nextLong();
+			this.actionTilesUsed = 0;
+			this.playedMillisBefore = 0;
+
+			resumeLoadedGame();
 		} catch (IOException | ClassNotFoundException e) {
 			e.printStackTrace();
 			System.out.println("Error reading save file");
 		}
 	}
 
+	/**
+	 * Rebuild a game from the newest snapshot of a save chain. Saving again will append to the same chain.
+	 * @param saveName The file name of the save chain
+	 */
+	private void setupFromSnapshotChain(String saveName) {
+		try {
+			this.saveChain = SnapshotChain.open(new File("source/resources/saves/" + saveName));
+			GameSnapshot snapshot = this.saveChain.getLatest();
+			if (snapshot == null) {
+				throw new IOException("Save " + saveName + " is empty.");
+			}
+
+			currentTime = snapshot.getCurrentTime();
+			timeForFullLoop = snapshot.getPlayers().length;
+			this.currentLevelName = snapshot.getLevelName();
+			this.players = snapshot.getPlayers();
+			this.currentPlayer = snapshot.getCurrentPlayer();
+			this.board = snapshot.getBoard();
+			this.floorTileToInsert = snapshot.getFloorTileToInsert();
+			this.currentTurnPhase = TurnPhases.values()[snapshot.getTurnPhase()];
+			SilkBag.setEntireBag(snapshot.getBag());
+			this.gameSeed = snapshot.getSeed();
+			this.actionTilesUsed = snapshot.getActionTilesUsed();
+			this.playedMillisBefore = snapshot.getPlayedMillis();
+
+			resumeLoadedGame();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Error reading save file");
+		}
+	}
+
+	/**
+	 * Once the state of a loaded game is set, render everything and go back to the phase it was saved in.
+	 */
+	private void resumeLoadedGame() {
+		this.resumedAt = System.currentTimeMillis();
+
+		// To be safe, just re-render everything
+		setupSideInfo();
+		updateSubInfoVBoxes();
+		renderBoard();
+
+		// Finally check what phase we loaded and go there to "begin" the game again
+		switch (this.currentTurnPhase) {
+			case DRAWING:
+				drawingPhase();
+				break;
+			case PLACEMENT:
+				placementPhase(floorTileToInsert);
+				break;
+			case PLAYACTION:
+				playActionPhase();
+				break;
+			case MOVEMENT:
+				movementPhase();
+				break;
+			default:
+				System.out.println("Loading from save gave no phase. Game is now soft-locked.");
+		}
+	}
+
 	/**
 	 * displays data about players
 	 */
 	private void setupSideInfo() {
-		playerSubInfoVBoxes = new VBox[players.length];
+		actionAmountTexts = new Text[players.length];
+		yourTurnTexts = new Text[players.length];
 
 		// Populating leftVBox with player info
 		leftVBox.getChildren().clear();
@@ -352,13 +457,22 @@ public class LevelController implements Initializable {
 	private void drawingPhase() {
 		currentTurnPhase = TurnPhases.DRAWING;
 		renderBoard();
+		if (usesCanvas()) {
+			// Large boards do not fit in the view, so bring the player whose turn it is into it
+			cellToShow = getPlayerXYPosition(currentPlayer);
+		}
 		updateSubInfoVBoxes();
 		bottomContainer.getChildren().clear();
 
 		Button drawButton = new Button("Draw a tile from the silk bag to start your turn");
 		drawButton.setOnMouseClicked(event -> {
 			Tile received = SilkBag.getRandomTile();
-			if (received instanceof FloorTile) {
+			if (received == null) {
+				Alert alert = new Alert(Alert.AlertType.INFORMATION);
+				alert.setContentText("The silk bag is empty, so there is nothing to draw this turn.");
+				alert.showAndWait();
+				playActionPhase();
+			} else if (received instanceof FloorTile) {
 				placementPhase((FloorTile) received);
 			} else {
 				ActionTile thisAction = (ActionTile) received;
@@ -409,8 +523,8 @@ public class LevelController implements Initializable {
 		GridPane rotationControls = new GridPane();
 		final int rotationControlSize = 64;
 
-		ImageView clockwise = new ImageView(new Image("source/resources/img/turn_arrow.png", rotationControlSize, rotationControlSize, false, false));
-		ImageView aClockwise = new ImageView(new Image("source/resources/img/turn_arrow.png", rotationControlSize, rotationControlSize, false, false));
+		ImageView clockwise = new ImageView(SpriteCache.get(TURN_ARROW_IMAGE_URL, rotationControlSize));
+		ImageView aClockwise = new ImageView(SpriteCache.get(TURN_ARROW_IMAGE_URL, rotationControlSize));
 
 		clockwise.setScaleX(-1);
 		clockwise.setOnMouseClicked(event -> {
@@ -435,9 +549,16 @@ public class LevelController implements Initializable {
 	 * @param insertionPoint int from 0 to max width/height, represents in which row/column to insert into.
 	 */
 	private void endPlacementPhase(int insertionDirection, int insertionPoint) {
+		FloorTile ejectedTile = this.board.getTileToEject(insertionDirection, insertionPoint);
 		this.board.insertFloorTile(this.floorTileToInsert, insertionDirection, insertionPoint);
 		this.floorTileToInsert = null;
 		renderBoard();
+		if (nodeRenderer != null) {
+			// The nodes must show the new board before they slide. The game carries on straight away, the line
+			// catches up with it.
+			renderScheduler.flush();
+			nodeRenderer.animateInsertion(ejectedTile, insertionDirection, insertionPoint);
+		}
 		playActionPhase();
 	}
 
@@ -463,14 +584,14 @@ public class LevelController implements Initializable {
 		// Render some small UI for every action tile
 		for (ActionTile.ActionType at : ActionTile.ActionType.values()) {
 			// Actual image of action
-			ImageView iv = new ImageView(new Image(at.imageURL, actionImageRenderSize, actionImageRenderSize, false, false));
+			ImageView iv = new ImageView(SpriteCache.get(at.imageURL, actionImageRenderSize));
 			StackPane stack = new StackPane(iv);
 			stack.setAlignment(Pos.TOP_LEFT);
 			iv.setFitHeight(Region.USE_COMPUTED_SIZE);
 
 			// When we re-render we highlight the currently chosen action
 			if (at == usedAction){
-				ImageView chosen = new ImageView(new Image("source/resources/img/chosen_one.png",actionImageRenderSize,actionImageRenderSize,false,false));
+				ImageView chosen = new ImageView(SpriteCache.get(CHOSEN_IMAGE_URL, actionImageRenderSize));
 				chosen.setOpacity(0.5);
 				stack.getChildren().addAll(chosen);
 			}
@@ -545,6 +666,18 @@ public class LevelController implements Initializable {
 		// Go up by one or rotate back to 0
 		currentPlayer = (currentPlayer < players.length - 1) ? currentPlayer + 1 : 0;
 		currentTime++;
+		board.markEffectsEndingAt(currentTime);
+
+		if (DEBUG_RENDERING) {
+			if (nodeRenderer != null) {
+				System.out.println("Turn created " + (nodeRenderer.getCreatedNodes() - nodesCreatedBeforeTurn)
+						+ " board nodes");
+				nodesCreatedBeforeTurn = nodeRenderer.getCreatedNodes();
+			}
+			System.out.println("Turn repainted the board "
+					+ (renderScheduler.getBoardRepaints() - boardRepaintsBeforeTurn) + " times");
+			boardRepaintsBeforeTurn = renderScheduler.getBoardRepaints();
+		}
 
 		drawingPhase();
 	}
@@ -559,20 +692,18 @@ public class LevelController implements Initializable {
 
 		// Update the winner's stats
 		if (winningProfile != null) {
-			winningProfile.addTotalPlayed();
-			winningProfile.addWin();
+			winningProfile.recordGame(true);
+			ProfileManager.markChanged(winningProfile);
 		}
 
 		// Update everyone else
 		for (int i = 0; i < players.length; i++) {
 			if ((i != winningID) && (players[i].getAssociatedProfile() != null)) {
-				players[i].getAssociatedProfile().addTotalPlayed();
-				players[i].getAssociatedProfile().addLoss();
+				players[i].getAssociatedProfile().recordGame(false);
+				ProfileManager.markChanged(players[i].getAssociatedProfile());
 			}
 		}
 
-		ProfileManager.writeProfilesToFile();
-
 		// Update the leaderboard
 		// Get profiles that played
 		ArrayList<Integer> profilesThatPlayed = new ArrayList<>();
@@ -589,11 +720,24 @@ public class LevelController implements Initializable {
 			} else {
 				LevelIO.updateLeaderboard(this.currentLevelName, profilesThatPlayed, null);
 			}
+
+			// Ratings are updated incrementally, the history is only replayed at startup
+			RatingEngine.recordResult(new GameResult(this.currentLevelName, profilesThatPlayed,
+					winningProfile != null ? winningProfile.getID() : null));
 		}
 
+		// Every game goes into the match history, whether profiles played or not
+		int[] seatProfiles = new int[players.length];
+		for (int i = 0; i < players.length; i++) {
+			seatProfiles[i] = players[i].getAssociatedProfile() != null
+					? players[i].getAssociatedProfile().getID() : MatchRecord.NO_PROFILE;
+		}
+		MatchHistory.record(new MatchRecord(this.currentLevelName, gameSeed, seatProfiles, winningID, currentTime + 1,
+				actionTilesUsed, getPlayedMillis(), System.currentTimeMillis()));
+
 		String playerName = winningProfile != null ? winningProfile.getName() : "Player " + winningID;
 		String winningMessage = playerName + " reached the goal tile first! They are the winner!";
-		ImageView playerIcon = new ImageView(new Image("source/resources/img/player_" + winningID + ".png", 50, 50, false, false));
+		ImageView playerIcon = new ImageView(SpriteCache.get("source/resources/img/player_" + winningID + ".png", 50));
 		Button returnButton = new Button("Return to level menu");
 		returnButton.setOnAction(this::goToLevelMenu);
 		bottomContainer.getChildren().clear();
@@ -603,6 +747,21 @@ public class LevelController implements Initializable {
 		saveButton.setDisable(true);
 	}
 
+	/**
+	 * Take the action being applied away from the current player, once it has been applied.
+	 */
+	private void useAction() {
+		players[currentPlayer].removeAction(usedAction);
+		actionTilesUsed++;
+	}
+
+	/**
+	 * @return Time spent playing this game, over every time it was loaded
+	 */
+	private long getPlayedMillis() {
+		return playedMillisBefore + System.currentTimeMillis() - resumedAt;
+	}
+
 	/**
 	 * A dirty hacky method to very slowly find a Player somewhere in a Board. TODO: Replace
 	 * @param playerID playerID
@@ -661,32 +820,31 @@ public class LevelController implements Initializable {
 		for (int i = 0; i < positions.length; i++) {
 			int index = canPlayerBeBacktracked(players[i]);
 			if (index > 0) {
-				setAsBacktrackOption(i, index,positions[i][0], positions[i][1]);
+				setAsBacktrackOption(positions[i][0], positions[i][1]);
 			}
 		}
 	}
 
 	/**
-	 * highlights player to be backtracked
-	 * @param player player ID
-	 * @param index how many turns back
+	 * highlights player to be backtracked, clicking it calls backtrack
 	 * @param x current position
 	 * @param y current position
 	 */
-	private void setAsBacktrackOption(int player, int index, int x, int y) {
-		ImageView chosen = new ImageView(new Image("source/resources/img/chosen_one.png",tileRenderSize,tileRenderSize, false, false));
-		chosen.setOpacity(0.5);
-		StackPane optionTile = getStackPaneTileByXY(x, y);
-		optionTile.getChildren().add(chosen);
-
-		FloorTile backTile = board.getTileAt(players[player].getPastPositions()[index][0],players[player].getPastPositions()[index][1]);
-		optionTile.setOnMouseClicked(event -> {
-			players[player].setStandingOn(backTile);
-			players[player].setHasBeenBacktracked(true);
-			players[currentPlayer].removeAction(usedAction);
-			renderBoard();
-			movementPhase();
-		});
+	private void setAsBacktrackOption(int x, int y) {
+		highlightCell(x, y);
+	}
+
+	/**
+	 * Send a player back as far as canPlayerBeBacktracked allows and continue to the movement phase.
+	 * @param player Player to backtrack
+	 */
+	private void backtrack(Player player) {
+		int[] backPosition = player.getPastPositions()[canPlayerBeBacktracked(player)];
+		standOn(player, backPosition[0], backPosition[1]);
+		player.setHasBeenBacktracked(true);
+		useAction();
+		renderBoard();
+		movementPhase();
 	}
 
 	/**
@@ -742,11 +900,24 @@ public class LevelController implements Initializable {
 	 * @param y coordinate
 	 */
 	private void setAsWay(int x, int y) {
-		ImageView chosen = new ImageView(new Image("source/resources/img/chosen_one.png", tileRenderSize,tileRenderSize,false,false));
-		chosen.setOpacity(0.5);
-		StackPane wayTile = getStackPaneTileByXY(x, y);
-		wayTile.getChildren().add(chosen);
-		wayTile.setOnMouseClicked(event -> move(x, y));
+		highlightCell(x, y);
+	}
+
+	/**
+	 * Show the "chosen" overlay on a cell and make clicking it a move or backtrack (see handleBoardClick).
+	 * @param x coordinate
+	 * @param y coordinate
+	 */
+	private void highlightCell(int x, int y) {
+		// The overlay goes onto the board as it is about to be drawn
+		renderScheduler.flush();
+		highlighted[x][y] = true;
+		highlightedCells.add(new int[] {x, y});
+		if (canvasRenderer != null) {
+			canvasRenderer.renderCell(x, y, true);
+		} else {
+			nodeRenderer.setHighlighted(x, y, true);
+		}
 	}
 
 	/**
@@ -756,7 +927,7 @@ public class LevelController implements Initializable {
 	 * @param y X-position of new tile to move on
 	 */
 	private void move(Player player,int x,int y) {
-		player.setStandingOn(board.getTileAt(x, y));
+		standOn(player, x, y);
 		player.addToPastPositions(x, y);
 
 		// Check if we moved to a Goal and won. Otherwise continue the phases.
@@ -771,7 +942,7 @@ public class LevelController implements Initializable {
 			switch (currentTurnPhase) {
 				case PLAYACTION:
 					// If we were moving in the PLAYACTION phase, we just used a DOUBLEMOVE
-					players[currentPlayer].removeAction(usedAction);
+					useAction();
 					movementPhase();
 					break;
 				case MOVEMENT:
@@ -781,6 +952,19 @@ public class LevelController implements Initializable {
 		}
 	}
 
+	/**
+	 * Put a player on another tile of the board, marking both cells as changed so they are redrawn.
+	 * @param player Player to move
+	 * @param x X-position of the new tile
+	 * @param y Y-position of the new tile
+	 */
+	private void standOn(Player player, int x, int y) {
+		int[] from = getPlayerXYPosition(player.getIdInGame());
+		player.setStandingOn(board.getTileAt(x, y));
+		board.markChanged(from[0], from[1]);
+		board.markChanged(x, y);
+	}
+
 	/**
 	 * move currentPlayer
 	 * @param x X-position of new tile to move on
@@ -790,21 +974,6 @@ public class LevelController implements Initializable {
 		move(players[currentPlayer],x,y);
 	}
 
-	/**
-	 * returns tile as stackPane by coordinates
-	 * @param col column
-	 * @param row row
-	 * @return StackPane tile
-	 */
-	private StackPane getStackPaneTileByXY(int col, int row) {
-		for (Node node : renderedBoard.getChildren()) {
-			if (GridPane.getColumnIndex(node) == col+1 && GridPane.getRowIndex(node) == row+1) {
-				return (StackPane) node;
-			}
-		}
-		return null;
-	}
-
 	/**
 	 * handles click events on tiles
 	 * @param x coordinate
@@ -816,7 +985,7 @@ public class LevelController implements Initializable {
 				// Fire will only apply and move the turn phase forward if it is able to be applied.
 				if (board.canSetOnFire(x, y)) {
 					board.setOnFire(x, y);
-					players[currentPlayer].removeAction(usedAction);
+					useAction();
 					movementPhase();
 				} else {
 					Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -826,7 +995,7 @@ public class LevelController implements Initializable {
 				break;
 			case ICE:
 				board.setFreezeOn(x, y);
-				players[currentPlayer].removeAction(usedAction);
+				useAction();
 				movementPhase();
 				break;
 			case BACKTRACK:
@@ -835,6 +1004,31 @@ public class LevelController implements Initializable {
 		}
 	}
 
+	/**
+	 * Every click on the board ends up here, whichever way it is rendered. Cells outside the board are the
+	 * insertion arrows around it.
+	 * @param x coordinate, -1 or the board width for the arrows left and right of the board
+	 * @param y coordinate, -1 or the board height for the arrows above and below the board
+	 */
+	private void handleBoardClick(int x, int y) {
+		if (x < 0 || y < 0 || x >= board.getWidth() || y >= board.getHeight()) {
+			Boolean[][] insertableMask = floorTileToInsert != null ? board.getInsertablePositions() : null;
+			int direction = CanvasBoardRenderer.arrowDirection(x, y, insertableMask);
+			if (direction >= 0) {
+				int insertionPoint = direction % 2 == 0 ? x : y;
+				System.out.println("Inserting at direction " + direction + " at insertion point " + insertionPoint);
+				endPlacementPhase(direction, insertionPoint);
+			}
+		} else if (highlighted[x][y] && currentTurnPhase == TurnPhases.PLAYACTION
+				&& usedAction == ActionTile.ActionType.BACKTRACK) {
+			backtrack(board.getTileAt(x, y).getPlayer());
+		} else if (highlighted[x][y]) {
+			move(x, y);
+		} else {
+			handleFloorTileClickAt(x, y);
+		}
+	}
+
 	/**
 	 * checks if clicks
 	 * @param x coordinate
@@ -850,106 +1044,86 @@ public class LevelController implements Initializable {
 	}
 
 	/**
-	 * renders board
+	 * Clear the highlights and have the board redrawn before the next pulse. Calling this several times while
+	 * handling one event still redraws the board once.
 	 */
 	private void renderBoard() {
-		// Clear the old render
-		boardContainer.getChildren().clear();
-
-		renderedBoard = new GridPane();
-		renderedBoard.setAlignment(Pos.CENTER);
-		boardContainer.setMinHeight((board.getHeight() * tileRenderSize) + (2 * tileRenderSize));
-		boardContainer.setMinWidth((board.getWidth() * tileRenderSize) + (2 * tileRenderSize));
-
-		Boolean[][] insertableMask = this.board.getInsertablePositions();
-		Image insertionImage = new Image("source/resources/img/insert_arrow.png", tileRenderSize, tileRenderSize, false, false);
-
-		// If we are in the placement phase (i.e. we have a FloorTile), show some additional buttons
-		if (floorTileToInsert != null) {
-			// Put column buttons (start at 1 since 0,0 is the empty top left spot)
-			for (int x = 1; x <= this.board.getWidth(); x++) {
-				if (insertableMask[0][x - 1]) {
-					int finalX = x - 1;
-
-					ImageView topOfColumn = new ImageView(insertionImage);
-					topOfColumn.setRotate(180);
-					topOfColumn.setOnMouseClicked(event -> {
-						System.out.println("Inserting at direction " + "0" + " at insertion point " + finalX);
-						endPlacementPhase(0, finalX);
-					});
-					renderedBoard.add(topOfColumn, x, 0);
-
-					ImageView bottomOfColumn = new ImageView(insertionImage);
-					bottomOfColumn.setOnMouseClicked(event -> {
-						System.out.println("Inserting at direction " + "2" + " at insertion point " + finalX);
-						endPlacementPhase(2, finalX);
-					});
-					renderedBoard.add(bottomOfColumn, x, this.board.getHeight() + 1);
-				}
-			}
-
-			// Put row buttons (start at 1)
-			for (int y = 1; y <= this.board.getHeight(); y++) {
-				if (insertableMask[1][y - 1]) {
-					int finalY = y - 1;
-
-					ImageView leftRow = new ImageView(insertionImage);
-					leftRow.setRotate(90);
-					leftRow.setOnMouseClicked(event -> {
-						System.out.println("Inserting at direction " + "3" + " at insertion point " + finalY);
-						endPlacementPhase(3, finalY);
-					});
-					renderedBoard.add(leftRow, 0, y);
-
-					ImageView rightRow = new ImageView(insertionImage);
-					rightRow.setRotate(-90);
-					rightRow.setOnMouseClicked(event -> {
-						System.out.println("Inserting at direction " + "1" + " at insertion point " + finalY);
-						endPlacementPhase(1, finalY);
-					});
-					renderedBoard.add(rightRow, this.board.getWidth() + 1, y);
-				}
+		// Highlights only last until the next render, as they did when every render rebuilt the board
+		if (highlighted == null) {
+			highlighted = new boolean[board.getWidth()][board.getHeight()];
+		}
+		for (int[] cell : highlightedCells) {
+			highlighted[cell[0]][cell[1]] = false;
+			if (nodeRenderer != null) {
+				nodeRenderer.setHighlighted(cell[0], cell[1], false);
 			}
 		}
+		highlightedCells.clear();
+		renderScheduler.markBoardDirty();
+	}
 
-		// The actual board render
-		for (int x = 0; x < this.board.getWidth(); x++) {
-			for (int y = 0; y < this.board.getHeight(); y++) {
-				FloorTile current = this.board.getTileAt(x, y);
-				StackPane stack = current.renderTile(tileRenderSize);
-
-				// Uncomment for coordinates
-				// stack.getChildren().add(new Text("(" + x + ", " + y + ")"));
-
-				int finalX = x;
-				int finalY = y;
-				stack.setOnMouseClicked(event -> {
-					handleFloorTileClickAt(finalX, finalY);
-				});
+	/**
+	 * @return true if the board is drawn by the canvas rather than by nodes
+	 */
+	private boolean usesCanvas() {
+		return CANVAS_BOARD || board.getWidth() * board.getHeight() > NODE_BOARD_MAX_CELLS;
+	}
 
-				renderedBoard.add(stack, x + 1, y + 1);
+	/**
+	 * Redraw the board, only called by the renderScheduler.
+	 */
+	private void paintBoard() {
+		if (usesCanvas()) {
+			if (canvasRenderer == null) {
+				// The canvas pans and zooms inside the room it is given, instead of growing the scroll pane
+				canvasRenderer = new CanvasBoardRenderer(this::handleBoardClick);
+				VBox.setVgrow(canvasRenderer.getView(), Priority.ALWAYS);
+				boardContainer.getChildren().setAll(canvasRenderer.getView());
+			}
+			repaintCanvas();
+			if (cellToShow != null) {
+				canvasRenderer.showCell(cellToShow[0], cellToShow[1]);
+				cellToShow = null;
+			}
+		} else {
+			boardContainer.setMinHeight((board.getHeight() * tileRenderSize) + (2 * tileRenderSize));
+			boardContainer.setMinWidth((board.getWidth() * tileRenderSize) + (2 * tileRenderSize));
+			if (nodeRenderer == null) {
+				nodeRenderer = new NodeBoardRenderer(this::handleBoardClick);
+				boardContainer.getChildren().setAll(nodeRenderer.getGrid());
 			}
+			Boolean[][] insertableMask = floorTileToInsert != null ? board.getInsertablePositions() : null;
+			nodeRenderer.render(board, tileRenderSize, insertableMask);
 		}
+	}
 
-		// renderedBoard.setGridLinesVisible(true);
-
-		boardContainer.getChildren().add(renderedBoard);
+	/**
+	 * Repaint the cells of the canvas that changed since it was last painted.
+	 */
+	private void repaintCanvas() {
+		Boolean[][] insertableMask = floorTileToInsert != null ? board.getInsertablePositions() : null;
+		int repainted = canvasRenderer.render(board, tileRenderSize, highlighted, insertableMask);
+		if (DEBUG_RENDERING) {
+			System.out.println("Repainted " + repainted + " cells of the board");
+		}
 	}
 
 	/**
-	 * updates player info 
+	 * updates player info before the next pulse
 	 */
 	private void updateSubInfoVBoxes() {
-		for (int i = 0; i < playerSubInfoVBoxes.length; i++) {
-			playerSubInfoVBoxes[i].getChildren().clear();
+		renderScheduler.markSideInfoDirty();
+	}
+
+	/**
+	 * Redraw the player info, only called by the renderScheduler. The texts are changed in place.
+	 */
+	private void paintSubInfoVBoxes() {
+		for (int i = 0; i < actionAmountTexts.length; i++) {
 			String actionAmountText = players[i].getFullActionAmount() == 1 ? " Action Tile" : " Action Tiles";
-			playerSubInfoVBoxes[i].getChildren().add(new Text(players[i].getFullActionAmount() + actionAmountText));
-			if (i == currentPlayer) {
-				Text yourTurn = new Text("Your Turn");
-				yourTurn.setFill(Color.GREEN);
-				yourTurn.setStyle("-fx-font-weight: bold");
-				playerSubInfoVBoxes[i].getChildren().add(yourTurn);
-			}
+			actionAmountTexts[i].setText(players[i].getFullActionAmount() + actionAmountText);
+			yourTurnTexts[i].setVisible(i == currentPlayer);
+			yourTurnTexts[i].setManaged(i == currentPlayer);
 		}
 	}
 
@@ -963,7 +1137,12 @@ public class LevelController implements Initializable {
 		HBox playerNameAndIcon = new HBox();
 		VBox playerSubInfoHBox = new VBox();
 
-		playerSubInfoVBoxes[playerID] = playerSubInfoHBox;
+		actionAmountTexts[playerID] = new Text();
+		Text yourTurn = new Text("Your Turn");
+		yourTurn.setFill(Color.GREEN);
+		yourTurn.setStyle("-fx-font-weight: bold");
+		yourTurnTexts[playerID] = yourTurn;
+		playerSubInfoHBox.getChildren().addAll(actionAmountTexts[playerID], yourTurn);
 
 		Circle playerIcon = new Circle(10);
 		playerIcon.setFill(Player.getPlayerColor(playerID));
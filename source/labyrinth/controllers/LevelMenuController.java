@@ -1,26 +1,23 @@
 package source.labyrinth.controllers;
 
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
+import source.labyrinth.LeaderboardStore;
+import source.labyrinth.LevelCatalog;
 import source.labyrinth.Profile;
 import source.labyrinth.ProfileManager;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.net.URL;
 import java.util.*;
 
@@ -29,40 +26,47 @@ import java.util.*;
  * @author Erik Miller
  */
 public class LevelMenuController implements Initializable {
-	private static ArrayList<String> profilesChosen = new ArrayList<>();
+	private static ArrayList<String> profilesChosen = new ArrayList<>(); // Profile of every player, null if none
 	private static String selectedLevel;
 	private static HBox selectedHBox;
 	private static int numberOfPlayers =  2;
-	private static ArrayList<String> profileNames;
 
 	@FXML private VBox vboxLevels;
 	@FXML private VBox vboxPlayers;
 	@FXML private Button addPlayerButton;
 	@FXML private Button removePlayerButton;
-	@FXML private TableView<Profile> tableView;
-	@FXML private TableColumn<Profile, Integer> winCol;
-	@FXML private TableColumn<Profile, String> nameCol;
+	@FXML private TableView<LeaderboardStore.LeaderboardEntry> tableView;
+	@FXML private TableColumn<LeaderboardStore.LeaderboardEntry, Integer> winCol;
+	@FXML private TableColumn<LeaderboardStore.LeaderboardEntry, String> nameCol;
 
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
-		renderLevels();
-		renderPlayersChoiceBox();
+		SceneManager.setRefreshHook(SceneManager.Screen.LEVEL_MENU, this::refresh);
+		// Levels added or edited while the menu is open show up straight away
+		LevelCatalog.setChangeListener(() -> Platform.runLater(this::renderLevels));
 
 		addPlayerButton.setOnMouseClicked(event -> {
 			numberOfPlayers = numberOfPlayers==4?4:numberOfPlayers+1;
-			renderPlayersChoiceBox();
+			renderPlayerPickers();
 		});
 		removePlayerButton.setOnMouseClicked(event -> {
 			numberOfPlayers = numberOfPlayers==2?2:numberOfPlayers-1;
 			if(profilesChosen.size() > numberOfPlayers) profilesChosen.remove(numberOfPlayers);
-			renderPlayersChoiceBox();
+			renderPlayerPickers();
 		});
 
-		renderLeaderBoard();
-
 		System.out.println("Created LevelMenuController");
 	}
 
+	/**
+	 * Bring the levels, profiles and leaderboard up to date, every time the menu is shown.
+	 */
+	private void refresh() {
+		renderLevels();
+		renderPlayerPickers();
+		renderLeaderBoard();
+	}
+
 	/**
 	 * starts game
 	 * @param event click on button
@@ -83,16 +87,7 @@ public class LevelMenuController implements Initializable {
 				System.out.println("player " + s);
 			}
 
-			try {
-				Parent profileMenuParent = FXMLLoader.load(getClass().getResource("../../resources/scenes/level.fxml"));
-				Scene profileMenuScene = new Scene(profileMenuParent);
-				Stage window = (Stage) ((Node) event.getSource()).getScene().getWindow();
-				window.setScene(profileMenuScene);
-				window.setTitle("Level Select");
-				window.show();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			SceneManager.show((Stage) ((Node) event.getSource()).getScene().getWindow(), SceneManager.Screen.LEVEL);
 		} else {
 			Alert alert = new Alert(Alert.AlertType.ERROR);
 			alert.setContentText("Choose a level!");
@@ -107,55 +102,37 @@ public class LevelMenuController implements Initializable {
 	@FXML
 	public void returnToMainMenu(ActionEvent event) {
 		System.out.println("Going back to main menu...");
-		try {
-			Parent profileMenuParent = FXMLLoader.load(getClass().getResource("../../resources/scenes/main_menu.fxml"));
-			Scene profileMenuScene = new Scene(profileMenuParent);
-			Stage window = (Stage)((Node)event.getSource()).getScene().getWindow();
-
-			window.setScene(profileMenuScene);
-			window.setTitle("Main Menu");
-			window.show();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		SceneManager.show((Stage)((Node)event.getSource()).getScene().getWindow(), SceneManager.Screen.MAIN_MENU);
 	}
 
 	/**
 	 * renders leaderboard for every level on click on this level
 	 */
 	private void renderLeaderBoard() {
-		tableView.getItems().clear();
-		try {
-			ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream("./source/resources/leaderboards/" + selectedLevel + "_leaderboard.ser"));
-			HashMap<Integer, Integer> leaderboardInfo = (HashMap<Integer, Integer>) objectInputStream.readObject();
-			objectInputStream.close();
-
-			ArrayList<Profile> profiles = new ArrayList<>();
-			leaderboardInfo.forEach((id,wins) -> {
-				Profile p = ProfileManager.getProfileById(id);
-				if (p != null) {
-					profiles.add(new Profile(p.getName(),id, 0,wins,0));
-				}
-			});
-			profiles.sort(Comparator.comparingInt(Profile::getWins));
-			Collections.reverse(profiles);
-
-			nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-			winCol.setCellValueFactory(new PropertyValueFactory<>("wins"));
-			tableView.getItems().setAll(profiles);
-		} catch (IOException | ClassNotFoundException e){
-			tableView.setPlaceholder(new Label("Leaderboard is empty"));
-		}
+		// Rows only hold the profile id, names are looked up for the rows that are shown
+		List<LeaderboardStore.LeaderboardEntry> ranking = LeaderboardStore.getRanking(selectedLevel);
+		ranking.removeIf(entry -> ProfileManager.getProfileById(entry.getProfileId()) == null);
 
+		nameCol.setCellValueFactory(cell -> {
+			Profile p = ProfileManager.getProfileById(cell.getValue().getProfileId());
+			return new ReadOnlyStringWrapper(p == null ? null : p.getName());
+		});
+		winCol.setCellValueFactory(new PropertyValueFactory<>("wins"));
+		tableView.getItems().setAll(ranking);
+		tableView.setPlaceholder(new Label("Leaderboard is empty"));
 	}
 
 	/**
-	 * renders level list in menu
+	 * renders level list in menu, with the details of every level taken from the LevelCatalog
 	 */
 	private void renderLevels() {
 		vboxLevels.getChildren().clear();
-		getLevels().forEach((value) -> {
-			HBox levelHBox = new HBox(new Text(value.substring(0,value.length()-4)));
+		LevelCatalog.getLevels().forEach((level) -> {
+			Text details = new Text(level.getWidth() + "x" + level.getHeight() + ", " + level.getPlayerCount()
+					+ " starts, " + level.getGoals() + " goals, " + level.getFixedTiles() + " fixed tiles, "
+					+ level.getFloorTiles() + " floor / " + level.getActionTiles() + " action tiles");
+			details.setStyle("-fx-font-size: 10");
+			HBox levelHBox = new HBox(new VBox(new Text(level.getName()), details));
 			levelHBox.setPrefHeight(30);
 			levelHBox.setAlignment(Pos.CENTER_LEFT);
 			levelHBox.setStyle("-fx-border-color: black");
@@ -164,61 +141,52 @@ public class LevelMenuController implements Initializable {
 					selectedHBox.setStyle("-fx-border-color: black");
 				}
 				selectedHBox = levelHBox;
-				selectedLevel = value.substring(0,value.length()-4);
+				selectedLevel = level.getName();
 				System.out.println(selectedLevel);
 				levelHBox.setStyle("-fx-border-color: black;-fx-background-color: #c4ffd5;");
 				renderLeaderBoard();
 			});
+			if (level.getName().equals(selectedLevel)) {
+				selectedHBox = levelHBox;
+				levelHBox.setStyle("-fx-border-color: black;-fx-background-color: #c4ffd5;");
+			}
 			vboxLevels.getChildren().addAll(levelHBox);
 		});
 	}
 
 	/**
-	 * renders player profile choice in menu
+	 * renders player profile pickers in menu, one per player. Only called when the number of players changes,
+	 * choosing a profile does not rebuild anything.
 	 */
-	private void renderPlayersChoiceBox(){
+	private void renderPlayerPickers() {
 		vboxPlayers.getChildren().clear();
-
-		ArrayList<Profile> profiles = ProfileManager.getProfiles();
-		profileNames = new ArrayList<>();
-		profiles.forEach(profile -> profileNames.add(profile.getName()));
+		while (profilesChosen.size() < numberOfPlayers) {
+			profilesChosen.add(null);
+		}
 
 		for (int i = 0; i < numberOfPlayers; i++) {
-			ChoiceBox<String> pChoiceBox = new ChoiceBox<>();
-			pChoiceBox.setPrefWidth(250);
-			pChoiceBox.getItems().addAll(profileNames);
-
-			profilesChosen.forEach(prof -> pChoiceBox.getItems().remove(prof));
-			if (profilesChosen.size() > i) {
-				pChoiceBox.getItems().addAll(profilesChosen.get(i));
-			}
-			if (profilesChosen.size() > i) {
-				pChoiceBox.getSelectionModel().select(profilesChosen.get(i));
+			int seat = i;
+			if (profilesChosen.get(seat) != null && ProfileManager.getProfileByName(profilesChosen.get(seat)) == null) {
+				profilesChosen.set(seat, null); // Deleted since it was chosen
 			}
-
-			pChoiceBox.getSelectionModel().selectedIndexProperty().addListener((observable, oldValue, newValue) -> {
-					if (!oldValue.equals(-1)) {
-						profilesChosen.remove(pChoiceBox.getItems().get((oldValue.intValue())));
-					}
-					profilesChosen.add(pChoiceBox.getItems().get((newValue.intValue())));
-					renderPlayersChoiceBox();
-				}
-			);
-			vboxPlayers.getChildren().addAll(pChoiceBox);
+			ProfilePicker picker = new ProfilePicker(profilesChosen.get(seat), () -> chosenByOthers(seat),
+					name -> profilesChosen.set(seat, name));
+			picker.setPrefWidth(250);
+			vboxPlayers.getChildren().add(picker);
 		}
-
 	}
 
 	/**
-	 * reeds level names fromm files
-	 * @return level names as string
+	 * @param seat Player whose picker is asking
+	 * @return Profiles chosen by every other player
 	 */
-	private ArrayList<String> getLevels() {
-		File levelsFiles = new File("./source/resources/levels");
-		ArrayList<String> levels = new ArrayList<>();
-		for (File f : Objects.requireNonNull(levelsFiles.listFiles())) {
-			levels.add(f.getName());
+	private HashSet<String> chosenByOthers(int seat) {
+		HashSet<String> chosen = new HashSet<>();
+		for (int i = 0; i < profilesChosen.size(); i++) {
+			if (i != seat && profilesChosen.get(i) != null) {
+				chosen.add(profilesChosen.get(i));
 			}
-		return levels;
+		}
+		return chosen;
 	}
 }
@@ -4,16 +4,13 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.TextArea;
 import javafx.stage.Stage;
 import source.labyrinth.MessageOfTheDay;
 import source.labyrinth.ProfileManager;
 
-import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * JavaFX controller for main_menu.fxml, shows controls to go to different parts of the game.
@@ -29,14 +26,14 @@ public class MainMenuController extends Application {
 	@Override
 	public void start(Stage primaryStage) throws Exception {
 		System.out.println("MainMenuController created.");
-		Parent root = FXMLLoader.load(getClass().getResource("../../resources/scenes/main_menu.fxml"));
-		Scene scene = new Scene(root);
-		primaryStage.setScene(scene);
-		primaryStage.setTitle("Main Menu");
-		primaryStage.show();
+		// Shows the main menu first, then loads profiles, levels and the rest in the background
+		StartupPipeline.start(primaryStage);
+	}
 
-		// Setup profiles
-		ProfileManager.performSetup();
+	@Override
+	public void stop() {
+		// Profile changes are written with a delay, make sure none are lost when closing
+		ProfileManager.flush();
 	}
 
 	/**
@@ -46,17 +43,7 @@ public class MainMenuController extends Application {
 	@FXML
 	public void goToLevelMenu(ActionEvent event) {
 		System.out.println("Going to level menu...");
-		try {
-			Parent profileMenuParent = FXMLLoader.load(getClass().getResource("../../resources/scenes/level_menu.fxml"));
-			Scene profileMenuScene = new Scene(profileMenuParent);
-			Stage window = (Stage)((Node)event.getSource()).getScene().getWindow();
-
-			window.setScene(profileMenuScene);
-			window.setTitle("Level Select");
-			window.show();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		SceneManager.show((Stage)((Node)event.getSource()).getScene().getWindow(), SceneManager.Screen.LEVEL_MENU);
 	}
 
 	/**
@@ -66,17 +53,7 @@ public class MainMenuController extends Application {
 	@FXML
 	public void goToProfileMenu(ActionEvent event) {
 		System.out.println("Going to profile menu...");
-		try {
-			Parent profileMenuParent = FXMLLoader.load(getClass().getResource("../../resources/scenes/profile_menu.fxml"));
-			Scene profileMenuScene = new Scene(profileMenuParent);
-			Stage window = (Stage)((Node)event.getSource()).getScene().getWindow();
-
-			window.setScene(profileMenuScene);
-			window.setTitle("Profile Menu");
-			window.show();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		SceneManager.show((Stage)((Node)event.getSource()).getScene().getWindow(), SceneManager.Screen.PROFILE_MENU);
 	}
 
 	/**
@@ -86,17 +63,7 @@ public class MainMenuController extends Application {
 	@FXML
 	public void goToSaveMenu(ActionEvent event) {
 		System.out.println("Going to save menu...");
-		try {
-			Parent profileMenuParent = FXMLLoader.load(getClass().getResource("../../resources/scenes/save_menu.fxml"));
-			Scene profileMenuScene = new Scene(profileMenuParent);
-			Stage window = (Stage)((Node)event.getSource()).getScene().getWindow();
-
-			window.setScene(profileMenuScene);
-			window.setTitle("Save Menu");
-			window.show();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		SceneManager.show((Stage)((Node)event.getSource()).getScene().getWindow(), SceneManager.Screen.SAVE_MENU);
 	}
 
 	/**
@@ -109,6 +76,16 @@ public class MainMenuController extends Application {
 
 	@FXML
 	private void initialize() {
-		motd.setText(MessageOfTheDay.getMessageOfTheDay());
+		SceneManager.setRefreshHook(SceneManager.Screen.MAIN_MENU, this::refresh);
+	}
+
+	/**
+	 * Show the message of the day if it has been fetched, else the last one straight away and the new one once it
+	 * has been fetched.
+	 */
+	private void refresh() {
+		CompletableFuture<String> fetch = MessageOfTheDay.fetchMessageOfTheDay();
+		motd.setText(fetch.getNow(MessageOfTheDay.getCachedMessage()));
+		fetch.thenAccept(message -> Platform.runLater(() -> motd.setText(message)));
 	}
 }
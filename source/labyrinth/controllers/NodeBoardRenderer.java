@@ -0,0 +1,266 @@
+package source.labyrinth.controllers;
+
+import javafx.animation.TranslateTransition;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.StackPane;
+import javafx.util.Duration;
+import source.labyrinth.Board;
+import source.labyrinth.FloorTile;
+import source.labyrinth.SpriteCache;
+
+import java.util.BitSet;
+import java.util.function.BiConsumer;
+
+/**
+ * NodeBoardRenderer shows the board as a GridPane with a StackPane per tile, like the board has always been shown,
+ * but keeps every node between renders. The StackPanes are kept in a registry by cell, and a render only updates
+ * the cells the board says changed (see Board.takeChangedCells), by swapping images on the existing nodes. Nodes
+ * are only created the first time a board is shown, so a turn normally creates none. Every cell and arrow holds
+ * its x and y as user data, so a single click handler on the grid finds which one was clicked. After an insertion
+ * the shifted line slides into place (see animateInsertion).
+ * @author Fillip Serov
+ */
+public class NodeBoardRenderer {
+	private static final long UNPAINTED = -1; // Forces the cell to be updated
+	private static final double HIGHLIGHT_OPACITY = 0.5;
+	private static final Duration SHIFT_DURATION = Duration.millis(250);
+
+	private final GridPane grid = new GridPane();
+	private final BiConsumer<Integer, Integer> onClick;
+	private StackPane[][] cells; // The registry, [x][y]
+	private ImageView[][] highlights; // "Chosen" overlay of every cell, [x][y]
+	private long[][] signatures; // What every cell shows (see FloorTile.getRenderSignature), [x][y]
+	private ImageView[][] columnArrows; // Insertion arrows above (0) and below (1) every column
+	private ImageView[][] rowArrows; // Insertion arrows left (0) and right (1) of every row
+	private TranslateTransition[][] shifts; // Slides every cell into place after an insertion, [x][y]
+	private StackPane ejectedTile; // Shows the tile pushed off the board while it slides away
+	private TranslateTransition ejectedShift;
+	private int tileSize;
+	private long createdNodes;
+
+	/**
+	 * @param onClick Called with the x and y of a clicked cell. Arrows are at -1 or the width / height, like
+	 *                LevelController.handleBoardClick takes them
+	 */
+	public NodeBoardRenderer(BiConsumer<Integer, Integer> onClick) {
+		this.onClick = onClick;
+		grid.setAlignment(Pos.CENTER);
+		grid.setOnMouseClicked(event -> {
+			// The click lands on one of the layers of a cell, its position is on the cell itself
+			Node clicked = event.getPickResult().getIntersectedNode();
+			while (clicked != null && clicked != grid && !(clicked.getUserData() instanceof int[])) {
+				clicked = clicked.getParent();
+			}
+			if (clicked != null && clicked != grid) {
+				int[] position = (int[]) clicked.getUserData();
+				onClick.accept(position[0], position[1]);
+			}
+		});
+	}
+
+	/**
+	 * @return The GridPane the board is shown in
+	 */
+	public GridPane getGrid() {
+		return grid;
+	}
+
+	/**
+	 * @return Amount of nodes this renderer has created, to see how many a turn costs
+	 */
+	public long getCreatedNodes() {
+		return createdNodes;
+	}
+
+	/**
+	 * Bring the nodes up to date with the board. Only the cells the board marked as changed are updated, unless
+	 * this is the first render of the board or the tile size changed, in which case every cell is.
+	 * @param board Board to show
+	 * @param tileSize Size of a tile
+	 * @param insertableMask Insertable columns and rows from Board.getInsertablePositions, or null to show no
+	 *                       insertion arrows
+	 * @return Amount of cells updated
+	 */
+	public int render(Board board, int tileSize, Boolean[][] insertableMask) {
+		BitSet changed = board.takeChangedCells();
+		boolean everything = cells == null || cells.length != board.getWidth()
+				|| cells[0].length != board.getHeight() || tileSize != this.tileSize;
+		this.tileSize = tileSize;
+		if (cells == null || cells.length != board.getWidth() || cells[0].length != board.getHeight()) {
+			createNodes(board);
+		}
+
+		int updated = 0;
+		int index = everything ? 0 : changed.nextSetBit(0);
+		while (index >= 0 && index < board.getWidth() * board.getHeight()) {
+			int x = index / board.getHeight();
+			int y = index % board.getHeight();
+			FloorTile tile = board.getTileAt(x, y);
+			long signature = tile.getRenderSignature();
+			if (everything || signature != signatures[x][y]) {
+				tile.updateRender(cells[x][y], tileSize);
+				signatures[x][y] = signature;
+				updated++;
+			}
+			index = everything ? index + 1 : changed.nextSetBit(index + 1);
+		}
+
+		if (everything) {
+			for (int x = 0; x < cells.length; x++) {
+				for (int y = 0; y < cells[x].length; y++) {
+					highlights[x][y].setImage(SpriteCache.get(LevelController.CHOSEN_IMAGE_URL, tileSize));
+				}
+			}
+		}
+
+		updateArrows(columnArrows, insertableMask == null ? null : insertableMask[0], 2, 0, everything);
+		updateArrows(rowArrows, insertableMask == null ? null : insertableMask[1], 1, -1, everything);
+		return updated;
+	}
+
+	/**
+	 * Show or hide the "chosen" overlay of a cell. Highlights are not touched by render, so they stay until they
+	 * are hidden here.
+	 * @param x X-position of the cell
+	 * @param y Y-position of the cell
+	 * @param highlighted true to show the overlay
+	 */
+	public void setHighlighted(int x, int y, boolean highlighted) {
+		highlights[x][y].setVisible(highlighted);
+	}
+
+	/**
+	 * Slide a line that was just inserted into from where its tiles were to where they are, and slide the tile
+	 * that was pushed off the board away. The board and the nodes already show the new state, only the nodes'
+	 * translation is animated, by transitions made once and replayed, so nothing is created or decoded while the
+	 * line moves.
+	 * @param ejected Tile pushed off the board by the insertion
+	 * @param direction Insertion direction, as Board.insertFloorTile takes it
+	 * @param insertionPoint Column or row that was inserted into
+	 */
+	public void animateInsertion(FloorTile ejected, int direction, int insertionPoint) {
+		boolean columnInsert = direction % 2 == 0;
+		int dx = direction == 3 ? 1 : (direction == 1 ? -1 : 0); // Which way the tiles moved
+		int dy = direction == 0 ? 1 : (direction == 2 ? -1 : 0);
+		int length = columnInsert ? cells[0].length : cells.length;
+		for (int i = 0; i < length; i++) {
+			int x = columnInsert ? insertionPoint : i;
+			int y = columnInsert ? i : insertionPoint;
+			slide(shifts[x][y], -dx * tileSize, -dy * tileSize, 0, 0);
+		}
+
+		if (ejectedTile == null) {
+			ejectedTile = ejected.renderTile(tileSize);
+			ejectedTile.setMouseTransparent(true);
+			ejectedShift = new TranslateTransition(SHIFT_DURATION, ejectedTile);
+			ejectedShift.setOnFinished(event -> ejectedTile.setVisible(false));
+			grid.getChildren().add(ejectedTile);
+			createdNodes += ejectedTile.getChildren().size() + 1;
+		}
+		// It leaves from the end of the line the tiles moved towards
+		int endX = columnInsert ? insertionPoint : (dx > 0 ? cells.length - 1 : 0);
+		int endY = columnInsert ? (dy > 0 ? cells[0].length - 1 : 0) : insertionPoint;
+		ejected.updateRender(ejectedTile, tileSize);
+		GridPane.setConstraints(ejectedTile, endX + 1, endY + 1);
+		ejectedTile.setVisible(true);
+		ejectedTile.toFront();
+		slide(ejectedShift, 0, 0, dx * tileSize, dy * tileSize);
+	}
+
+	/**
+	 * @param shift Transition to replay
+	 * @param fromX Translation to start at
+	 * @param fromY Translation to start at
+	 * @param toX Translation to end at
+	 * @param toY Translation to end at
+	 */
+	private static void slide(TranslateTransition shift, double fromX, double fromY, double toX, double toY) {
+		shift.stop();
+		shift.setFromX(fromX);
+		shift.setFromY(fromY);
+		shift.setToX(toX);
+		shift.setToY(toY);
+		shift.playFromStart();
+	}
+
+	/**
+	 * Fill the registry with a node for every cell of the board, and create the insertion arrows around it.
+	 * @param board Board to create nodes for
+	 */
+	private void createNodes(Board board) {
+		int width = board.getWidth();
+		int height = board.getHeight();
+		grid.getChildren().clear();
+		ejectedTile = null;
+		cells = new StackPane[width][height];
+		shifts = new TranslateTransition[width][height];
+		highlights = new ImageView[width][height];
+		signatures = new long[width][height];
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				cells[x][y] = board.getTileAt(x, y).renderTile(tileSize);
+				highlights[x][y] = new ImageView();
+				highlights[x][y].setOpacity(HIGHLIGHT_OPACITY);
+				highlights[x][y].setVisible(false);
+				cells[x][y].getChildren().add(highlights[x][y]);
+				signatures[x][y] = UNPAINTED;
+				createdNodes += cells[x][y].getChildren().size() + 1;
+				cells[x][y].setUserData(new int[] {x, y});
+				shifts[x][y] = new TranslateTransition(SHIFT_DURATION, cells[x][y]);
+				grid.add(cells[x][y], x + 1, y + 1);
+			}
+		}
+
+		columnArrows = new ImageView[2][width];
+		for (int x = 0; x < width; x++) {
+			columnArrows[0][x] = createArrow(x, -1, x + 1, 0);
+			columnArrows[1][x] = createArrow(x, height, x + 1, height + 1);
+		}
+		rowArrows = new ImageView[2][height];
+		for (int y = 0; y < height; y++) {
+			rowArrows[0][y] = createArrow(-1, y, 0, y + 1);
+			rowArrows[1][y] = createArrow(width, y, width + 1, y + 1);
+		}
+	}
+
+	/**
+	 * @param x X-position of the arrow, as given to onClick
+	 * @param y Y-position of the arrow, as given to onClick
+	 * @param column Column of the grid to put it in
+	 * @param row Row of the grid to put it in
+	 * @return A hidden insertion arrow
+	 */
+	private ImageView createArrow(int x, int y, int column, int row) {
+		ImageView arrow = new ImageView();
+		arrow.setVisible(false);
+		arrow.setUserData(new int[] {x, y});
+		grid.add(arrow, column, row);
+		createdNodes++;
+		return arrow;
+	}
+
+	/**
+	 * Show the arrows of the lines that can be inserted into and hide the others.
+	 * @param arrows Arrows before (0) and after (1) every line
+	 * @param insertable Which lines can be inserted into, null if none
+	 * @param beforeQuarterTurns Quarter turns of the arrows before the lines
+	 * @param afterQuarterTurns Quarter turns of the arrows after the lines
+	 * @param resized true if the tile size changed, so the images must be replaced
+	 */
+	private void updateArrows(ImageView[][] arrows, Boolean[] insertable, int beforeQuarterTurns,
+							  int afterQuarterTurns, boolean resized) {
+		for (int i = 0; i < arrows[0].length; i++) {
+			boolean shown = insertable != null && insertable[i];
+			for (int side = 0; side < 2; side++) {
+				if (resized) {
+					arrows[side][i].setImage(SpriteCache.get(LevelController.INSERT_ARROW_IMAGE_URL, tileSize,
+							side == 0 ? beforeQuarterTurns : afterQuarterTurns, false));
+				}
+				arrows[side][i].setVisible(shown);
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package source.labyrinth.controllers;
+
+import javafx.collections.ObservableListBase;
+import source.labyrinth.Profile;
+import source.labyrinth.ProfileIndex;
+import source.labyrinth.ProfileManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PagedProfileList is a read-only list of every profile for use as the items of a TableView. A TableView only
+ * asks for the rows it shows, so profiles are fetched from ProfileManager a page at a time when one of their rows
+ * is first shown, and only the most recently used pages are kept.
+ * The list does not follow changes to the profiles: to show created or deleted profiles, or another sort order,
+ * the table is given a new PagedProfileList.
+ * @author Fillip Serov
+ */
+public class PagedProfileList extends ObservableListBase<Profile> {
+	private static final int PAGE_SIZE = 64;
+	private static final int CACHED_PAGES = 16;
+
+	private final ProfileIndex.SortKey sortKey;
+	private final boolean ascending;
+	private final int size;
+	private final LinkedHashMap<Integer, List<Profile>> pages = new LinkedHashMap<Integer, List<Profile>>(
+			CACHED_PAGES, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, List<Profile>> eldest) {
+			return size() > CACHED_PAGES;
+		}
+	};
+
+	/**
+	 * Profiles in creation order, newest first.
+	 */
+	public PagedProfileList() {
+		this(null, false);
+	}
+
+	/**
+	 * @param sortKey Order to sort the profiles in, null for creation order
+	 * @param ascending True for smallest first, false for largest first. Ignored for creation order
+	 */
+	public PagedProfileList(ProfileIndex.SortKey sortKey, boolean ascending) {
+		this.sortKey = sortKey;
+		this.ascending = ascending;
+		this.size = ProfileManager.getProfileCount();
+	}
+
+	/**
+	 * @param index Row to get
+	 * @return Profile shown in that row, or null if it was deleted since this list was made
+	 */
+	@Override
+	public Profile get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " in list of size " + size);
+		}
+		int pageNumber = index / PAGE_SIZE;
+		List<Profile> page = pages.get(pageNumber);
+		if (page == null) {
+			page = sortKey == null ? ProfileManager.getProfilePage(pageNumber * PAGE_SIZE, PAGE_SIZE)
+					: ProfileManager.getProfilePage(sortKey, ascending, pageNumber * PAGE_SIZE, PAGE_SIZE);
+			pages.put(pageNumber, page);
+		}
+		int inPage = index % PAGE_SIZE;
+		return inPage < page.size() ? page.get(inPage) : null;
+	}
+
+	/**
+	 * @return Amount of profiles when this list was made
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+}
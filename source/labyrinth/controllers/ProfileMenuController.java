@@ -1,25 +1,25 @@
 package source.labyrinth.controllers;
 
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Stage;
 import source.labyrinth.Profile;
+import source.labyrinth.ProfileIndex;
 import source.labyrinth.ProfileManager;
 
-import java.io.IOException;
 import java.net.URL;
 import java.util.Optional;
 import java.util.ResourceBundle;
 
 /**
  * JavaFX controller for the profile menu that deals with viewing, deleting and creating profiles.
+ * The table pages through the profiles (see PagedProfileList) so it opens just as fast with a million profiles.
+ * Sorting a column asks ProfileManager for the profiles in that order instead of sorting the rows in the table.
  */
 public class ProfileMenuController implements Initializable {
 	@FXML private TextField newProfileName;
@@ -28,17 +28,44 @@ public class ProfileMenuController implements Initializable {
 	@FXML private TableColumn<Profile, Integer> totalCol;
 	@FXML private TableColumn<Profile, Integer> winCol;
 	@FXML private TableColumn<Profile, Integer> lossCol;
+	@FXML private TableColumn<Profile, String> rateCol;
 
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
 		System.out.println("Created ProfileMenuController");
+		SceneManager.setRefreshHook(SceneManager.Screen.PROFILE_MENU, this::refreshTable);
 
 		nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
 		totalCol.setCellValueFactory(new PropertyValueFactory<>("totalPlayed"));
 		winCol.setCellValueFactory(new PropertyValueFactory<>("wins"));
 		lossCol.setCellValueFactory(new PropertyValueFactory<>("losses"));
+		rateCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue() == null ? null
+				: String.format("%.0f%%", cell.getValue().getStats().getWinRate() * 100)));
 
-		tableView.getItems().setAll(ProfileManager.getProfiles());
+		// Columns that can be sorted hold the order they sort by
+		nameCol.setUserData(ProfileIndex.SortKey.NAME);
+		totalCol.setUserData(ProfileIndex.SortKey.GAMES_PLAYED);
+		winCol.setUserData(ProfileIndex.SortKey.WINS);
+		rateCol.setUserData(ProfileIndex.SortKey.WIN_RATE);
+		lossCol.setSortable(false);
+		tableView.setSortPolicy(table -> {
+			refreshTable();
+			return true;
+		});
+	}
+
+	/**
+	 * Give the table a new list of profiles in the order of its sorted column, or newest first if it is not
+	 * sorted. Only the visible rows are read. Also done every time the menu is shown.
+	 */
+	private void refreshTable() {
+		if (tableView.getSortOrder().isEmpty()) {
+			tableView.setItems(new PagedProfileList());
+		} else {
+			TableColumn<Profile, ?> sortedBy = tableView.getSortOrder().get(0);
+			tableView.setItems(new PagedProfileList((ProfileIndex.SortKey) sortedBy.getUserData(),
+					sortedBy.getSortType() == TableColumn.SortType.ASCENDING));
+		}
 	}
 
 	/**
@@ -57,7 +84,7 @@ public class ProfileMenuController implements Initializable {
 			Optional<ButtonType> result = alert.showAndWait();
 			if (result.get() == ButtonType.OK){
 				ProfileManager.deleteProfile(toDelete);
-				tableView.getItems().setAll(ProfileManager.getProfiles());
+				refreshTable();
 			}
 		}
 	}
@@ -93,7 +120,7 @@ public class ProfileMenuController implements Initializable {
 
 		System.out.println("Created profile with " + newName);
 		newProfileName.clear();
-		tableView.getItems().setAll(ProfileManager.getProfiles());
+		refreshTable();
 	}
 
 	/**
@@ -103,16 +130,6 @@ public class ProfileMenuController implements Initializable {
 	@FXML
 	public void returnToMainMenu(ActionEvent event) {
 		System.out.println("Going back to main menu...");
-		try {
-			Parent profileMenuParent = FXMLLoader.load(getClass().getResource("../../resources/scenes/main_menu.fxml"));
-			Scene profileMenuScene = new Scene(profileMenuParent);
-			Stage window = (Stage)((Node)event.getSource()).getScene().getWindow();
-
-			window.setScene(profileMenuScene);
-			window.setTitle("Main Menu");
-			window.show();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		SceneManager.show((Stage)((Node)event.getSource()).getScene().getWindow(), SceneManager.Screen.MAIN_MENU);
 	}
 }
@@ -0,0 +1,85 @@
+package source.labyrinth.controllers;
+
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
+import source.labyrinth.ProfileManager;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ProfilePicker is a text field for choosing a profile by typing its name. While typing, the first few profiles
+ * whose name starts with the text are offered below the field. Suggestions come from ProfileManager's prefix
+ * search, so only the shown names are ever looked at, not every profile.
+ * @author Fillip Serov
+ */
+public class ProfilePicker extends TextField {
+	private static final int MAX_SUGGESTIONS = 10;
+
+	private final ContextMenu suggestions = new ContextMenu();
+	private final Supplier<Set<String>> excluded;
+	private final Consumer<String> onChosen;
+
+	/**
+	 * @param chosen Name of the profile chosen at the start, or null
+	 * @param excluded Gives the names that cannot be chosen right now (e.g. chosen by another player)
+	 * @param onChosen Called with the chosen profile name whenever it changes, or null when the text is not
+	 *                 the name of a profile that can be chosen
+	 */
+	public ProfilePicker(String chosen, Supplier<Set<String>> excluded, Consumer<String> onChosen) {
+		super(chosen == null ? "" : chosen);
+		this.excluded = excluded;
+		this.onChosen = onChosen;
+		setPromptText("Type a profile name");
+
+		textProperty().addListener((observable, oldValue, newValue) -> textChanged(newValue));
+		focusedProperty().addListener((observable, wasFocused, isFocused) -> {
+			if (isFocused) {
+				showSuggestions(getText());
+			} else {
+				suggestions.hide();
+			}
+		});
+	}
+
+	/**
+	 * Tell the listener which profile is now chosen and update the suggestions.
+	 * @param text Current text
+	 */
+	private void textChanged(String text) {
+		String chosen = ProfileManager.getProfileByName(text) != null && !excluded.get().contains(text) ? text : null;
+		onChosen.accept(chosen);
+		if (chosen != null) {
+			suggestions.hide();
+		} else if (isFocused()) {
+			showSuggestions(text);
+		}
+	}
+
+	/**
+	 * Show the first profiles whose name starts with the given text, or nothing if there are none.
+	 * @param text Start of the name
+	 */
+	private void showSuggestions(String text) {
+		List<String> matches = ProfileManager.searchProfiles(text, MAX_SUGGESTIONS, excluded.get());
+		suggestions.getItems().clear();
+		for (String name : matches) {
+			MenuItem item = new MenuItem(name);
+			item.setOnAction(event -> {
+				setText(name);
+				positionCaret(name.length());
+			});
+			suggestions.getItems().add(item);
+		}
+
+		if (matches.isEmpty()) {
+			suggestions.hide();
+		} else if (!suggestions.isShowing() && getScene() != null) {
+			suggestions.show(this, Side.BOTTOM, 0, 0);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package source.labyrinth.controllers;
+
+import javafx.application.Platform;
+
+/**
+ * RenderScheduler coalesces redraws of the level scene. Game code marks the board or the side info as dirty as
+ * often as it likes while it changes the state, and each is redrawn once, when the JavaFX thread gets to the
+ * scheduled flush before the next pulse. Which cells of the board changed is tracked by the board itself (see
+ * Board.takeChangedCells), so a board repaint only touches those. Code that needs the redraw done before it
+ * carries on (e.g. to animate the new nodes) can flush straight away, and the scheduled flush then has nothing
+ * left to do. The repaint counts are kept so it can be checked that a user action costs one repaint.
+ * @author Fillip Serov
+ */
+public class RenderScheduler {
+	private final Runnable boardPainter;
+	private final Runnable sideInfoPainter;
+	private boolean boardDirty;
+	private boolean sideInfoDirty;
+	private boolean flushScheduled;
+	private int boardRepaints;
+	private int sideInfoRepaints;
+
+	/**
+	 * @param boardPainter Redraws the board
+	 * @param sideInfoPainter Redraws the side info
+	 */
+	public RenderScheduler(Runnable boardPainter, Runnable sideInfoPainter) {
+		this.boardPainter = boardPainter;
+		this.sideInfoPainter = sideInfoPainter;
+	}
+
+	/**
+	 * The board changed, redraw it before the next pulse.
+	 */
+	public void markBoardDirty() {
+		boardDirty = true;
+		scheduleFlush();
+	}
+
+	/**
+	 * The side info changed, redraw it before the next pulse.
+	 */
+	public void markSideInfoDirty() {
+		sideInfoDirty = true;
+		scheduleFlush();
+	}
+
+	/**
+	 * Redraw whatever is dirty now, instead of waiting for the scheduled flush.
+	 */
+	public void flush() {
+		flushScheduled = false;
+		if (boardDirty) {
+			boardDirty = false;
+			boardRepaints++;
+			boardPainter.run();
+		}
+		if (sideInfoDirty) {
+			sideInfoDirty = false;
+			sideInfoRepaints++;
+			sideInfoPainter.run();
+		}
+	}
+
+	/**
+	 * @return How many times the board has been redrawn
+	 */
+	public int getBoardRepaints() {
+		return boardRepaints;
+	}
+
+	/**
+	 * @return How many times the side info has been redrawn
+	 */
+	public int getSideInfoRepaints() {
+		return sideInfoRepaints;
+	}
+
+	/**
+	 * Run a flush on the JavaFX thread once the current event is handled, unless one is already waiting.
+	 */
+	private void scheduleFlush() {
+		if (!flushScheduled) {
+			flushScheduled = true;
+			Platform.runLater(() -> {
+				// Might have been flushed by hand in the meantime, which leaves nothing dirty
+				if (flushScheduled) {
+					flush();
+				}
+			});
+		}
+	}
+}
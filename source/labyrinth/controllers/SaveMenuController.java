@@ -2,12 +2,9 @@ package source.labyrinth.controllers;
 
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
@@ -18,7 +15,6 @@ import javafx.scene.text.Text;
 import javafx.stage.Stage;
 
 import java.io.File;
-import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Objects;
@@ -40,10 +36,22 @@ public class SaveMenuController implements Initializable {
 
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
-		showSaveFile();
+		SceneManager.setRefreshHook(SceneManager.Screen.SAVE_MENU, this::refresh);
 		System.out.println("Created SaveMenuController");
 	}
 
+	/**
+	 * Show the saves as they are now and forget the selection, every time the menu is shown.
+	 */
+	private void refresh() {
+		selectedSaveName = null;
+		selectedSaveHBox = null;
+		deleteSaveButton.setDisable(true);
+		loadSaveButton.setDisable(true);
+		saveDetailTextArea.clear();
+		showSaveFile();
+	}
+
 	/**
 	 * Shows every found save file.
 	 */
@@ -96,17 +104,7 @@ public class SaveMenuController implements Initializable {
 	@FXML
 	public void returnToMainMenu(ActionEvent event) {
 		System.out.println("Going back to main menu...");
-		try {
-			Parent profileMenuParent = FXMLLoader.load(getClass().getResource("../../resources/scenes/main_menu.fxml"));
-			Scene profileMenuScene = new Scene(profileMenuParent);
-			Stage window = (Stage) ((Node) event.getSource()).getScene().getWindow();
-
-			window.setScene(profileMenuScene);
-			window.setTitle("Main Menu");
-			window.show();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		SceneManager.show((Stage) ((Node) event.getSource()).getScene().getWindow(), SceneManager.Screen.MAIN_MENU);
 	}
 
 
@@ -164,16 +162,7 @@ public class SaveMenuController implements Initializable {
 			Optional<ButtonType> result = alert.showAndWait();
 			if (result.get() == ButtonType.OK) {
 				LevelController.setNextSaveToLoad(selectedSaveName);
-				try {
-					Parent profileMenuParent = FXMLLoader.load(getClass().getResource("../../resources/scenes/level.fxml"));
-					Scene profileMenuScene = new Scene(profileMenuParent);
-					Stage window = (Stage) ((Node) event.getSource()).getScene().getWindow();
-					window.setScene(profileMenuScene);
-					window.setTitle("Game");
-					window.show();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+				SceneManager.show((Stage) ((Node) event.getSource()).getScene().getWindow(), SceneManager.Screen.LEVEL);
 			}
 			else {
 				System.out.println("Load Cancelled");
@@ -0,0 +1,204 @@
+package source.labyrinth.controllers;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Cursor;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SceneManager loads every screen of the game once and keeps its scene graph and controller for the rest of the
+ * run, so going to a screen no longer parses its FXML and wires up a new controller. The screens are loaded on a
+ * background thread while the main menu is shown, once what they show has been loaded (see preload). Going to a
+ * screen that is still loading never blocks the JavaFX thread: the current screen shows a wait cursor and stays
+ * usable, and the screen is shown once it has loaded, unless another one was asked for in the meantime. Since a
+ * controller now outlives a visit to its screen, it sets up its static parts in initialize and gives a refresh
+ * hook (see setRefreshHook) that brings the screen up to date every time it is shown. It is entirely static, and
+ * only used from the JavaFX thread.
+ * @author Fillip Serov
+ */
+public final class SceneManager {
+	private static final String SCENE_DIRECTORY = "../../resources/scenes/";
+	// Run with -Dlabyrinth.debugScenes=true to log how long every screen takes to load and to show
+	private static final boolean DEBUG_SCENES = Boolean.getBoolean("labyrinth.debugScenes");
+
+	/**
+	 * Every screen of the game, with its FXML file and window title.
+	 */
+	public enum Screen {
+		MAIN_MENU("main_menu", "Main Menu"),
+		LEVEL_MENU("level_menu", "Level Select"),
+		PROFILE_MENU("profile_menu", "Profile Menu"),
+		SAVE_MENU("save_menu", "Save Menu"),
+		LEVEL("level", "Game");
+
+		private final String fileName;
+		private final String title;
+
+		/**
+		 * @param fileName Name of the FXML file, without extension
+		 * @param title Title of the window while the screen is shown
+		 */
+		Screen(String fileName, String title) {
+			this.fileName = fileName;
+			this.title = title;
+		}
+	}
+
+	/**
+	 * A loaded screen. The Scene is only made on the JavaFX thread, the first time the screen is shown.
+	 */
+	private static final class LoadedScreen {
+		private final Parent root;
+		private Scene scene;
+
+		/**
+		 * @param root Root of the screen's scene graph
+		 */
+		private LoadedScreen(Parent root) {
+			this.root = root;
+		}
+	}
+
+	private static final EnumMap<Screen, CompletableFuture<LoadedScreen>> LOADS = new EnumMap<>(Screen.class);
+	// Set by the controllers while they are loaded, which may be on the preloader thread
+	private static final EnumMap<Screen, Runnable> REFRESH_HOOKS = new EnumMap<>(Screen.class);
+	private static final ExecutorService PRELOADER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "scene-preloader");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static Screen waitingFor; // Screen to show once it has loaded, null if none
+
+	/**
+	 * Load every screen that has not been loaded yet on a background thread, in the order they are listed in
+	 * Screen, once the data they need is there. Showing one of them before then shows it once it has loaded.
+	 * @param dataReady Completes when everything the screens show has been loaded
+	 * @return Completes when every screen has been loaded
+	 */
+	public static CompletableFuture<Void> preload(CompletableFuture<?> dataReady) {
+		for (Screen screen : Screen.values()) {
+			if (!LOADS.containsKey(screen)) {
+				LOADS.put(screen, dataReady.thenApplyAsync(ready -> load(screen), PRELOADER));
+			}
+		}
+		return CompletableFuture.allOf(LOADS.values().toArray(new CompletableFuture<?>[0]));
+	}
+
+	/**
+	 * Called by a controller in its initialize to be told whenever its screen is shown.
+	 * @param screen Screen of the controller
+	 * @param refresh Brings the screen up to date, run on the JavaFX thread right before the screen is shown
+	 */
+	public static void setRefreshHook(Screen screen, Runnable refresh) {
+		synchronized (REFRESH_HOOKS) {
+			REFRESH_HOOKS.put(screen, refresh);
+		}
+	}
+
+	/**
+	 * Refresh a screen and show it in a window. If the screen is still being preloaded it is shown once it has
+	 * loaded, with a wait cursor on the current screen until then, and if it was never loaded it is loaded now.
+	 * @param window Window to show the screen in
+	 * @param screen Screen to show
+	 */
+	public static void show(Stage window, Screen screen) {
+		long start = System.nanoTime();
+		if (!LOADS.containsKey(screen)) {
+			CompletableFuture<LoadedScreen> load = new CompletableFuture<>();
+			try {
+				load.complete(load(screen));
+			} catch (UncheckedIOException e) {
+				load.completeExceptionally(e);
+			}
+			LOADS.put(screen, load);
+		}
+
+		CompletableFuture<LoadedScreen> load = LOADS.get(screen);
+		if (load.isDone()) {
+			waitingFor = null;
+			switchTo(window, screen, load, start);
+		} else {
+			if (DEBUG_SCENES) {
+				System.out.println("Waiting for " + screen.fileName + " to load...");
+			}
+			waitingFor = screen;
+			if (window.getScene() != null) {
+				window.getScene().setCursor(Cursor.WAIT);
+			}
+			load.whenComplete((loaded, failure) -> Platform.runLater(() -> {
+				// The last screen asked for wins, an earlier one that loads later is not shown
+				if (waitingFor == screen) {
+					waitingFor = null;
+					switchTo(window, screen, load, start);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Refresh a loaded screen and put it in the window.
+	 * @param window Window to show the screen in
+	 * @param screen Screen to show
+	 * @param load The screen's finished load
+	 * @param start When the screen was asked for, from System.nanoTime
+	 */
+	private static void switchTo(Stage window, Screen screen, CompletableFuture<LoadedScreen> load, long start) {
+		if (window.getScene() != null) {
+			window.getScene().setCursor(Cursor.DEFAULT);
+		}
+		try {
+			LoadedScreen loaded = load.join();
+			Runnable refresh;
+			synchronized (REFRESH_HOOKS) {
+				refresh = REFRESH_HOOKS.get(screen);
+			}
+			if (refresh != null) {
+				refresh.run();
+			}
+			if (loaded.scene == null) {
+				loaded.scene = new Scene(loaded.root);
+			}
+
+			window.setScene(loaded.scene);
+			window.setTitle(screen.title);
+			window.show();
+			if (DEBUG_SCENES) {
+				System.out.println("Showed " + screen.fileName + " in " + (System.nanoTime() - start) / 1000000
+						+ " ms");
+			}
+		} catch (CompletionException e) {
+			// Try to load it again next time
+			LOADS.remove(screen);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Parse a screen's FXML, which also creates its controller.
+	 * @param screen Screen to load
+	 * @return The loaded screen
+	 */
+	private static LoadedScreen load(Screen screen) {
+		long start = System.nanoTime();
+		try {
+			Parent root = FXMLLoader.load(SceneManager.class.getResource(SCENE_DIRECTORY + screen.fileName + ".fxml"));
+			if (DEBUG_SCENES) {
+				System.out.println("Loaded " + screen.fileName + " in " + (System.nanoTime() - start) / 1000000
+						+ " ms");
+			}
+			return new LoadedScreen(root);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
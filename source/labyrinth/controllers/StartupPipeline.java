@@ -0,0 +1,127 @@
+package source.labyrinth.controllers;
+
+import javafx.animation.AnimationTimer;
+import javafx.stage.Stage;
+import source.labyrinth.LevelCatalog;
+import source.labyrinth.MessageOfTheDay;
+import source.labyrinth.ProfileManager;
+import source.labyrinth.RatingEngine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * StartupPipeline gets the game going. The main menu is shown first, and everything else is loaded behind it in
+ * stages that run at the same time on background threads: profiles, ratings, the level catalog, the board's
+ * sprites and the message of the day. The other screens are preloaded (see SceneManager.preload) once the
+ * profiles, ratings and levels they show are there. Going to one of them before then does not block the menu,
+ * the screen is shown once it has loaded.
+ * The time from launch to the first frame is logged, and once every stage is done a report of when each stage
+ * started and how long it took, so it shows when startup gets slower.
+ * It is entirely static, like SceneManager.
+ * @author Fillip Serov
+ */
+public final class StartupPipeline {
+	private static final int WORKER_THREADS = 4;
+	private static final ExecutorService WORKERS = Executors.newFixedThreadPool(WORKER_THREADS, runnable -> {
+		Thread thread = new Thread(runnable, "startup-worker");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final ArrayList<String> REPORT = new ArrayList<>(); // Line per stage, in the order they finished
+	private static long launchedAt; // When the JVM started, in milliseconds since the epoch
+
+	/**
+	 * Show the main menu in a window and load everything else in the background. Only called once, from
+	 * MainMenuController.start.
+	 * @param primaryStage Window to show the game in
+	 */
+	public static void start(Stage primaryStage) {
+		launchedAt = ManagementFactory.getRuntimeMXBean().getStartTime();
+		SceneManager.show(primaryStage, SceneManager.Screen.MAIN_MENU);
+		// The first pulse after the window is shown draws the first frame
+		new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				stop();
+				System.out.println("Time to first frame: " + sinceLaunch() + " ms");
+			}
+		}.start();
+
+		CompletableFuture<Void> profiles = runStage("profiles", ProfileManager::performSetup);
+		CompletableFuture<Void> ratings = runStage("ratings", RatingEngine::performSetup);
+		CompletableFuture<Void> levels = runStage("level catalog", LevelCatalog::performSetup);
+		CompletableFuture<Void> sprites = runStage("sprites", LevelController::warmSprites);
+		// Already being fetched on its own thread for the main menu, only its time is reported here
+		long motdStartedAt = sinceLaunch();
+		CompletableFuture<String> motd = MessageOfTheDay.fetchMessageOfTheDay()
+				.whenComplete((message, failure) -> report("message of the day", motdStartedAt, failure));
+
+		CompletableFuture<Void> dataReady = CompletableFuture.allOf(profiles, ratings, levels);
+		CompletableFuture<Void> preloaded = SceneManager.preload(dataReady);
+		CompletableFuture<Void> screens = dataReady.thenCompose(ready -> {
+			long startedAt = sinceLaunch();
+			return preloaded.whenComplete((done, failure) -> report("screens", startedAt, failure));
+		});
+
+		CompletableFuture.allOf(screens, sprites, motd).whenComplete((done, failure) -> printReport());
+	}
+
+	/**
+	 * Run a stage on one of the workers and add it to the report once it is done.
+	 * @param name Name of the stage in the report
+	 * @param stage The stage
+	 * @return Completes when the stage is done
+	 */
+	private static CompletableFuture<Void> runStage(String name, Runnable stage) {
+		return CompletableFuture.runAsync(() -> {
+			long startedAt = sinceLaunch();
+			try {
+				stage.run();
+				report(name, startedAt, null);
+			} catch (RuntimeException e) {
+				report(name, startedAt, e);
+				throw e;
+			}
+		}, WORKERS);
+	}
+
+	/**
+	 * Add a finished stage to the report.
+	 * @param name Name of the stage
+	 * @param startedAt When the stage started, in milliseconds since launch
+	 * @param failure Why the stage failed, null if it did not
+	 */
+	private static void report(String name, long startedAt, Throwable failure) {
+		long now = sinceLaunch();
+		String line = "  " + name + ": started at " + startedAt + " ms, took " + (now - startedAt) + " ms";
+		if (failure != null) {
+			line += ", failed: " + failure;
+		}
+		synchronized (REPORT) {
+			REPORT.add(line);
+		}
+	}
+
+	/**
+	 * Print when every stage started and how long it took.
+	 */
+	private static void printReport() {
+		synchronized (REPORT) {
+			System.out.println("Startup finished " + sinceLaunch() + " ms after launch:");
+			for (String line : REPORT) {
+				System.out.println(line);
+			}
+		}
+	}
+
+	/**
+	 * @return Milliseconds since the JVM started
+	 */
+	private static long sinceLaunch() {
+		return System.currentTimeMillis() - launchedAt;
+	}
+}